@@ -0,0 +1,32 @@
+package org.opencv.benchmarks;
+
+import org.opencv.core.Core;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the jmh task. Accepts the usual JMH command line and leaves out the
+ * native benchmarks when the OpenCV library can not be loaded on this machine.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+
+        if (cmd.getIncludes().isEmpty())
+            options.include(BenchmarkMain.class.getPackage().getName() + ".*");
+
+        if (!NativeLibrary.isAvailable()) {
+            System.out.println("# " + Core.NATIVE_LIBRARY_NAME + " not loadable, skipping "
+                    + NativeBenchmark.class.getSimpleName());
+            options.exclude(NativeBenchmark.class.getName());
+        }
+
+        new Runner(options.build()).run();
+    }
+}
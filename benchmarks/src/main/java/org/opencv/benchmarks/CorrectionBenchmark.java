@@ -0,0 +1,55 @@
+package org.opencv.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.correction.JavaCorrection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pure Java correction kernels on an RGBA frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CorrectionBenchmark {
+
+    @Param({ "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private byte[] mSource;
+    private byte[] mFrame;
+
+    @Setup
+    public void setup() {
+        int[] size = Frames.parse(resolution);
+        mSource = Frames.rgba(size[0], size[1]);
+        mFrame = new byte[mSource.length];
+    }
+
+    @Benchmark
+    public byte[] javaCorrection() {
+        // The kernel works in place, so start every iteration from the same pixels.
+        System.arraycopy(mSource, 0, mFrame, 0, mSource.length);
+        JavaCorrection.correctRgba(mFrame, 0, mFrame.length);
+        return mFrame;
+    }
+
+    @Benchmark
+    public byte[] copyBaseline() {
+        System.arraycopy(mSource, 0, mFrame, 0, mSource.length);
+        return mFrame;
+    }
+}
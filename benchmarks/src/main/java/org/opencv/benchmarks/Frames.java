@@ -0,0 +1,40 @@
+package org.opencv.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Deterministic test frames, so numbers are comparable between runs.
+ */
+final class Frames {
+
+    static final long SEED = 0x5EED;
+
+    private Frames() {
+    }
+
+    /**
+     * Parses a "640x480" style resolution into {width, height}.
+     */
+    static int[] parse(String resolution) {
+        int x = resolution.indexOf('x');
+        return new int[] { Integer.parseInt(resolution.substring(0, x)),
+                           Integer.parseInt(resolution.substring(x + 1)) };
+    }
+
+    static byte[] nv21(int width, int height) {
+        return random(width * height + width * height / 2);
+    }
+
+    static byte[] rgba(int width, int height) {
+        byte[] data = random(width * height * 4);
+        for (int i = 3; i < data.length; i += 4)
+            data[i] = (byte) 0xFF;
+        return data;
+    }
+
+    static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(SEED).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,131 @@
+package org.opencv.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatExpr;
+import org.opencv.correction.JavaCorrection;
+import org.opencv.correction.SplitMergeCorrection;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The frame path as it runs in JavaCameraView: cvtColor from NV21, the correction engines
+ * on a Mat and the copy of the result out of native memory. The blue plane arithmetic of the
+ * split-merge engine is measured both as Core calls and as a fused MatExpr. Needs opencv_java300.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NativeBenchmark {
+
+    @Param({ "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private Mat mYuv;
+    private Mat mRgba;
+    private Mat mFrame;
+    private byte[] mOutput;
+    private Mat mR;
+    private Mat mG;
+    private Mat mB;
+    private Mat mBlue;
+    private SplitMergeCorrection mSplitMerge;
+    private JavaCorrection mJava;
+
+    @Setup
+    public void setup() {
+        NativeLibrary.require();
+
+        int[] size = Frames.parse(resolution);
+        int width = size[0];
+        int height = size[1];
+
+        mYuv = new Mat(height + height / 2, width, CvType.CV_8UC1);
+        mYuv.put(0, 0, Frames.nv21(width, height));
+        mRgba = new Mat();
+        Imgproc.cvtColor(mYuv, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+        mFrame = new Mat();
+        mOutput = new byte[width * height * 4];
+        mR = new Mat();
+        mG = new Mat();
+        mB = new Mat();
+        mBlue = new Mat();
+        Core.extractChannel(mRgba, mR, 0);
+        Core.extractChannel(mRgba, mG, 1);
+        Core.extractChannel(mRgba, mB, 2);
+        mSplitMerge = new SplitMergeCorrection();
+        mJava = new JavaCorrection();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mYuv.release();
+        mRgba.release();
+        mFrame.release();
+        mR.release();
+        mG.release();
+        mB.release();
+        mBlue.release();
+    }
+
+    @Benchmark
+    public Mat cvtColorNv21ToRgba() {
+        Imgproc.cvtColor(mYuv, mFrame, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+        return mFrame;
+    }
+
+    @Benchmark
+    public Mat splitMergeCorrection() {
+        mRgba.copyTo(mFrame);
+        return mSplitMerge.apply(mFrame);
+    }
+
+    @Benchmark
+    public Mat blueCore() {
+        Core.add(mB, mG, mBlue);
+        Core.subtract(mBlue, mR, mBlue);
+        Core.add(mBlue, mBlue, mBlue);
+        return mBlue;
+    }
+
+    @Benchmark
+    public Mat blueMatExpr() {
+        return MatExpr.of(mB).add(mG).sub(mR).mul(2).into(mBlue);
+    }
+
+    @Benchmark
+    public Mat javaCorrectionOnMat() {
+        mRgba.copyTo(mFrame);
+        return mJava.apply(mFrame);
+    }
+
+    @Benchmark
+    public Mat copyBaseline() {
+        mRgba.copyTo(mFrame);
+        return mFrame;
+    }
+
+    @Benchmark
+    public byte[] matToHeap() {
+        mRgba.get(0, 0, mOutput);
+        return mOutput;
+    }
+}
@@ -0,0 +1,31 @@
+package org.opencv.benchmarks;
+
+import org.opencv.core.Core;
+
+/**
+ * Loads the desktop OpenCV Java bindings once, if they are on java.library.path.
+ */
+final class NativeLibrary {
+
+    private static Boolean sAvailable;
+
+    private NativeLibrary() {
+    }
+
+    static synchronized boolean isAvailable() {
+        if (sAvailable == null) {
+            try {
+                System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+                sAvailable = Boolean.TRUE;
+            } catch (UnsatisfiedLinkError e) {
+                sAvailable = Boolean.FALSE;
+            }
+        }
+        return sAvailable.booleanValue();
+    }
+
+    static void require() {
+        if (!isAvailable())
+            throw new IllegalStateException(Core.NATIVE_LIBRARY_NAME + " is not on java.library.path");
+    }
+}
@@ -0,0 +1,51 @@
+package org.opencv.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.correction.Nv21Converter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pure Java NV21 to RGBA conversion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class Nv21ConversionBenchmark {
+
+    @Param({ "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mNv21;
+    private byte[] mRgba;
+
+    @Setup
+    public void setup() {
+        int[] size = Frames.parse(resolution);
+        mWidth = size[0];
+        mHeight = size[1];
+        mNv21 = Frames.nv21(mWidth, mHeight);
+        mRgba = new byte[mWidth * mHeight * 4];
+    }
+
+    @Benchmark
+    public byte[] javaNv21ToRgba() {
+        Nv21Converter.toRgba(mNv21, mWidth, mHeight, mRgba);
+        return mRgba;
+    }
+}
@@ -0,0 +1,49 @@
+package org.opencv.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Copy of a corrected RGBA frame from the Java heap into a direct buffer, which is what
+ * Bitmap.copyPixelsFromBuffer() gets for the pure Java engines.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class OutputCopyBenchmark {
+
+    @Param({ "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private byte[] mFrame;
+    private ByteBuffer mPixels;
+
+    @Setup
+    public void setup() {
+        int[] size = Frames.parse(resolution);
+        mFrame = Frames.rgba(size[0], size[1]);
+        mPixels = ByteBuffer.allocateDirect(mFrame.length);
+    }
+
+    @Benchmark
+    public ByteBuffer heapToDirect() {
+        mPixels.clear();
+        mPixels.put(mFrame);
+        return mPixels;
+    }
+}
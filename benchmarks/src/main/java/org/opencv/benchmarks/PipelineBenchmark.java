@@ -0,0 +1,67 @@
+package org.opencv.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.correction.ImageBuffer;
+import org.opencv.correction.JavaCorrection;
+import org.opencv.correction.Nv21Converter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The whole color pipeline, NV21 preview frame to corrected RGBA, on direct ImageBuffers as
+ * the camera bridge runs it on mapped Mats. The heap variant is the byte[] path for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({ "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mNv21;
+    private byte[] mRgba;
+    private ImageBuffer mNv21Image;
+    private ImageBuffer mRgbaImage;
+
+    @Setup
+    public void setup() {
+        int[] size = Frames.parse(resolution);
+        mWidth = size[0];
+        mHeight = size[1];
+        mNv21 = Frames.nv21(mWidth, mHeight);
+        mRgba = new byte[mWidth * mHeight * 4];
+        mNv21Image = ImageBuffer.allocate(mWidth, mHeight, ImageBuffer.FORMAT_NV21);
+        mNv21Image.getData().put(mNv21);
+        mRgbaImage = ImageBuffer.allocate(mWidth, mHeight, ImageBuffer.FORMAT_RGBA);
+    }
+
+    @Benchmark
+    public ImageBuffer directPipeline() {
+        Nv21Converter.toRgba(mNv21Image, mRgbaImage);
+        JavaCorrection.correct(mRgbaImage);
+        return mRgbaImage;
+    }
+
+    @Benchmark
+    public byte[] heapPipeline() {
+        Nv21Converter.toRgba(mNv21, mWidth, mHeight, mRgba);
+        JavaCorrection.correctRgba(mRgba, 0, mRgba.length);
+        return mRgba;
+    }
+}
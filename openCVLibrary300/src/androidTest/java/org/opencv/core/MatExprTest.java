@@ -0,0 +1,107 @@
+package org.opencv.core;
+
+import java.util.Random;
+
+import org.opencv.android.OpenCVLoader;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks that MatExpr saturates and rounds exactly like the Core calls it stands for. Runs on a
+ * device, where the native library is available.
+ */
+public class MatExprTest extends TestCase {
+
+    private static final int ROWS = 31;
+    private static final int COLS = 67;
+
+    private final Random mRandom = new Random(42);
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        assertTrue("OpenCV native library not loaded", OpenCVLoader.initDebug());
+    }
+
+    // Random values, with the first row cycling through the edge values 0, 1, 254 and 255
+    private Mat plane(int type, int offset) {
+        int channels = CvType.channels(type);
+        byte[] data = new byte[ROWS * COLS * channels];
+        mRandom.nextBytes(data);
+        int[] edges = { 0, 255, 1, 254 };
+        for (int i = 0; i < COLS * channels; i++)
+            data[i] = (byte) edges[(i + offset) % edges.length];
+        Mat mat = new Mat(ROWS, COLS, type);
+        mat.put(0, 0, data);
+        return mat;
+    }
+
+    private static void assertSameData(String message, Mat expected, Mat actual) {
+        assertEquals(message, expected.type(), actual.type());
+        assertEquals(message, expected.rows(), actual.rows());
+        assertEquals(message, expected.cols(), actual.cols());
+        byte[] e = new byte[(int) (expected.total() * expected.channels())];
+        byte[] a = new byte[e.length];
+        expected.get(0, 0, e);
+        actual.get(0, 0, a);
+        for (int i = 0; i < e.length; i++)
+            assertEquals(message + " at " + i, e[i] & 0xFF, a[i] & 0xFF);
+    }
+
+    private void checkCorrectionChain(int type) {
+        Mat r = plane(type, 0);
+        Mat g = plane(type, 1);
+        Mat b = plane(type, 2);
+
+        Mat expected = new Mat();
+        Core.add(b, g, expected);
+        Core.subtract(expected, r, expected);
+        Core.add(expected, expected, expected);
+
+        Mat actual = MatExpr.of(b).add(g).sub(r).mul(2).into(new Mat());
+        assertSameData(CvType.typeToString(type), expected, actual);
+
+        // In place, as the correction engines use it
+        MatExpr.of(b).add(g).sub(r).mul(2).into(b);
+        assertSameData(CvType.typeToString(type) + " in place", expected, b);
+    }
+
+    public void testCorrectionChainMatchesCore() {
+        checkCorrectionChain(CvType.CV_8UC1);
+        checkCorrectionChain(CvType.CV_8UC4);
+    }
+
+    public void testScalarsMatchCore() {
+        Mat m = plane(CvType.CV_8UC1, 0);
+        int[] values = { 0, 1, 100, 255, 256, 1000, Integer.MAX_VALUE, -1, -255, -256, Integer.MIN_VALUE };
+        for (int value : values) {
+            Mat expected = new Mat();
+            Core.add(m, Scalar.all(value), expected);
+            assertSameData("add " + value, expected, MatExpr.of(m).add(value).into(new Mat()));
+
+            Core.subtract(m, Scalar.all(value), expected);
+            assertSameData("sub " + value, expected, MatExpr.of(m).sub(value).into(new Mat()));
+        }
+    }
+
+    public void testMulMatchesConvertTo() {
+        // Every byte value times scales whose products fall on .5 ties, where rint rounds to even
+        byte[] all = new byte[256];
+        for (int i = 0; i < all.length; i++)
+            all[i] = (byte) i;
+        Mat m = new Mat(1, all.length, CvType.CV_8UC1);
+        m.put(0, 0, all);
+
+        double[] scales = { 0.5, 1.5, 2.5, 0.25, 0.75, 1.0 / 3, 2, 3.7, 0, -1 };
+        for (double scale : scales) {
+            Mat expected = new Mat();
+            m.convertTo(expected, -1, scale);
+            assertSameData("mul " + scale, expected, MatExpr.of(m).mul(scale).into(new Mat()));
+        }
+
+        Mat random = plane(CvType.CV_8UC4, 3);
+        Mat expected = new Mat();
+        random.convertTo(expected, -1, 1.5);
+        assertSameData("mul 1.5 on random data", expected, MatExpr.of(random).mul(1.5).into(new Mat()));
+    }
+}
@@ -0,0 +1,61 @@
+package org.opencv.android;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Power state from the sticky ACTION_BATTERY_CHANGED broadcast. The battery temperature is the
+ * only thermal reading available on all API levels and follows the SoC closely enough under
+ * sustained load. Updates are delivered on the main thread.
+ */
+public class BatteryPowerStateSource extends BroadcastReceiver implements PowerStateSource {
+
+    private static final String TAG = "BatteryPowerStateSource";
+
+    private final Context mContext;
+    private Listener mListener;
+
+    public BatteryPowerStateSource(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (mListener != null)
+            return;
+        mListener = listener;
+        mContext.registerReceiver(this, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (mListener == null)
+            return;
+        mContext.unregisterReceiver(this);
+        mListener = null;
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        int temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+        int plugged = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0);
+
+        PowerState state = new PowerState(SystemClock.elapsedRealtime(), temperature / 10.0f,
+                (level >= 0 && scale > 0) ? (float) level / scale : 1.0f, plugged != 0);
+        Log.d(TAG, state.toString());
+
+        Listener listener;
+        synchronized (this) {
+            listener = mListener;
+        }
+        if (listener != null)
+            listener.onPowerStateChanged(state);
+    }
+}
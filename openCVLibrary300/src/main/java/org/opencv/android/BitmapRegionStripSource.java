@@ -0,0 +1,92 @@
+package org.opencv.android;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.opencv.batch.StripSource;
+import org.opencv.core.Mat;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+
+/**
+ * Decodes a JPEG or PNG file band by band with BitmapRegionDecoder, so a large photo is never
+ * decoded as a whole. On Jelly Bean and later the band bitmap is reused between calls.
+ * Requires Gingerbread MR1, see isSupported().
+ */
+@TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+public class BitmapRegionStripSource implements StripSource {
+
+    private final BitmapRegionDecoder mDecoder;
+    private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+    private final Rect mRegion = new Rect();
+    private final Mat mBand = new Mat();
+    private Bitmap mBitmap;
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1;
+    }
+
+    public BitmapRegionStripSource(String path) throws IOException {
+        mDecoder = BitmapRegionDecoder.newInstance(path, false);
+        mOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Decodes an image that is not a file, for example a content Uri from the gallery. The
+     * decoder keeps its own copy of the encoded data, so the stream can be closed right away.
+     */
+    public BitmapRegionStripSource(InputStream in) throws IOException {
+        mDecoder = BitmapRegionDecoder.newInstance(in, false);
+        if (mDecoder == null)
+            throw new IOException("Unsupported image format");
+        mOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    }
+
+    @Override
+    public int getWidth() {
+        return mDecoder.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mDecoder.getHeight();
+    }
+
+    @Override
+    public Mat read(int y, int rows) throws IOException {
+        mRegion.set(0, y, mDecoder.getWidth(), y + rows);
+
+        /* Reuse needs a bitmap of exactly the band size, the last band is usually shorter */
+        boolean reuse = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN
+                && mBitmap != null && mBitmap.getHeight() == rows;
+        mOptions.inBitmap = reuse ? mBitmap : null;
+
+        Bitmap bitmap = mDecoder.decodeRegion(mRegion, mOptions);
+        if (bitmap == null)
+            throw new IOException("Cannot decode rows " + y + " to " + (y + rows));
+        if (bitmap != mBitmap) {
+            if (mBitmap != null)
+                mBitmap.recycle();
+            mBitmap = bitmap;
+        }
+
+        Utils.bitmapToMat(mBitmap, mBand);
+        return mBand;
+    }
+
+    @Override
+    public void close() {
+        mOptions.inBitmap = null;
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+        mDecoder.recycle();
+        mBand.release();
+    }
+}
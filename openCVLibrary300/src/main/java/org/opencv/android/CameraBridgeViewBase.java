@@ -1,11 +1,20 @@
 package org.opencv.android;
 
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opencv.R;
 import org.opencv.android.Utils;
+import org.opencv.capture.AviRecorder;
+import org.opencv.capture.BurstCapture;
+import org.opencv.capture.CaptureWriter;
+import org.opencv.capture.FrameCapture;
+import org.opencv.capture.ReplayBuffer;
 import org.opencv.core.Mat;
+import org.opencv.core.MatRegistry;
 import org.opencv.core.Size;
 import org.opencv.videoio.Videoio;
 
@@ -17,10 +26,12 @@ import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
+import android.os.Build;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
+import android.view.WindowManager;
 
 /**
  * This is a basic class, implementing the interaction with Camera and OpenCV library.
@@ -51,6 +62,35 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected int mCameraIndex = CAMERA_ID_ANY;
     protected boolean mEnabled;
     protected FpsMeter mFpsMeter = null;
+    protected MemoryMeter mMemoryMeter = null;
+    protected volatile float mMaxFps = 0;
+    protected volatile float mResolutionScale = 1.0f;
+    private volatile FrameScheduler mFrameScheduler;
+    private ProcessingGovernor mGovernor;
+    private final AtomicBoolean mReconnectPending = new AtomicBoolean();
+    private CaptureWriter mCaptureWriter;
+    private volatile FrameCapture mFrameCapture;
+    private volatile BurstCapture mBurstCapture;
+    private volatile AviRecorder mRecorder;
+    private volatile ReplayBuffer mReplayBuffer;
+    // Source and destination of the cached bitmap on the canvas, reused from frame to frame
+    private final Rect mBitmapSrc = new Rect();
+    private final Rect mBitmapDst = new Rect();
+
+    private static final int CAPTURE_SLOTS = 2;
+    private static final int CAPTURE_SLOT_SIZE = 4 * 1024 * 1024;
+    private static final int CAPTURE_ENCODERS = 2;
+    private static final int CAPTURE_JPEG_QUALITY = 95;
+    private static final int BURST_FRAMES = 6;
+    private static final long RECORDING_MEMORY_BUDGET = 48L * 1024 * 1024;
+    private static final int RECORDING_JPEG_QUALITY = 80;
+    private static final float RECORDING_DEFAULT_FPS = 30;
+    private static final String REPLAY_FILE = "replay.buf";
+    private static final int REPLAY_CAPACITY = 32 * 1024 * 1024;
+    private static final long REPLAY_WINDOW_MS = 20000;
+    private static final int REPLAY_MAX_WIDTH = 480;
+    private static final float REPLAY_MAX_FPS = 15;
+    private static final int REPLAY_JPEG_QUALITY = 70;
 
     public static final int CAMERA_ID_ANY   = -1;
     public static final int CAMERA_ID_BACK  = 99;
@@ -257,6 +297,216 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             mFpsMeter = null;
     }
 
+    /**
+     * This method enables the memory accounting overlay and Mat tracking (see MemoryMeter)
+     */
+    public void enableMemoryMeter() {
+        if (mMemoryMeter == null) {
+            MatRegistry.setEnabled(true);
+            mMemoryMeter = new MemoryMeter();
+        }
+    }
+
+    public void disableMemoryMeter() {
+        mMemoryMeter = null;
+        MatRegistry.setEnabled(false);
+    }
+
+    /**
+     * Saves the next displayed frame, after processing, as a JPEG file. The frame thread only
+     * copies the frame; encoding and writing happen in the background and the callback is
+     * invoked from a background thread when done.
+     * @return false if a previous frame capture is still waiting for its frame
+     */
+    public boolean captureFrame(File file, CaptureWriter.Callback callback) {
+        synchronized(mSyncObject) {
+            if (mFrameCapture == null)
+                mFrameCapture = new FrameCapture(getCaptureWriter(), CAPTURE_ENCODERS, CAPTURE_JPEG_QUALITY);
+            return mFrameCapture.request(file, callback);
+        }
+    }
+
+    /**
+     * Copies the next BURST_FRAMES displayed frames, after processing, and saves the sharpest of
+     * them as a JPEG file. The preview keeps running; the callback is invoked from a background
+     * thread when the file is written.
+     * @return false if the previous burst is still in progress
+     */
+    public boolean captureBurst(File file, CaptureWriter.Callback callback) {
+        synchronized(mSyncObject) {
+            if (mBurstCapture == null)
+                mBurstCapture = new BurstCapture(getCaptureWriter(), BURST_FRAMES, CAPTURE_ENCODERS, CAPTURE_JPEG_QUALITY);
+            return mBurstCapture.request(file, callback);
+        }
+    }
+
+    /**
+     * Starts recording the displayed frames, after processing, to a Motion JPEG AVI file.
+     * Frames are dropped rather than delaying the preview when encoding or storage falls behind.
+     * @return false if a recording is already running
+     */
+    public boolean startRecording(File file) {
+        synchronized(mSyncObject) {
+            if (mRecorder != null)
+                return false;
+            float fps = mMaxFps > 0 ? mMaxFps : RECORDING_DEFAULT_FPS;
+            mRecorder = new AviRecorder(file, fps, RECORDING_MEMORY_BUDGET, CAPTURE_ENCODERS, RECORDING_JPEG_QUALITY);
+            return true;
+        }
+    }
+
+    /**
+     * Stops the recording and finishes the file, waiting for the frames still being encoded.
+     * @throws IOException if the file could not be written
+     */
+    public void stopRecording() throws IOException {
+        AviRecorder recorder;
+        synchronized(mSyncObject) {
+            recorder = mRecorder;
+            mRecorder = null;
+        }
+        if (recorder != null) {
+            recorder.close();
+            Log.i(TAG, "Recording stopped: " + recorder.getWrittenFrames() + " frames written, "
+                    + recorder.getDroppedFrames() + " dropped");
+        }
+    }
+
+    public boolean isRecording() {
+        return mRecorder != null;
+    }
+
+    /**
+     * Starts keeping the last REPLAY_WINDOW_MS of displayed frames, downscaled, in a memory-mapped
+     * file in the cache directory, so they can be saved with saveReplay().
+     * @return false if the backing file could not be created
+     */
+    public boolean enableReplayBuffer() {
+        synchronized(mSyncObject) {
+            if (mReplayBuffer != null)
+                return true;
+            try {
+                mReplayBuffer = new ReplayBuffer(new File(getContext().getCacheDir(), REPLAY_FILE), REPLAY_CAPACITY,
+                        REPLAY_WINDOW_MS, REPLAY_MAX_WIDTH, REPLAY_MAX_FPS, REPLAY_JPEG_QUALITY);
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot create replay buffer", e);
+                return false;
+            }
+        }
+    }
+
+    public void disableReplayBuffer() {
+        ReplayBuffer replay;
+        synchronized(mSyncObject) {
+            replay = mReplayBuffer;
+            mReplayBuffer = null;
+        }
+        if (replay != null)
+            replay.close();
+    }
+
+    public boolean isReplayBufferEnabled() {
+        return mReplayBuffer != null;
+    }
+
+    /**
+     * Saves the frames kept by the replay buffer as a Motion JPEG AVI file. Recording and the
+     * preview go on while the file is written; the callback is invoked from a background thread.
+     * @return false if the replay buffer is disabled, empty or already saving
+     */
+    public boolean saveReplay(File file, CaptureWriter.Callback callback) {
+        ReplayBuffer replay = mReplayBuffer;
+        return replay != null && replay.save(file, callback);
+    }
+
+    /**
+     * Returns the background writer shared by all captures of this view, creating it on first use.
+     */
+    protected CaptureWriter getCaptureWriter() {
+        synchronized(mSyncObject) {
+            if (mCaptureWriter == null)
+                mCaptureWriter = new CaptureWriter(CAPTURE_SLOTS, CAPTURE_SLOT_SIZE);
+            return mCaptureWriter;
+        }
+    }
+
+    /**
+     * Finishes pending captures and frees their buffers. Call when the view is no longer used.
+     */
+    public void closeCapture() {
+        try {
+            stopRecording();
+        } catch (IOException e) {
+            Log.e(TAG, "Recording failed", e);
+        }
+        disableReplayBuffer();
+        synchronized(mSyncObject) {
+            if (mFrameCapture != null) {
+                mFrameCapture.close();
+                mFrameCapture = null;
+            }
+            if (mBurstCapture != null) {
+                mBurstCapture.close();
+                mBurstCapture = null;
+            }
+            if (mCaptureWriter != null) {
+                mCaptureWriter.close();
+                mCaptureWriter = null;
+            }
+        }
+    }
+
+    /**
+     * Sets the governor that adapts frame rate, correction and resolution to the device
+     * temperature. It runs while the camera is started. Pass null to remove it.
+     * @param governor - new governor or null
+     */
+    public void setProcessingGovernor(ProcessingGovernor governor) {
+        synchronized(mSyncObject) {
+            if (mGovernor != null && mState == STARTED)
+                mGovernor.stop();
+            mGovernor = governor;
+            if (mGovernor != null && mState == STARTED)
+                startGovernor();
+        }
+    }
+
+    /**
+     * This method limits the rate at which frames are processed. Frames are aligned to the display
+     * refresh and the ones that would not be shown, or would exceed the cap, are dropped before
+     * any processing (see FrameScheduler).
+     * @param maxFps - maximum frames per second, 0 for no limit other than the display refresh rate
+     */
+    public void setMaxFps(float maxFps) {
+        mMaxFps = maxFps;
+        FrameScheduler scheduler = mFrameScheduler;
+        if (scheduler != null)
+            scheduler.setMaxFps(maxFps);
+    }
+
+    /**
+     * Replaces the display clock used to schedule frame processing. By default the view follows
+     * the display through Choreographer where available.
+     * @param clock - new clock
+     */
+    public void setFrameClock(FrameClock clock) {
+        synchronized(mSyncObject) {
+            FrameScheduler scheduler = mFrameScheduler;
+            if (scheduler != null && mState == STARTED)
+                scheduler.getClock().stop();
+            scheduler = new FrameScheduler(clock);
+            scheduler.setMaxFps(mMaxFps);
+            mFrameScheduler = scheduler;
+            if (mState == STARTED)
+                clock.start();
+        }
+    }
+
+    public FrameScheduler getFrameScheduler() {
+        return mFrameScheduler;
+    }
+
     /**
      *
      * @param listener
@@ -358,6 +608,14 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // Bitmap must be constructed before surface
     private void onEnterStartedState() {
         Log.d(TAG, "call onEnterStartedState");
+        if (mFrameScheduler == null) {
+            setFrameClock(createFrameClock());
+        } else {
+            mFrameScheduler.reset();
+            mFrameScheduler.getClock().start();
+        }
+        if (mGovernor != null)
+            startGovernor();
         /* Connect camera */
         if (!connectCamera(getWidth(), getHeight())) {
             AlertDialog ad = new AlertDialog.Builder(getContext()).create();
@@ -375,12 +633,83 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     }
 
     private void onExitStartedState() {
+        if (mGovernor != null)
+            mGovernor.stop();
+        if (mFrameScheduler != null)
+            mFrameScheduler.getClock().stop();
         disconnectCamera();
         if (mCacheBitmap != null) {
             mCacheBitmap.recycle();
         }
     }
 
+    private FrameClock createFrameClock() {
+        WindowManager windowManager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        if (refreshRate < 1)
+            refreshRate = 60;
+        Log.d(TAG, "Display refresh rate: " + refreshRate);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN)
+            return new ChoreographerFrameClock(refreshRate);
+        return new FixedRateFrameClock(refreshRate);
+    }
+
+    private void startGovernor() {
+        mGovernor.start(new ProcessingGovernor.Listener() {
+            @Override
+            public void onPolicyChanged(ProcessingGovernor.Policy policy) {
+                Log.i(TAG, "Processing governor: " + policy);
+                applyPolicy(policy);
+            }
+        });
+    }
+
+    /**
+     * Applies a policy of the ProcessingGovernor. Subclasses that own the correction
+     * engine override this to honor cheapCorrection.
+     */
+    protected void applyPolicy(ProcessingGovernor.Policy policy) {
+        setMaxFps(policy.maxFps);
+        if (policy.resolutionScale != mResolutionScale) {
+            mResolutionScale = policy.resolutionScale;
+            reconnectCamera();
+        }
+    }
+
+    /*
+     * Reopens the camera at the current resolution scale. Closing joins the frame worker and
+     * opening the camera can take a few hundred ms, so this runs on its own thread; changes
+     * made meanwhile are picked up by the same reconnect.
+     */
+    private void reconnectCamera() {
+        if (!mReconnectPending.compareAndSet(false, true))
+            return;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized(mSyncObject) {
+                    mReconnectPending.set(false);
+                    if (mState != STARTED)
+                        return;
+                    Log.d(TAG, "Reconnecting camera at scale " + mResolutionScale);
+                    disconnectCamera();
+                    if (!connectCamera(getWidth(), getHeight()))
+                        Log.e(TAG, "Cannot reconnect camera at scale " + mResolutionScale);
+                }
+            }
+        }, "CameraReconnect").start();
+    }
+
+    /**
+     * Called by subclasses as soon as a camera frame arrives. Returns false if the frame
+     * must be dropped, see setMaxFps().
+     */
+    protected boolean isFrameDue() {
+        FrameScheduler scheduler = mFrameScheduler;
+        return scheduler == null || scheduler.shouldProcess(System.nanoTime());
+    }
+
     /**
      * This method shall be called by the subclasses when they have valid
      * object and want it to be delivered to external client (via callback) and
@@ -390,6 +719,10 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     protected void deliverAndDrawFrame(CvCameraViewFrame frame) {
         Mat modified;
 
+        MemoryMeter memoryMeter = mMemoryMeter;
+        if (memoryMeter != null)
+            memoryMeter.frameStarted();
+
         if (mListener != null) {
             modified = mListener.onCameraFrame(frame);
         } else {
@@ -398,6 +731,19 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
         boolean bmpValid = true;
         if (modified != null) {
+            FrameCapture capture = mFrameCapture;
+            if (capture != null)
+                capture.onFrame(modified);
+            BurstCapture burst = mBurstCapture;
+            if (burst != null)
+                burst.onFrame(modified);
+            AviRecorder recorder = mRecorder;
+            if (recorder != null)
+                recorder.onFrame(modified);
+            ReplayBuffer replay = mReplayBuffer;
+            if (replay != null)
+                replay.onFrame(modified);
+
             try {
                 Utils.matToBitmap(modified, mCacheBitmap);
             } catch(Exception e) {
@@ -408,30 +754,36 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
             }
         }
 
+        if (memoryMeter != null)
+            memoryMeter.frameFinished();
+
         if (bmpValid && mCacheBitmap != null) {
             Canvas canvas = getHolder().lockCanvas();
             if (canvas != null) {
                 canvas.drawColor(0, android.graphics.PorterDuff.Mode.CLEAR);
                 Log.d(TAG, "mStretch value: " + mScale);
 
+                mBitmapSrc.set(0, 0, mCacheBitmap.getWidth(), mCacheBitmap.getHeight());
                 if (mScale != 0) {
-                    canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
+                    mBitmapDst.set((int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2),
                          (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2),
                          (int)((canvas.getWidth() - mScale*mCacheBitmap.getWidth()) / 2 + mScale*mCacheBitmap.getWidth()),
-                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight())), null);
+                         (int)((canvas.getHeight() - mScale*mCacheBitmap.getHeight()) / 2 + mScale*mCacheBitmap.getHeight()));
                 } else {
-                     canvas.drawBitmap(mCacheBitmap, new Rect(0,0,mCacheBitmap.getWidth(), mCacheBitmap.getHeight()),
-                         new Rect((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
+                    mBitmapDst.set((canvas.getWidth() - mCacheBitmap.getWidth()) / 2,
                          (canvas.getHeight() - mCacheBitmap.getHeight()) / 2,
                          (canvas.getWidth() - mCacheBitmap.getWidth()) / 2 + mCacheBitmap.getWidth(),
-                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight()), null);
+                         (canvas.getHeight() - mCacheBitmap.getHeight()) / 2 + mCacheBitmap.getHeight());
                 }
+                canvas.drawBitmap(mCacheBitmap, mBitmapSrc, mBitmapDst, null);
 
                 if (mFpsMeter != null) {
                     mFpsMeter.measure();
                     mFpsMeter.draw(canvas, 20, 30);
                 }
+
+                if (memoryMeter != null)
+                    memoryMeter.draw(canvas, 20, 60);
                 getHolder().unlockCanvasAndPost(canvas);
             }
         }
@@ -455,6 +807,9 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
     // NOTE: On Android 4.1.x the function must be called before SurfaceTextre constructor!
     protected void AllocateCache()
     {
+        /* A reconnect replaces the bitmap; the frame worker drawing it has been joined by then */
+        if (mCacheBitmap != null)
+            mCacheBitmap.recycle();
         mCacheBitmap = Bitmap.createBitmap(mFrameWidth, mFrameHeight, Bitmap.Config.ARGB_8888);
     }
 
@@ -478,6 +833,8 @@ public abstract class CameraBridgeViewBase extends SurfaceView implements Surfac
 
         int maxAllowedWidth = (mMaxWidth != MAX_UNSPECIFIED && mMaxWidth < surfaceWidth)? mMaxWidth : surfaceWidth;
         int maxAllowedHeight = (mMaxHeight != MAX_UNSPECIFIED && mMaxHeight < surfaceHeight)? mMaxHeight : surfaceHeight;
+        maxAllowedWidth = (int) (maxAllowedWidth * mResolutionScale);
+        maxAllowedHeight = (int) (maxAllowedHeight * mResolutionScale);
 
         for (Object size : supportedSizes) {
             int width = accessor.getWidth(size);
@@ -0,0 +1,60 @@
+package org.opencv.android;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * FrameClock following the real vsync through Choreographer (API 16+). The period comes from the
+ * display refresh rate; the phase is refreshed from a frame callback about once per second, so the
+ * main thread is not woken up on every vsync. Must be started and stopped on a Looper thread.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class ChoreographerFrameClock implements FrameClock, Choreographer.FrameCallback {
+
+    private static final long RESYNC_DELAY_MS = 1000;
+
+    private final long mPeriod;
+    private volatile long mReference;
+    private boolean mRunning;
+
+    /**
+     * @param refreshRate - display refresh rate in Hz
+     */
+    public ChoreographerFrameClock(float refreshRate) {
+        mPeriod = (long) (1000000000L / refreshRate);
+    }
+
+    @Override
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (mRunning) {
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mReference = frameTimeNanos;
+        if (mRunning)
+            Choreographer.getInstance().postFrameCallbackDelayed(this, RESYNC_DELAY_MS);
+    }
+
+    @Override
+    public long getVsyncPeriodNanos() {
+        return mPeriod;
+    }
+
+    @Override
+    public long getVsyncReferenceNanos() {
+        return mReference;
+    }
+}
@@ -0,0 +1,35 @@
+package org.opencv.android;
+
+/**
+ * Stand-in FrameClock with a fixed refresh rate and an arbitrary phase. Used on devices without
+ * Choreographer and where no display is involved.
+ */
+public class FixedRateFrameClock implements FrameClock {
+
+    private final long mPeriod;
+
+    /**
+     * @param refreshRate - refresh rate in Hz
+     */
+    public FixedRateFrameClock(float refreshRate) {
+        mPeriod = (long) (1000000000L / refreshRate);
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    @Override
+    public long getVsyncPeriodNanos() {
+        return mPeriod;
+    }
+
+    @Override
+    public long getVsyncReferenceNanos() {
+        return 0;
+    }
+}
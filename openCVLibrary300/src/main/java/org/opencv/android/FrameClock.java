@@ -0,0 +1,21 @@
+package org.opencv.android;
+
+/**
+ * Display refresh timing used by the FrameScheduler. Times are on the System.nanoTime() base.
+ */
+public interface FrameClock {
+
+    public void start();
+
+    public void stop();
+
+    /**
+     * Duration of one display refresh.
+     */
+    public long getVsyncPeriodNanos();
+
+    /**
+     * Time of a recent vsync. Later vsyncs are at multiples of the period after it.
+     */
+    public long getVsyncReferenceNanos();
+}
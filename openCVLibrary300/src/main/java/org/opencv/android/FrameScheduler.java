@@ -0,0 +1,88 @@
+package org.opencv.android;
+
+/**
+ * Decides which camera frames are worth processing. Every frame is mapped to the next display
+ * vsync. A frame is dropped, before any work is done on it, if that vsync comes before the next
+ * due time; each accepted frame moves the due time forward by one frame interval (the cap, but
+ * never less than one refresh period). Due times advance on their own schedule rather than from
+ * the frame that was accepted, so the average rate matches the cap even when it is not a divisor
+ * of the camera or display rate, and two frames never claim the same vsync.
+ */
+public class FrameScheduler {
+
+    private final FrameClock mClock;
+    private volatile float mMaxFps;
+    private long mNextDue;
+    private boolean mHasLast;
+    private long mAcceptedFrames;
+    private long mDroppedFrames;
+
+    public FrameScheduler(FrameClock clock) {
+        mClock = clock;
+    }
+
+    public FrameClock getClock() {
+        return mClock;
+    }
+
+    /**
+     * @param maxFps - maximum processed frames per second, 0 for no cap other than the display rate
+     */
+    public void setMaxFps(float maxFps) {
+        mMaxFps = maxFps;
+    }
+
+    public float getMaxFps() {
+        return mMaxFps;
+    }
+
+    /**
+     * Called when a camera frame arrives.
+     * @param nowNanos - arrival time, System.nanoTime()
+     * @return true if the frame should be processed, false to drop it
+     */
+    public synchronized boolean shouldProcess(long nowNanos) {
+        long period = mClock.getVsyncPeriodNanos();
+        long reference = mClock.getVsyncReferenceNanos();
+
+        long elapsed = nowNanos - reference;
+        long index = elapsed / period;
+        if (elapsed < 0 && index * period != elapsed)
+            index--;
+        long vsync = reference + (index + 1) * period;
+
+        long interval = period;
+        float maxFps = mMaxFps;
+        if (maxFps > 0)
+            interval = Math.max(period, (long) (1000000000.0 / maxFps));
+
+        /* No credit is kept for idle time, frames must not come in bursts after a pause */
+        if (!mHasLast || vsync - mNextDue > interval)
+            mNextDue = vsync;
+
+        if (vsync < mNextDue - period / 2) {
+            mDroppedFrames++;
+            return false;
+        }
+
+        mNextDue += interval;
+        mHasLast = true;
+        mAcceptedFrames++;
+        return true;
+    }
+
+    /**
+     * Forgets the schedule, e.g. after the camera was reconnected.
+     */
+    public synchronized void reset() {
+        mHasLast = false;
+    }
+
+    public synchronized long getAcceptedFrames() {
+        return mAcceptedFrames;
+    }
+
+    public synchronized long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+}
@@ -1,7 +1,7 @@
 package org.opencv.android;
 
-import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import android.content.Context;
@@ -18,9 +18,14 @@ import android.widget.Toast;
 
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.MatPool;
+import org.opencv.core.MatRegistry;
 import org.opencv.core.Size;
-import org.opencv.core.Core;
-import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.capture.FrameTraceReplay;
+import org.opencv.capture.FrameTraceWriter;
+import org.opencv.correction.CorrectionEngine;
+import org.opencv.correction.LinearCorrection;
+import org.opencv.correction.SplitMergeCorrection;
 import org.opencv.imgproc.Imgproc;
 
 /**
@@ -46,6 +51,10 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
     protected Camera mCamera;
     protected JavaCameraFrame[] mCameraFrame;
     private SurfaceTexture mSurfaceTexture;
+    private volatile CorrectionEngine mCorrectionEngine = new SplitMergeCorrection();
+    private volatile boolean mCheapCorrection;
+    private final CorrectionEngine mCheapEngine = new LinearCorrection();
+    private volatile FrameTraceWriter mTraceWriter;
 
     public static class JavaCameraSizeAccessor implements ListItemAccessor {
 
@@ -70,6 +79,84 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         super(context, attrs);
     }
 
+    /**
+     * Sets the correction applied to every RGBA frame. Takes effect from the next frame.
+     * @param engine - correction to use, must not be null
+     */
+    public void setCorrectionEngine(CorrectionEngine engine) {
+        if (engine == null)
+            throw new IllegalArgumentException("Correction engine must not be null");
+        mCorrectionEngine = engine;
+
+        FrameTraceWriter trace = mTraceWriter;
+        if (trace != null)
+            trace.writeSettings(getTraceSettings(), System.nanoTime());
+    }
+
+    public CorrectionEngine getCorrectionEngine() {
+        return mCorrectionEngine;
+    }
+
+    /**
+     * The engine actually used for the frames: the configured one, or the cheap
+     * LinearCorrection while the ProcessingGovernor asks for it.
+     */
+    public CorrectionEngine getActiveCorrectionEngine() {
+        return mCheapCorrection ? mCheapEngine : mCorrectionEngine;
+    }
+
+    @Override
+    protected void applyPolicy(ProcessingGovernor.Policy policy) {
+        super.applyPolicy(policy);
+        if (policy.cheapCorrection != mCheapCorrection) {
+            mCheapCorrection = policy.cheapCorrection;
+
+            FrameTraceWriter trace = mTraceWriter;
+            if (trace != null)
+                trace.writeSettings(getTraceSettings(), System.nanoTime());
+        }
+    }
+
+    /**
+     * Starts recording the raw preview frames to a trace file that FrameTraceReplay can play back.
+     * The camera must be connected. Recording stops with stopFrameTrace() or when the camera is released.
+     * @param file - trace file to create
+     */
+    public void startFrameTrace(File file) throws IOException {
+        stopFrameTrace();
+        if (mFrameWidth == 0 || mFrameHeight == 0)
+            throw new IllegalStateException("Camera is not connected");
+        FrameTraceWriter trace = new FrameTraceWriter(file, mFrameWidth, mFrameHeight);
+        trace.writeSettings(getTraceSettings(), System.nanoTime());
+        mTraceWriter = trace;
+        Log.i(TAG, "Recording frame trace to " + file);
+    }
+
+    /**
+     * Stops recording and flushes the trace file. Does nothing if no trace is being recorded.
+     */
+    public void stopFrameTrace() {
+        FrameTraceWriter trace = mTraceWriter;
+        if (trace == null)
+            return;
+        mTraceWriter = null;
+        try {
+            trace.close();
+            Log.i(TAG, "Frame trace closed: " + trace.getWrittenFrames() + " frames, "
+                    + trace.getDroppedFrames() + " dropped");
+        } catch (IOException e) {
+            Log.e(TAG, "Frame trace could not be written", e);
+        }
+    }
+
+    public boolean isFrameTraceRecording() {
+        return mTraceWriter != null;
+    }
+
+    private String getTraceSettings() {
+        return FrameTraceReplay.SETTING_ENGINE + "=" + getActiveCorrectionEngine().getName();
+    }
+
     protected boolean initializeCamera(int width, int height) {
         Log.d(TAG, "Initialize java camera");
         boolean result = true;
@@ -185,9 +272,11 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                     mCamera.addCallbackBuffer(mBuffer);
                     mCamera.setPreviewCallbackWithBuffer(this);
 
+                    /* Pooled, so switching resolutions back and forth does not reallocate */
+                    MatPool pool = MatPool.getDefault();
                     mFrameChain = new Mat[2];
-                    mFrameChain[0] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
-                    mFrameChain[1] = new Mat(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                    mFrameChain[0] = pool.acquire(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
+                    mFrameChain[1] = pool.acquire(mFrameHeight + (mFrameHeight/2), mFrameWidth, CvType.CV_8UC1);
 
                     AllocateCache();
 
@@ -217,6 +306,7 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
     }
 
     protected void releaseCamera() {
+        stopFrameTrace();
         synchronized (this) {
             if (mCamera != null) {
                 mCamera.stopPreview();
@@ -225,17 +315,33 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
                 mCamera.release();
             }
             mCamera = null;
-            if (mFrameChain != null) {
-                mFrameChain[0].release();
-                mFrameChain[1].release();
-            }
             if (mCameraFrame != null) {
                 mCameraFrame[0].release();
                 mCameraFrame[1].release();
+                mCameraFrame = null;
+            }
+            if (mFrameChain != null) {
+                MatPool.getDefault().release(mFrameChain[0]);
+                MatPool.getDefault().release(mFrameChain[1]);
+                mFrameChain = null;
             }
         }
     }
 
+    /**
+     * Restarts the preview after a still capture stopped it, re-registering the preallocated
+     * callback buffer so frames keep arriving without per-frame allocations.
+     */
+    protected void restartPreview() {
+        synchronized (this) {
+            if (mCamera == null)
+                return;
+            mCamera.startPreview();
+            mCamera.addCallbackBuffer(mBuffer);
+            mCamera.setPreviewCallbackWithBuffer(this);
+        }
+    }
+
     private boolean mCameraFrameReady = false;
 
     @Override
@@ -285,19 +391,30 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         releaseCamera();
 
         mCameraFrameReady = false;
+
+        /* The frame buffers and correction planes are not needed until the camera is back */
+        MatPool.getDefault().clear();
     }
 
     @Override
     public void onPreviewFrame(byte[] frame, Camera arg1) {
         Log.d(TAG, "Preview Frame received. Frame size: " + frame.length);
 
-        synchronized (this) {
-            byte[] frame2 = frame.clone();
+        FrameTraceWriter trace = mTraceWriter;
+        if (trace != null)
+            trace.writeFrame(frame, System.nanoTime());
 
-            mFrameChain[mChainIdx].put(0, 0, frame);
-            mCameraFrameReady = true;
-            this.notify();
+        /* Frames the display would not show are dropped before they are even copied */
+        if (isFrameDue()) {
+            synchronized (this) {
+                /* The chain Mats are allocated once and only written here, so their snapshot stays valid */
+                Mat chain = mFrameChain[mChainIdx];
+                chain.put(0, 0, frame, chain.header());
+                mCameraFrameReady = true;
+                this.notify();
+            }
         }
+
         if (mCamera != null)
             mCamera.addCallbackBuffer(mBuffer);
     }
@@ -308,314 +425,40 @@ public class JavaCameraView extends CameraBridgeViewBase implements PreviewCallb
         @Override
         public Mat gray() {
             Log.i("KTB", "Mat Gray Entered");
-            return mYuvFrameData.submat(0, mHeight, 0, mWidth);
+            /* The luma plane is a fixed view of the frame buffer, so one header serves every frame */
+            if (mGray == null || mGray.empty())
+                mGray = MatRegistry.track(mYuvFrameData.submat(0, mHeight, 0, mWidth));
+            return mGray;
         }
 
         @Override
         public Mat rgba() {
-
-          //  int ktb_moder = 1;
-
-
-//            Log.i("KTB", "Mat rgba Entered");
-
             Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
 
-
-             //    Imgproc.cvtColor(mYuvFrameData, mRgba, Imgproc.COLOR_YUV2RGB_NV21, 4);
-
-            //Log.i("KTB", "Number of CPUS" + Core.getNumberOfCPUs());
-            List<Mat> splt = new ArrayList<Mat>(3);
-            List<Mat> output = new ArrayList<Mat>(3);
-
-            Core.split(mRgba,splt);
-
-            Mat mR = splt.get(0);
-            Mat mG = splt.get(1);
-            Mat mB = splt.get(2);
-            Mat mA = splt.get(3);
-
-
-            /*
-            Mat mR2 = mR.clone();
-            Mat mG2 = mG.clone();
-            Mat mG3 = mG.clone();
-
-            Mat mB2 = mB.clone();
-
-            Mat mRG = mR.clone();
-            Mat mBG = mG.clone();
-            Mat mBR = mB.clone();
-
-            Mat mnR = mR.clone();
-            Mat mnG = mG.clone();
-            Mat mnB = mB.clone();
-
-            Mat mpR = mR.clone();
-            Mat mpG = mG.clone();
-            Mat mpB = mB.clone();
-
-            Mat mRGB = mB.clone();
-
-
-            Mat moutB1 = mB.clone();
-            Mat moutB2 = mB.clone();
-            Mat moutB3 = mB.clone();
-            Mat moutB4 = mB.clone();
-*/
-            // if (ktb_moder == 1) {
-             //   Core.add(mR, mG, mR);
-           // }
-
-           // else if (ktb_moder == 2)
-          //  {
-
-
-            //FIXME UNCOMMENT THE NEXT LINE {KTB}
-           // Core.multiply(mB, mG, mB);
-  //          Core.add(mB, mG, mB);
-            //Core.add(mB, mG, mB);
-
-            //Core.add(mR, mG, mR);
-
-            // }
-
-
-/*
-            Imgproc.threshold(mR2, mR2, 0, 255, mR2.type());
-            Imgproc.threshold(mG2, mG2, 0, 255, mG2.type());
-      //      Imgproc.threshold(mG3, mG3, 100, 255, mG3.type());
-
-            Imgproc.threshold(mB2, mB2, 0, 255, mB2.type());
-
-
-
-
-           Core.bitwise_not(mnR, mnR);
-            Core.bitwise_not(mnG, mnG);
-            Core.bitwise_not(mnB, mnB);
-
-
-            Core.bitwise_and(mR2, mG2, mRG);
-            Core.bitwise_and(mRG, mnB, mRG);
-
-            Core.bitwise_and(mG2,mnB,mpG);
-            Core.bitwise_and(mpG,mnR,mpG);
-
-            Core.bitwise_and(mR2, mB2, mBR);
-            Core.bitwise_and(mBR, mnG, mBR);
-
-            Core.bitwise_and(mR2, mG2, mRGB);
-            Core.bitwise_and(mRGB, mB2, mRGB);
-
-            Core.bitwise_and(mB2, mnR, mpB);
-            Core.bitwise_and(mpB, mnG, mpB);
-
-            Core.bitwise_and(mG2, mnR, mBG);
-            Core.bitwise_and(mBG, mB2, mBG);
-
-            //  Log.i('KTB' , "Max Val: " + Core.ma)
-
-          //  Core.add(mB, mT, mB);
-           // Core.add(mB, mT, mB);
-           // Core.add(mB, mT, mB);
-           // Core.add(mB, mT, mB);
-
-            //Core.bitwise_not(mG,mG);
-            Mat mZ = Mat.zeros(mG.size(),mG.type());
-
-            //splt.add(1,mG);
-
-
-            Core.min(mpB, mB, moutB1);
-            Core.min(mBG, mB, moutB2);
-            Core.min(mRGB, mB, moutB3);
-            Core.min(mpG, mB, moutB4);
-
-            Core.bitwise_or(moutB1, moutB2, moutB1);
-            Core.bitwise_or(moutB3, mpG, moutB3);
-            Core.bitwise_or(moutB1, moutB3, moutB1);
-
-        //    Core.min(mpG, mG, mpG);
-         //   Core.bitwise_or(mB, mpG, mB);
-            Imgproc.adaptiveThreshold();
-*/
-
-
-         //   Core.add(mG,mB,mB);
-            Core.add(mB , mG, mB);
-          //  Core.add(mB, mG, mB);
-
-            Core.subtract(mB , mR, mB);
-            Core.add(mB, mB, mB);
-
-            Mat mZ = Mat.zeros(mG.size(),mG.type());
-
-            output.add(mR);
-            output.add(mG);
-            output.add(mB);
-         //   output.add(mA);
-
-
-
-         //   Log.i("KTB" , "Type of SPLT INITL " + splt.size());
-
-         //  Log.i("KTB", "Adding took place: " + splt.add(mG));
-          //  Log.i("KTB" , "Type of SPLT Final " + splt.size());
-
-
-            //Core.add(mG,mG,);
-
-
-
-
-             Core.merge(output, mRgba);
-
-           // Mat img = mRgba;
-
-         //   mRgba = Imgproc.accumulate();
-         //   Imgproc.accumulate();
-
-
-
-
-//            Imgproc.cvtColor(mRgba, mRgba, Imgproc.COLOR_RGB2HSV, 4);
-
-          //  StringBuilder sb = new StringBuilder();
-          //  sb.append("");
-
-          //  byte dat;
-          //  int[] i1 = {};
-         //   int j = mRgba.get(10, 10, i1);
-         //   sb.append(j);
-
-
-          //  String tester = sb.toString();
-          //    Log.i("KTB", tester);
-
-          //  Log.i("KTB" , mRgba.get(10,10).toString());
-          //  final Mat kit = Mat.ones(mRgba.size(),mRgba.type());
-
-
-
-
-           // Log.i("KTB" , "KIT" + kit.get(10,10));
-           // Log.i("KTB" , "STR" + kit.get(10,10).toString());
-
-
-            // Mat kit2 = Mat.diag(kit);
-           // Mat identity_mat = Mat.ones(mRgba.size(),mRgba.type());
-
-          //  mRgba = mRgba.mul(kit);
-
-
-
-
-       //     Imgproc.cvtColor(mRgba, mRgba, Imgproc.COLOR_HSV2RGB, 4);
-
-         //   mRgba.channels();
-// FIXME KTB USE mrgba.cross() dot() mul()
-            // Mat kit = mRgba;
-
-       //     Log.i("KTB","mRGBA Pixel Value Initial" + mRgba.get(100,100).toString());
-
-     //       Mat kit2 = Mat.ones(mRgba.size(),mRgba.type());
-
-            //      kit2 = kit2.mul(kit2);
-
-      //      mRgba = mRgba.mul(kit2);
-
-            //byte[] dit;
-          //  Log.i("KTB", "mRgba" + mRgba.get(100,100).toString());
-           // kit.convertTo(mRgba, 2);
-
-
-           // Log.i("KTB", "KIT" + kit.toString());
-            //  Log.i("KTB","kit2 Pixel Value Final" + kit2.get(100,100,new byte[] dit));
-
-            //   Log.i("KTB",mRgba.get(1,1).toString());
-//            String kitty = "This is Null";
-
-  //                  if (mRgba.get(1000,100) > kit) {
-  //                      kitty = mRgba.get(1000, 100).toString();
-//            String kitty_size = mRgba.size().toString();
-                        //  String kitty_size =
-   //                 }
-//                        String kitty_size = Integer.toString(mHeight);
-
-  //        Log.i("KTB", "Kitty Size = " +  kitty_size);
-    //        Log.i("KTB", "Kitty = " +  kitty);
-
-            //byte data = 0xffffffff;
-            //double[] test = mRgba.get(1,1);
-            //test = 12;
-//
-//
-//            for (int i = 0;i<mWidth;i++)
-//            {
-////             //   Log.i("KTB","Width" + i + "Height" + "j" + "Pixel Value" + mRgba.get(1,i).toString());
-//                for (int j = 0;j<mHeight;j++)
-//                {
-//                    Log.i("KTB","Width" + i + "Height" + j + "Pixel Value" + mRgba.get(i,j).toString());
-////                    mRgba.put(j,i,test);
-////
-//                }
-//            }
-
-
-
-
-
-
-            return mRgba;
-          //  return img;
+            return getActiveCorrectionEngine().apply(mRgba);
         }
 
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
-
         public JavaCameraFrame(Mat Yuv420sp, int width, int height) {
             super();
             Log.i("KTB", "JavaCameraFrame Entered");
             mWidth = width;
             mHeight = height;
             mYuvFrameData = Yuv420sp;
-            mRgba = new Mat();
+            mRgba = MatPool.getDefault().acquire(height, width, CvType.CV_8UC4);
         }
 
         public void release() {
-            mRgba.release();
+            MatPool.getDefault().release(mRgba);
+            mRgba = null;
+            if (mGray != null) {
+                mGray.delete();
+                mGray = null;
+            }
         }
 
         private Mat mYuvFrameData;
         private Mat mRgba;
+        private Mat mGray;
         private int mWidth;
         private int mHeight;
     };
@@ -0,0 +1,133 @@
+package org.opencv.android;
+
+import java.lang.ref.WeakReference;
+
+import org.opencv.core.MatPool;
+import org.opencv.core.MatRegistry;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.Log;
+
+/**
+ * Debug overlay with per-frame memory accounting: live tracked Mats and their native bytes
+ * (see MatRegistry), Mat allocations and Java heap growth per frame, and frames whose delivery
+ * overlapped a garbage collection. Lines turn red and a warning is logged when a threshold
+ * is exceeded, which usually means Mats are leaking until finalization.
+ */
+public class MemoryMeter {
+    private static final String TAG               = "MemoryMeter";
+    private static final int    STEP              = 20;
+
+    private int                 mMaxLiveMats = 32;
+    private long                mMaxNativeBytes = 64L * 1024 * 1024;
+    private double              mMaxAllocationsPerFrame = 4;
+
+    private WeakReference<Object> mGcSentinel = new WeakReference<Object>(new Object());
+    private long                mFrameStart;
+    private long                mFrameAllocations;
+    private long                mFrameHeap;
+
+    private int                 mFramesCounter;
+    private long                mAllocations;
+    private long                mHeapGrowth;
+    private int                 mGcCount;
+    private int                 mGcFrames;
+    private long                mGcFrameNanos;
+
+    private String[]            mLines = { "", "", "", "" };
+    private boolean[]           mWarnings = new boolean[4];
+    private Paint               mPaint;
+    private Paint               mWarningPaint;
+
+    public MemoryMeter() {
+        mPaint = new Paint();
+        mPaint.setColor(Color.BLUE);
+        mPaint.setTextSize(20);
+        mWarningPaint = new Paint();
+        mWarningPaint.setColor(Color.RED);
+        mWarningPaint.setTextSize(20);
+    }
+
+    /**
+     * Sets the warning thresholds.
+     * @param maxLiveMats - live tracked Mats
+     * @param maxNativeBytes - native bytes held by live tracked Mats
+     * @param maxAllocationsPerFrame - tracked Mat allocations per frame, averaged over STEP frames
+     */
+    public void setThresholds(int maxLiveMats, long maxNativeBytes, double maxAllocationsPerFrame) {
+        mMaxLiveMats = maxLiveMats;
+        mMaxNativeBytes = maxNativeBytes;
+        mMaxAllocationsPerFrame = maxAllocationsPerFrame;
+    }
+
+    /**
+     * Called before the frame is handed to the listener.
+     */
+    public void frameStarted() {
+        if (mGcSentinel.get() == null) {
+            mGcCount++;
+            mGcSentinel = new WeakReference<Object>(new Object());
+        }
+        Runtime runtime = Runtime.getRuntime();
+        mFrameHeap = runtime.totalMemory() - runtime.freeMemory();
+        mFrameAllocations = MatRegistry.getAllocationCount();
+        mFrameStart = System.nanoTime();
+    }
+
+    /**
+     * Called once the frame has been processed and copied to the bitmap.
+     */
+    public void frameFinished() {
+        long duration = System.nanoTime() - mFrameStart;
+        if (mGcSentinel.get() == null) {
+            mGcCount++;
+            mGcFrames++;
+            mGcFrameNanos += duration;
+            mGcSentinel = new WeakReference<Object>(new Object());
+        }
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        if (heap > mFrameHeap)
+            mHeapGrowth += heap - mFrameHeap;
+        mAllocations += MatRegistry.getAllocationCount() - mFrameAllocations;
+
+        mFramesCounter++;
+        if (mFramesCounter % STEP == 0)
+            update();
+    }
+
+    private void update() {
+        int liveMats = MatRegistry.getLiveCount();
+        long nativeBytes = MatRegistry.getNativeBytes();
+        double allocationsPerFrame = (double) mAllocations / STEP;
+
+        mWarnings[0] = liveMats > mMaxLiveMats || nativeBytes > mMaxNativeBytes;
+        mWarnings[1] = allocationsPerFrame > mMaxAllocationsPerFrame;
+        mWarnings[2] = mGcFrames > 0;
+
+        mLines[0] = "Mats: " + liveMats + " live, " + (nativeBytes / 1024) + " KB native";
+        mLines[1] = "Alloc/frame: " + allocationsPerFrame + " Mats, " + (mHeapGrowth / STEP / 1024) + " KB heap";
+        mLines[2] = "GC: " + mGcCount + " total, " + mGcFrames + "/" + STEP + " frames hit"
+                + (mGcFrames > 0 ? ", " + (mGcFrameNanos / mGcFrames / 1000000) + " ms avg" : "");
+        MatPool pool = MatPool.getDefault();
+        mLines[3] = "Pool: " + pool.getHits() + " hits, " + pool.getMisses() + " misses, "
+                + (pool.getRetainedBytes() / 1024) + " KB held";
+
+        if (mWarnings[0] || mWarnings[1])
+            Log.w(TAG, "Possible Mat leak: " + mLines[0] + "; " + mLines[1]);
+        else
+            Log.i(TAG, mLines[0] + "; " + mLines[1] + "; " + mLines[2] + "; " + mLines[3]);
+
+        mAllocations = 0;
+        mHeapGrowth = 0;
+        mGcFrames = 0;
+        mGcFrameNanos = 0;
+    }
+
+    public void draw(Canvas canvas, float offsetx, float offsety) {
+        for (int i = 0; i < mLines.length; i++)
+            canvas.drawText(mLines[i], offsetx, offsety + i * 25, mWarnings[i] ? mWarningPaint : mPaint);
+    }
+}
@@ -0,0 +1,28 @@
+package org.opencv.android;
+
+/**
+ * Snapshot of the device power state as seen by the ProcessingGovernor.
+ */
+public class PowerState {
+
+    /** Time of the sample in ms, on any monotonic clock */
+    public final long timeMillis;
+    /** Temperature in degrees Celsius */
+    public final float temperature;
+    /** Battery charge, 0..1 */
+    public final float batteryLevel;
+    public final boolean charging;
+
+    public PowerState(long timeMillis, float temperature, float batteryLevel, boolean charging) {
+        this.timeMillis = timeMillis;
+        this.temperature = temperature;
+        this.batteryLevel = batteryLevel;
+        this.charging = charging;
+    }
+
+    @Override
+    public String toString() {
+        return "PowerState [t=" + timeMillis + "ms, " + temperature + "C, battery="
+                + Math.round(batteryLevel * 100) + "%" + (charging ? ", charging" : "") + "]";
+    }
+}
@@ -0,0 +1,22 @@
+package org.opencv.android;
+
+/**
+ * Source of power state updates for the ProcessingGovernor. BatteryPowerStateSource reads the
+ * battery broadcasts on a device, ScriptedPowerStateSource plays back a fixed sequence.
+ */
+public interface PowerStateSource {
+
+    public interface Listener {
+        /**
+         * Called on every new sample, on the thread chosen by the source.
+         */
+        public void onPowerStateChanged(PowerState state);
+    }
+
+    /**
+     * Starts delivering updates. The current state, if known, is delivered right away.
+     */
+    public void start(Listener listener);
+
+    public void stop();
+}
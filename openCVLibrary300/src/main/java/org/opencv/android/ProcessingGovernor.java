@@ -0,0 +1,129 @@
+package org.opencv.android;
+
+/**
+ * Trades frame rate, correction quality and resolution for temperature, so that a long session
+ * stays smooth instead of being throttled by the OS. The device temperature selects one of four
+ * levels; each level maps to a Policy that the camera view applies. Escalation happens as soon
+ * as a threshold is crossed. Recovery goes one level at a time, needs the temperature to be
+ * HYSTERESIS below the threshold and at least RECOVERY_DELAY_MS since the last change.
+ * A low battery that is not charging keeps the governor at WARM or above.
+ */
+public class ProcessingGovernor implements PowerStateSource.Listener {
+
+    public static final int LEVEL_NOMINAL  = 0;
+    public static final int LEVEL_WARM     = 1;
+    public static final int LEVEL_HOT      = 2;
+    public static final int LEVEL_CRITICAL = 3;
+
+    private static final float[] THRESHOLDS = { Float.NEGATIVE_INFINITY, 38.0f, 41.0f, 44.0f };
+    private static final float HYSTERESIS = 1.5f;
+    private static final float LOW_BATTERY = 0.15f;
+    private static final long RECOVERY_DELAY_MS = 60 * 1000;
+
+    /**
+     * What the camera view should do at a given level.
+     */
+    public static class Policy {
+        public final int level;
+        /** Frame rate cap, 0 for none */
+        public final float maxFps;
+        /** Use the cheap single pass correction instead of the configured engine */
+        public final boolean cheapCorrection;
+        /** Factor applied to the maximum preview frame size */
+        public final float resolutionScale;
+
+        public Policy(int level, float maxFps, boolean cheapCorrection, float resolutionScale) {
+            this.level = level;
+            this.maxFps = maxFps;
+            this.cheapCorrection = cheapCorrection;
+            this.resolutionScale = resolutionScale;
+        }
+
+        @Override
+        public String toString() {
+            return "Policy [level=" + level + ", maxFps=" + maxFps + ", cheapCorrection="
+                    + cheapCorrection + ", resolutionScale=" + resolutionScale + "]";
+        }
+    }
+
+    private static final Policy[] POLICIES = {
+        new Policy(LEVEL_NOMINAL,  0,     false, 1.0f),
+        new Policy(LEVEL_WARM,     24.0f, false, 1.0f),
+        new Policy(LEVEL_HOT,      15.0f, true,  1.0f),
+        new Policy(LEVEL_CRITICAL, 10.0f, true,  0.5f)
+    };
+
+    public interface Listener {
+        public void onPolicyChanged(Policy policy);
+    }
+
+    private final PowerStateSource mSource;
+    private Listener mListener;
+    private int mLevel = LEVEL_NOMINAL;
+    private long mLevelSince;
+    private PowerState mLastState;
+
+    public ProcessingGovernor(PowerStateSource source) {
+        mSource = source;
+    }
+
+    /**
+     * Starts watching the source. The listener gets the current policy right away.
+     */
+    public void start(Listener listener) {
+        synchronized (this) {
+            mListener = listener;
+            listener.onPolicyChanged(POLICIES[mLevel]);
+        }
+        mSource.start(this);
+    }
+
+    public void stop() {
+        mSource.stop();
+        synchronized (this) {
+            mListener = null;
+        }
+    }
+
+    public synchronized Policy getPolicy() {
+        return POLICIES[mLevel];
+    }
+
+    public synchronized PowerState getLastState() {
+        return mLastState;
+    }
+
+    @Override
+    public synchronized void onPowerStateChanged(PowerState state) {
+        if (mLastState == null)
+            mLevelSince = state.timeMillis;
+        mLastState = state;
+
+        int level = mLevel;
+        int target = levelFor(state);
+
+        if (target > level) {
+            level = target;
+        } else if (target < level
+                && state.temperature < THRESHOLDS[level] - HYSTERESIS
+                && state.timeMillis - mLevelSince >= RECOVERY_DELAY_MS) {
+            level--;
+        }
+
+        if (level != mLevel) {
+            mLevel = level;
+            mLevelSince = state.timeMillis;
+            if (mListener != null)
+                mListener.onPolicyChanged(POLICIES[level]);
+        }
+    }
+
+    private static int levelFor(PowerState state) {
+        int level = LEVEL_NOMINAL;
+        while (level < LEVEL_CRITICAL && state.temperature >= THRESHOLDS[level + 1])
+            level++;
+        if (state.batteryLevel <= LOW_BATTERY && !state.charging && level < LEVEL_WARM)
+            level = LEVEL_WARM;
+        return level;
+    }
+}
@@ -0,0 +1,42 @@
+package org.opencv.android;
+
+import java.io.IOException;
+
+import org.opencv.batch.ThumbnailCache;
+import org.opencv.core.Mat;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Thumbnail decoder for Android: decodes with the largest power-of-two inSampleSize that keeps the
+ * image at least as large as the thumbnail, so a 48 megapixel photo is never decoded in full.
+ */
+public class SampledBitmapDecoder implements ThumbnailCache.Decoder {
+
+    @Override
+    public Mat decode(String path, int size) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0)
+            throw new IOException("Cannot decode " + path);
+
+        int longest = Math.max(options.outWidth, options.outHeight);
+        int sample = 1;
+        while (longest / (sample * 2) >= size)
+            sample *= 2;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sample;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null)
+            throw new IOException("Cannot decode " + path);
+
+        Mat rgba = new Mat();
+        Utils.bitmapToMat(bitmap, rgba);
+        bitmap.recycle();
+        return rgba;
+    }
+}
@@ -0,0 +1,71 @@
+package org.opencv.android;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays back a fixed list of power states, for tests and for simulating long sessions without
+ * a device. Time does not pass by itself: advanceTo() delivers every state that is due.
+ */
+public class ScriptedPowerStateSource implements PowerStateSource {
+
+    private final List<PowerState> mScript;
+    private int mNext;
+    private Listener mListener;
+
+    /**
+     * @param script - states ordered by timeMillis
+     */
+    public ScriptedPowerStateSource(List<PowerState> script) {
+        mScript = new ArrayList<PowerState>(script);
+    }
+
+    /**
+     * A session whose temperature rises linearly and then stays flat, with the battery
+     * draining at a constant rate.
+     * @param durationMillis - length of the session
+     * @param stepMillis - interval between samples
+     * @param startTemperature - temperature at the beginning
+     * @param peakTemperature - temperature reached at two thirds of the session
+     */
+    public static ScriptedPowerStateSource heatRamp(long durationMillis, long stepMillis,
+            float startTemperature, float peakTemperature) {
+        List<PowerState> script = new ArrayList<PowerState>();
+        long rampMillis = durationMillis * 2 / 3;
+        for (long t = 0; t <= durationMillis; t += stepMillis) {
+            float progress = Math.min(1.0f, (float) t / rampMillis);
+            float temperature = startTemperature + (peakTemperature - startTemperature) * progress;
+            float battery = 1.0f - 0.3f * t / durationMillis;
+            script.add(new PowerState(t, temperature, battery, false));
+        }
+        return new ScriptedPowerStateSource(script);
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        mListener = listener;
+        advanceTo(mNext < mScript.size() ? mScript.get(mNext).timeMillis : 0);
+    }
+
+    @Override
+    public synchronized void stop() {
+        mListener = null;
+    }
+
+    /**
+     * Delivers all states with timeMillis up to the given time.
+     * @return number of states delivered
+     */
+    public synchronized int advanceTo(long timeMillis) {
+        int delivered = 0;
+        while (mListener != null && mNext < mScript.size() && mScript.get(mNext).timeMillis <= timeMillis) {
+            mListener.onPowerStateChanged(mScript.get(mNext++));
+            delivered++;
+        }
+        return delivered;
+    }
+
+    public synchronized boolean isFinished() {
+        return mNext >= mScript.size();
+    }
+}
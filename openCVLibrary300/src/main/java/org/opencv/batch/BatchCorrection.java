@@ -0,0 +1,339 @@
+package org.opencv.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.correction.CorrectionEngine;
+import org.opencv.correction.CorrectionEngines;
+import org.opencv.correction.SplitMergeCorrection;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Applies the live preview correction to every image under a directory on a desktop JVM.
+ *
+ * Usage: BatchCorrection input-dir output-dir [--threads N] [--in-flight N]
+ *        [--engine split-merge|linear|java] [--restart]
+ *
+ * Images are decoded with Imgcodecs.imread on a fixed pool of threads, converted to RGBA like
+ * preview frames, corrected and written with Imgcodecs.imwrite under the same relative path in
+ * the output directory. --in-flight caps how many decoded images exist at once. Every finished
+ * image is appended to PROGRESS_FILE in the output directory, and a new run skips the images
+ * listed there unless --restart is given. Needs opencv_java300 on java.library.path.
+ */
+public class BatchCorrection {
+
+    public static final String PROGRESS_FILE = ".deuter-progress";
+
+    private static final String[] EXTENSIONS = { ".jpg", ".jpeg", ".png", ".bmp", ".tif", ".tiff", ".webp" };
+    private static final long REPORT_INTERVAL_MS = 5000;
+
+    private final File mInput;
+    private final File mOutput;
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+    private int mMaxInFlight;
+    private String mEngine = SplitMergeCorrection.NAME;
+    private boolean mRestart;
+    private PrintWriter mLog = new PrintWriter(System.out, true);
+
+    private final AtomicLong mDone = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private final AtomicLong mBytesRead = new AtomicLong();
+    private final AtomicLong mBytesWritten = new AtomicLong();
+    private final AtomicLong mDecodeNanos = new AtomicLong();
+    private final AtomicLong mCorrectNanos = new AtomicLong();
+    private final AtomicLong mEncodeNanos = new AtomicLong();
+    private int mTotal;
+    private int mSkipped;
+    private long mStartNanos;
+
+    private PrintWriter mProgress;
+    private Semaphore mDecoded;
+    private final List<Worker> mWorkers = Collections.synchronizedList(new ArrayList<Worker>());
+    private final ThreadLocal<Worker> mWorker = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            Worker worker = new Worker(CorrectionEngines.create(mEngine));
+            mWorkers.add(worker);
+            return worker;
+        }
+    };
+
+    /* Per thread, engines keep buffers between calls */
+    private static class Worker {
+        final CorrectionEngine engine;
+        final Mat rgba = new Mat();
+        final Mat result = new Mat();
+
+        Worker(CorrectionEngine engine) {
+            this.engine = engine;
+        }
+
+        void release() {
+            rgba.release();
+            result.release();
+        }
+    }
+
+    public BatchCorrection(File input, File output) {
+        mInput = input;
+        mOutput = output;
+    }
+
+    public void setThreads(int threads) {
+        mThreads = threads;
+    }
+
+    /**
+     * Maximum number of decoded images held at once; defaults to the number of threads.
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        mMaxInFlight = maxInFlight;
+    }
+
+    public void setEngine(String engine) {
+        if (CorrectionEngines.create(engine) == null)
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        mEngine = engine;
+    }
+
+    /**
+     * Ignore the progress recorded by a previous run and process every image again.
+     */
+    public void setRestart(boolean restart) {
+        mRestart = restart;
+    }
+
+    public void setLog(PrintWriter log) {
+        mLog = log;
+    }
+
+    /**
+     * Processes the whole input directory.
+     * @return number of images that failed
+     */
+    public long run() throws IOException, InterruptedException {
+        if (!mInput.isDirectory())
+            throw new IOException(mInput + " is not a directory");
+        if (!mOutput.isDirectory() && !mOutput.mkdirs())
+            throw new IOException("Cannot create " + mOutput);
+
+        File progressFile = new File(mOutput, PROGRESS_FILE);
+        Set<String> finished = mRestart ? new HashSet<String>() : readProgress(progressFile);
+        mProgress = new PrintWriter(new FileWriter(progressFile, !mRestart));
+
+        List<String> images = new ArrayList<String>();
+        collect(mInput, "", images);
+        mTotal = images.size();
+
+        mDecoded = new Semaphore(mMaxInFlight > 0 ? mMaxInFlight : mThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BatchCorrection");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        /* Limits queued tasks too, so huge directories are not queued all at once */
+        final Semaphore queued = new Semaphore(mThreads * 4);
+        mStartNanos = System.nanoTime();
+        long nextReport = System.currentTimeMillis() + REPORT_INTERVAL_MS;
+        try {
+            for (final String image : images) {
+                if (finished.contains(image)) {
+                    mSkipped++;
+                    continue;
+                }
+                while (!queued.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (System.currentTimeMillis() >= nextReport) {
+                        report(false);
+                        nextReport += REPORT_INTERVAL_MS;
+                    }
+                }
+                pool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            process(image);
+                        } finally {
+                            queued.release();
+                        }
+                    }
+                });
+            }
+            pool.shutdown();
+            while (!pool.awaitTermination(REPORT_INTERVAL_MS, TimeUnit.MILLISECONDS))
+                report(false);
+        } finally {
+            pool.shutdownNow();
+            mProgress.close();
+            for (Worker worker : mWorkers)
+                worker.release();
+        }
+        report(true);
+        return mFailed.get();
+    }
+
+    private void process(String image) {
+        File source = new File(mInput, image);
+        File target = new File(mOutput, image);
+        Worker worker = mWorker.get();
+
+        try {
+            mDecoded.acquire();
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            long begin = System.nanoTime();
+            Mat bgr = Imgcodecs.imread(source.getPath());
+            if (bgr.empty()) {
+                bgr.release();
+                fail(image, "cannot decode");
+                return;
+            }
+            long decoded = System.nanoTime();
+
+            /* Same input as a preview frame: RGBA, corrected by the live engine */
+            Imgproc.cvtColor(bgr, worker.rgba, Imgproc.COLOR_BGR2RGBA);
+            bgr.release();
+            Mat corrected = worker.engine.apply(worker.rgba);
+            Imgproc.cvtColor(corrected, worker.result,
+                    corrected.channels() == 4 ? Imgproc.COLOR_RGBA2BGR : Imgproc.COLOR_RGB2BGR);
+            long correctedAt = System.nanoTime();
+
+            File parent = target.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                fail(image, "cannot create " + parent);
+                return;
+            }
+            if (!Imgcodecs.imwrite(target.getPath(), worker.result)) {
+                fail(image, "cannot encode");
+                return;
+            }
+            long end = System.nanoTime();
+
+            mDecodeNanos.addAndGet(decoded - begin);
+            mCorrectNanos.addAndGet(correctedAt - decoded);
+            mEncodeNanos.addAndGet(end - correctedAt);
+            mBytesRead.addAndGet(source.length());
+            mBytesWritten.addAndGet(target.length());
+            mDone.incrementAndGet();
+            synchronized (mProgress) {
+                mProgress.println(image);
+                mProgress.flush();
+            }
+        } catch (RuntimeException e) {
+            fail(image, e.toString());
+        } finally {
+            mDecoded.release();
+        }
+    }
+
+    private void fail(String image, String reason) {
+        mFailed.incrementAndGet();
+        mLog.println("FAILED " + image + ": " + reason);
+    }
+
+    private void report(boolean last) {
+        long done = mDone.get();
+        double seconds = (System.nanoTime() - mStartNanos) / 1e9;
+        double perImage = done == 0 ? 0 : 1e-6 / done;
+        mLog.println(String.format(Locale.US,
+                "%s%d/%d images (%d skipped, %d failed), %.1f img/s, %.1f MB/s in, %.1f MB/s out, "
+                        + "decode %.1f ms, correct %.1f ms, encode %.1f ms",
+                last ? "done: " : "", done + mSkipped, mTotal, mSkipped, mFailed.get(),
+                seconds > 0 ? done / seconds : 0,
+                seconds > 0 ? mBytesRead.get() / 1e6 / seconds : 0,
+                seconds > 0 ? mBytesWritten.get() / 1e6 / seconds : 0,
+                mDecodeNanos.get() * perImage, mCorrectNanos.get() * perImage, mEncodeNanos.get() * perImage));
+    }
+
+    private void collect(File dir, String prefix, List<String> images) {
+        String[] names = dir.list();
+        if (names == null)
+            return;
+        Arrays.sort(names);
+        for (String name : names) {
+            File file = new File(dir, name);
+            String path = prefix + name;
+            if (file.isDirectory()) {
+                if (!file.getAbsoluteFile().equals(mOutput.getAbsoluteFile()))
+                    collect(file, path + File.separator, images);
+            } else if (isImage(name)) {
+                images.add(path);
+            }
+        }
+    }
+
+    private static boolean isImage(String name) {
+        String lower = name.toLowerCase(Locale.US);
+        for (String extension : EXTENSIONS)
+            if (lower.endsWith(extension))
+                return true;
+        return false;
+    }
+
+    private static Set<String> readProgress(File file) throws IOException {
+        Set<String> finished = new HashSet<String>();
+        if (!file.exists())
+            return finished;
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (line.length() > 0)
+                    finished.add(line);
+        } finally {
+            reader.close();
+        }
+        return finished;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: BatchCorrection input-dir output-dir [--threads N] [--in-flight N] "
+                    + "[--engine split-merge|linear|java] [--restart]");
+            System.exit(2);
+        }
+
+        BatchCorrection batch = new BatchCorrection(new File(args[0]), new File(args[1]));
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+                batch.setThreads(Integer.parseInt(args[++i]));
+            else if (args[i].equals("--in-flight") && i + 1 < args.length)
+                batch.setMaxInFlight(Integer.parseInt(args[++i]));
+            else if (args[i].equals("--engine") && i + 1 < args.length)
+                batch.setEngine(args[++i]);
+            else if (args[i].equals("--restart"))
+                batch.setRestart(true);
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        long failed = batch.run();
+        System.exit(failed == 0 ? 0 : 1);
+    }
+}
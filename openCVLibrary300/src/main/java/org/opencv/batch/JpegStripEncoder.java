@@ -0,0 +1,412 @@
+package org.opencv.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Baseline JPEG encoder that takes the image a few rows at a time, so encoding a large still
+ * needs memory for eight rows only. Uses the standard quantization tables scaled by quality,
+ * the standard Huffman tables and no chroma subsampling, which keeps the full color resolution
+ * of corrected images. Rows are RGB or RGBA; alpha is ignored.
+ */
+public class JpegStripEncoder {
+
+    private static final int[] ZIGZAG = {
+         0,  1,  8, 16,  9,  2,  3, 10, 17, 24, 32, 25, 18, 11,  4,  5,
+        12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13,  6,  7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private static final int[] LUMINANCE_QUANT = {
+        16, 11, 10, 16,  24,  40,  51,  61,
+        12, 12, 14, 19,  26,  58,  60,  55,
+        14, 13, 16, 24,  40,  57,  69,  56,
+        14, 17, 22, 29,  51,  87,  80,  62,
+        18, 22, 37, 56,  68, 109, 103,  77,
+        24, 35, 55, 64,  81, 104, 113,  92,
+        49, 64, 78, 87, 103, 121, 120, 101,
+        72, 92, 95, 98, 112, 100, 103,  99
+    };
+
+    private static final int[] CHROMINANCE_QUANT = {
+        17, 18, 24, 47, 99, 99, 99, 99,
+        18, 21, 26, 66, 99, 99, 99, 99,
+        24, 26, 56, 99, 99, 99, 99, 99,
+        47, 66, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99,
+        99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    private static final int[] DC_LUMINANCE_BITS = { 0, 1, 5, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0, 0, 0 };
+    private static final int[] DC_LUMINANCE_VALUES = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+    private static final int[] DC_CHROMINANCE_BITS = { 0, 3, 1, 1, 1, 1, 1, 1, 1, 1, 1, 0, 0, 0, 0, 0 };
+    private static final int[] DC_CHROMINANCE_VALUES = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 };
+
+    private static final int[] AC_LUMINANCE_BITS = { 0, 2, 1, 3, 3, 2, 4, 3, 5, 5, 4, 4, 0, 0, 1, 0x7d };
+    private static final int[] AC_LUMINANCE_VALUES = {
+        0x01, 0x02, 0x03, 0x00, 0x04, 0x11, 0x05, 0x12, 0x21, 0x31, 0x41, 0x06, 0x13, 0x51, 0x61, 0x07,
+        0x22, 0x71, 0x14, 0x32, 0x81, 0x91, 0xa1, 0x08, 0x23, 0x42, 0xb1, 0xc1, 0x15, 0x52, 0xd1, 0xf0,
+        0x24, 0x33, 0x62, 0x72, 0x82, 0x09, 0x0a, 0x16, 0x17, 0x18, 0x19, 0x1a, 0x25, 0x26, 0x27, 0x28,
+        0x29, 0x2a, 0x34, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48, 0x49,
+        0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68, 0x69,
+        0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x83, 0x84, 0x85, 0x86, 0x87, 0x88, 0x89,
+        0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5, 0xa6, 0xa7,
+        0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3, 0xc4, 0xc5,
+        0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda, 0xe1, 0xe2,
+        0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf1, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa
+    };
+
+    private static final int[] AC_CHROMINANCE_BITS = { 0, 2, 1, 2, 4, 4, 3, 4, 7, 5, 4, 4, 0, 1, 2, 0x77 };
+    private static final int[] AC_CHROMINANCE_VALUES = {
+        0x00, 0x01, 0x02, 0x03, 0x11, 0x04, 0x05, 0x21, 0x31, 0x06, 0x12, 0x41, 0x51, 0x07, 0x61, 0x71,
+        0x13, 0x22, 0x32, 0x81, 0x08, 0x14, 0x42, 0x91, 0xa1, 0xb1, 0xc1, 0x09, 0x23, 0x33, 0x52, 0xf0,
+        0x15, 0x62, 0x72, 0xd1, 0x0a, 0x16, 0x24, 0x34, 0xe1, 0x25, 0xf1, 0x17, 0x18, 0x19, 0x1a, 0x26,
+        0x27, 0x28, 0x29, 0x2a, 0x35, 0x36, 0x37, 0x38, 0x39, 0x3a, 0x43, 0x44, 0x45, 0x46, 0x47, 0x48,
+        0x49, 0x4a, 0x53, 0x54, 0x55, 0x56, 0x57, 0x58, 0x59, 0x5a, 0x63, 0x64, 0x65, 0x66, 0x67, 0x68,
+        0x69, 0x6a, 0x73, 0x74, 0x75, 0x76, 0x77, 0x78, 0x79, 0x7a, 0x82, 0x83, 0x84, 0x85, 0x86, 0x87,
+        0x88, 0x89, 0x8a, 0x92, 0x93, 0x94, 0x95, 0x96, 0x97, 0x98, 0x99, 0x9a, 0xa2, 0xa3, 0xa4, 0xa5,
+        0xa6, 0xa7, 0xa8, 0xa9, 0xaa, 0xb2, 0xb3, 0xb4, 0xb5, 0xb6, 0xb7, 0xb8, 0xb9, 0xba, 0xc2, 0xc3,
+        0xc4, 0xc5, 0xc6, 0xc7, 0xc8, 0xc9, 0xca, 0xd2, 0xd3, 0xd4, 0xd5, 0xd6, 0xd7, 0xd8, 0xd9, 0xda,
+        0xe2, 0xe3, 0xe4, 0xe5, 0xe6, 0xe7, 0xe8, 0xe9, 0xea, 0xf2, 0xf3, 0xf4, 0xf5, 0xf6, 0xf7, 0xf8,
+        0xf9, 0xfa
+    };
+
+    /* Scale factors of the AAN DCT, folded into the quantization divisors */
+    private static final double[] AAN_SCALE = {
+        1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    private final OutputStream mOut;
+    private final byte[] mMetadata;
+    private final int mWidth;
+    private final int mHeight;
+
+    private final int[] mLuminanceQuant = new int[64];
+    private final int[] mChrominanceQuant = new int[64];
+    private final float[] mLuminanceDivisors = new float[64];
+    private final float[] mChrominanceDivisors = new float[64];
+    private final int[][] mDcCodes = new int[2][];
+    private final int[][] mDcSizes = new int[2][];
+    private final int[][] mAcCodes = new int[2][];
+    private final int[][] mAcSizes = new int[2][];
+
+    /* Eight rows of level-shifted Y, Cb and Cr */
+    private final float[][] mRows;
+    private int mBufferedRows;
+    private int mWrittenRows;
+
+    private final float[] mBlock = new float[64];
+    private final int[] mQuantized = new int[64];
+    private final int[] mLastDc = new int[3];
+
+    private final byte[] mBuffer = new byte[65536];
+    private int mBufferLength;
+    private int mBits;
+    private int mBitCount;
+
+    /**
+     * Writes the JPEG headers.
+     * @param quality - 1 to 100, scaled like libjpeg
+     */
+    public JpegStripEncoder(OutputStream out, int width, int height, int quality) throws IOException {
+        this(out, width, height, quality, null);
+    }
+
+    /**
+     * Writes the JPEG headers, with the given APPn and COM segments in place of the JFIF header.
+     * @param quality - 1 to 100, scaled like libjpeg
+     * @param metadata - complete segments, markers included, as copied by JpegSegments, or null
+     */
+    public JpegStripEncoder(OutputStream out, int width, int height, int quality, byte[] metadata)
+            throws IOException {
+        if (width < 1 || height < 1 || width > 65535 || height > 65535)
+            throw new IllegalArgumentException("Unsupported size " + width + "x" + height);
+        mOut = out;
+        mMetadata = metadata;
+        mWidth = width;
+        mHeight = height;
+        mRows = new float[3][8 * width];
+
+        scaleQuant(LUMINANCE_QUANT, quality, mLuminanceQuant, mLuminanceDivisors);
+        scaleQuant(CHROMINANCE_QUANT, quality, mChrominanceQuant, mChrominanceDivisors);
+        buildCodes(DC_LUMINANCE_BITS, DC_LUMINANCE_VALUES, mDcCodes, mDcSizes, 0);
+        buildCodes(DC_CHROMINANCE_BITS, DC_CHROMINANCE_VALUES, mDcCodes, mDcSizes, 1);
+        buildCodes(AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES, mAcCodes, mAcSizes, 0);
+        buildCodes(AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES, mAcCodes, mAcSizes, 1);
+
+        writeHeaders();
+    }
+
+    /**
+     * Adds the next rows of the image.
+     * @param pixels - rows of RGB or RGBA pixels
+     * @param offset - index of the first pixel of the first row
+     * @param stride - distance between rows in bytes
+     * @param channels - 3 or 4
+     * @param rows - number of rows
+     */
+    public void writeRows(byte[] pixels, int offset, int stride, int channels, int rows) throws IOException {
+        if (mWrittenRows + mBufferedRows + rows > mHeight)
+            throw new IllegalStateException("More rows than the image height");
+        for (int row = 0; row < rows; row++) {
+            int src = offset + row * stride;
+            int dst = mBufferedRows * mWidth;
+            float[] y = mRows[0];
+            float[] cb = mRows[1];
+            float[] cr = mRows[2];
+            for (int x = 0; x < mWidth; x++, src += channels, dst++) {
+                int r = pixels[src] & 0xFF;
+                int g = pixels[src + 1] & 0xFF;
+                int b = pixels[src + 2] & 0xFF;
+                y[dst] = 0.299f * r + 0.587f * g + 0.114f * b - 128;
+                cb[dst] = -0.168736f * r - 0.331264f * g + 0.5f * b;
+                cr[dst] = 0.5f * r - 0.418688f * g - 0.081312f * b;
+            }
+            if (++mBufferedRows == 8)
+                encodeRows();
+        }
+    }
+
+    /**
+     * Encodes the remaining rows and writes the end of image marker. The stream is flushed but
+     * not closed.
+     */
+    public void finish() throws IOException {
+        if (mWrittenRows + mBufferedRows != mHeight)
+            throw new IllegalStateException("Only " + (mWrittenRows + mBufferedRows) + " of " + mHeight + " rows written");
+        if (mBufferedRows > 0) {
+            /* Pad the last block row by repeating the last image row */
+            for (float[] component : mRows)
+                for (int row = mBufferedRows; row < 8; row++)
+                    System.arraycopy(component, (mBufferedRows - 1) * mWidth, component, row * mWidth, mWidth);
+            encodeRows();
+        }
+        if (mBitCount > 0)
+            writeBits((1 << (8 - mBitCount)) - 1, 8 - mBitCount);
+        writeByte(0xFF);
+        writeByte(0xD9);
+        flushBuffer();
+        mOut.flush();
+    }
+
+    private void encodeRows() throws IOException {
+        for (int x = 0; x < mWidth; x += 8) {
+            encodeBlock(mRows[0], x, 0, mLuminanceDivisors, 0);
+            encodeBlock(mRows[1], x, 1, mChrominanceDivisors, 1);
+            encodeBlock(mRows[2], x, 2, mChrominanceDivisors, 1);
+        }
+        mWrittenRows += mBufferedRows;
+        mBufferedRows = 0;
+    }
+
+    private void encodeBlock(float[] rows, int x0, int component, float[] divisors, int table) throws IOException {
+        float[] block = mBlock;
+        for (int y = 0; y < 8; y++) {
+            int base = y * mWidth;
+            for (int x = 0; x < 8; x++)
+                block[y * 8 + x] = rows[base + Math.min(x0 + x, mWidth - 1)];
+        }
+        forwardDct(block);
+        for (int i = 0; i < 64; i++)
+            mQuantized[i] = Math.round(block[i] * divisors[i]);
+
+        int dc = mQuantized[0];
+        int diff = dc - mLastDc[component];
+        mLastDc[component] = dc;
+        int size = bitSize(diff);
+        writeBits(mDcCodes[table][size], mDcSizes[table][size]);
+        if (size > 0)
+            writeBits(diff < 0 ? diff - 1 : diff, size);
+
+        int run = 0;
+        for (int k = 1; k < 64; k++) {
+            int value = mQuantized[ZIGZAG[k]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                writeBits(mAcCodes[table][0xF0], mAcSizes[table][0xF0]);
+                run -= 16;
+            }
+            size = bitSize(value);
+            int symbol = (run << 4) | size;
+            writeBits(mAcCodes[table][symbol], mAcSizes[table][symbol]);
+            writeBits(value < 0 ? value - 1 : value, size);
+            run = 0;
+        }
+        if (run > 0)
+            writeBits(mAcCodes[table][0], mAcSizes[table][0]);
+    }
+
+    /* Floating point AAN forward DCT, output scaled by 8 * AAN_SCALE[u] * AAN_SCALE[v] */
+    private static void forwardDct(float[] d) {
+        for (int pass = 0; pass < 2; pass++) {
+            int step = pass == 0 ? 1 : 8;
+            int next = pass == 0 ? 8 : 1;
+            for (int i = 0, p = 0; i < 8; i++, p += next) {
+                float tmp0 = d[p] + d[p + 7 * step];
+                float tmp7 = d[p] - d[p + 7 * step];
+                float tmp1 = d[p + step] + d[p + 6 * step];
+                float tmp6 = d[p + step] - d[p + 6 * step];
+                float tmp2 = d[p + 2 * step] + d[p + 5 * step];
+                float tmp5 = d[p + 2 * step] - d[p + 5 * step];
+                float tmp3 = d[p + 3 * step] + d[p + 4 * step];
+                float tmp4 = d[p + 3 * step] - d[p + 4 * step];
+
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+
+                d[p] = tmp10 + tmp11;
+                d[p + 4 * step] = tmp10 - tmp11;
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                d[p + 2 * step] = tmp13 + z1;
+                d[p + 6 * step] = tmp13 - z1;
+
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+
+                d[p + 5 * step] = z13 + z2;
+                d[p + 3 * step] = z13 - z2;
+                d[p + step] = z11 + z4;
+                d[p + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    private static int bitSize(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    private void writeBits(int value, int size) throws IOException {
+        mBits = (mBits << size) | (value & ((1 << size) - 1));
+        mBitCount += size;
+        while (mBitCount >= 8) {
+            int b = (mBits >> (mBitCount - 8)) & 0xFF;
+            writeByte(b);
+            if (b == 0xFF)
+                writeByte(0);
+            mBitCount -= 8;
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (mBufferLength == mBuffer.length)
+            flushBuffer();
+        mBuffer[mBufferLength++] = (byte) b;
+    }
+
+    private void writeShort(int value) throws IOException {
+        writeByte(value >> 8);
+        writeByte(value);
+    }
+
+    private void flushBuffer() throws IOException {
+        mOut.write(mBuffer, 0, mBufferLength);
+        mBufferLength = 0;
+    }
+
+    private void writeHeaders() throws IOException {
+        writeShort(0xFFD8);
+
+        if (mMetadata != null) {
+            flushBuffer();
+            mOut.write(mMetadata);
+        } else {
+            /* JFIF APP0, 1:1 aspect */
+            writeShort(0xFFE0);
+            writeShort(16);
+            writeByte('J'); writeByte('F'); writeByte('I'); writeByte('F'); writeByte(0);
+            writeShort(0x0101);
+            writeByte(0);
+            writeShort(1);
+            writeShort(1);
+            writeByte(0);
+            writeByte(0);
+        }
+
+        writeShort(0xFFDB);
+        writeShort(2 + 2 * 65);
+        writeByte(0);
+        for (int i = 0; i < 64; i++)
+            writeByte(mLuminanceQuant[ZIGZAG[i]]);
+        writeByte(1);
+        for (int i = 0; i < 64; i++)
+            writeByte(mChrominanceQuant[ZIGZAG[i]]);
+
+        /* Baseline, three components without subsampling */
+        writeShort(0xFFC0);
+        writeShort(17);
+        writeByte(8);
+        writeShort(mHeight);
+        writeShort(mWidth);
+        writeByte(3);
+        writeByte(1); writeByte(0x11); writeByte(0);
+        writeByte(2); writeByte(0x11); writeByte(1);
+        writeByte(3); writeByte(0x11); writeByte(1);
+
+        writeShort(0xFFC4);
+        writeShort(2 + 4 * 17 + DC_LUMINANCE_VALUES.length + AC_LUMINANCE_VALUES.length
+                + DC_CHROMINANCE_VALUES.length + AC_CHROMINANCE_VALUES.length);
+        writeHuffmanTable(0x00, DC_LUMINANCE_BITS, DC_LUMINANCE_VALUES);
+        writeHuffmanTable(0x10, AC_LUMINANCE_BITS, AC_LUMINANCE_VALUES);
+        writeHuffmanTable(0x01, DC_CHROMINANCE_BITS, DC_CHROMINANCE_VALUES);
+        writeHuffmanTable(0x11, AC_CHROMINANCE_BITS, AC_CHROMINANCE_VALUES);
+
+        writeShort(0xFFDA);
+        writeShort(12);
+        writeByte(3);
+        writeByte(1); writeByte(0x00);
+        writeByte(2); writeByte(0x11);
+        writeByte(3); writeByte(0x11);
+        writeByte(0);
+        writeByte(63);
+        writeByte(0);
+    }
+
+    private void writeHuffmanTable(int id, int[] bits, int[] values) throws IOException {
+        writeByte(id);
+        for (int count : bits)
+            writeByte(count);
+        for (int value : values)
+            writeByte(value);
+    }
+
+    private static void scaleQuant(int[] base, int quality, int[] quant, float[] divisors) {
+        quality = Math.max(1, Math.min(100, quality));
+        int scale = quality < 50 ? 5000 / quality : 200 - 2 * quality;
+        for (int i = 0; i < 64; i++) {
+            quant[i] = Math.max(1, Math.min(255, (base[i] * scale + 50) / 100));
+            divisors[i] = (float) (1.0 / (quant[i] * AAN_SCALE[i / 8] * AAN_SCALE[i % 8] * 8.0));
+        }
+    }
+
+    /* Canonical Huffman codes (JPEG Annex C), indexed by symbol */
+    private static void buildCodes(int[] bits, int[] values, int[][] codes, int[][] sizes, int table) {
+        codes[table] = new int[256];
+        sizes[table] = new int[256];
+        int code = 0;
+        int k = 0;
+        for (int length = 1; length <= 16; length++) {
+            for (int i = 0; i < bits[length - 1]; i++) {
+                codes[table][values[k]] = code++;
+                sizes[table][values[k]] = length;
+                k++;
+            }
+            code <<= 1;
+        }
+    }
+}
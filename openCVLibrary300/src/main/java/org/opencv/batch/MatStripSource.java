@@ -0,0 +1,49 @@
+package org.opencv.batch;
+
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Serves bands of an image that is already in memory, e.g. one decoded with Imgcodecs.imread.
+ * Gives no memory saving by itself but lets the strip pipeline run where no band decoder exists.
+ */
+public class MatStripSource implements StripSource {
+
+    private final Mat mImage;
+    private final int mConversion;
+    private final Mat mBand = new Mat();
+
+    /**
+     * @param image - CV_8UC3 BGR image as returned by imread, or CV_8UC4 RGBA
+     */
+    public MatStripSource(Mat image) {
+        mImage = image;
+        mConversion = image.channels() == 4 ? -1 : Imgproc.COLOR_BGR2RGBA;
+    }
+
+    @Override
+    public int getWidth() {
+        return mImage.cols();
+    }
+
+    @Override
+    public int getHeight() {
+        return mImage.rows();
+    }
+
+    @Override
+    public Mat read(int y, int rows) {
+        Mat band = mImage.rowRange(y, y + rows);
+        if (mConversion < 0)
+            band.copyTo(mBand);
+        else
+            Imgproc.cvtColor(band, mBand, mConversion);
+        band.release();
+        return mBand;
+    }
+
+    @Override
+    public void close() {
+        mBand.release();
+    }
+}
@@ -0,0 +1,62 @@
+package org.opencv.batch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.opencv.core.Mat;
+import org.opencv.correction.CorrectionEngine;
+
+/**
+ * Corrects a still image band by band and streams the result into a JPEG encoder. Peak memory is
+ * a few bands of stripHeight rows whatever the image size, which lets camera-original photos of
+ * tens of megapixels be corrected on a phone.
+ */
+public class StripCorrection {
+
+    public static final int DEFAULT_STRIP_HEIGHT = 128;
+
+    private final CorrectionEngine mEngine;
+    private final int mStripHeight;
+    private byte[] mPixels = new byte[0];
+
+    /**
+     * @param engine - correction applied to every band, as for preview frames
+     * @param stripHeight - rows per band; multiples of 8 avoid buffering in the encoder
+     */
+    public StripCorrection(CorrectionEngine engine, int stripHeight) {
+        mEngine = engine;
+        mStripHeight = stripHeight;
+    }
+
+    /**
+     * Reads, corrects and encodes the whole image. Neither the source nor the stream is closed.
+     * @param quality - JPEG quality from 1 to 100
+     */
+    public void run(StripSource source, OutputStream out, int quality) throws IOException {
+        run(source, out, quality, null);
+    }
+
+    /**
+     * Same as run(StripSource, OutputStream, int), writing the metadata segments of the original
+     * image, for example its EXIF orientation, into the result.
+     * @param metadata - APPn and COM segments as copied by JpegSegments, or null
+     */
+    public void run(StripSource source, OutputStream out, int quality, byte[] metadata) throws IOException {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        JpegStripEncoder encoder = new JpegStripEncoder(out, width, height, quality, metadata);
+
+        for (int y = 0; y < height; y += mStripHeight) {
+            int rows = Math.min(mStripHeight, height - y);
+            Mat corrected = mEngine.apply(source.read(y, rows));
+
+            int channels = corrected.channels();
+            int length = width * rows * channels;
+            if (mPixels.length < length || mPixels.length % channels != 0)
+                mPixels = new byte[length];
+            corrected.get(0, 0, mPixels);
+            encoder.writeRows(mPixels, 0, width * channels, channels, rows);
+        }
+        encoder.finish();
+    }
+}
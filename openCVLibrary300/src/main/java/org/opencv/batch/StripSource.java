@@ -0,0 +1,23 @@
+package org.opencv.batch;
+
+import java.io.IOException;
+
+import org.opencv.core.Mat;
+
+/**
+ * An image read in horizontal bands, so that large stills never have to be fully decoded.
+ */
+public interface StripSource {
+
+    public int getWidth();
+
+    public int getHeight();
+
+    /**
+     * Reads rows [y, y + rows) of the image.
+     * @return CV_8UC4 RGBA band; it belongs to the source and may be reused by the next call
+     */
+    public Mat read(int y, int rows) throws IOException;
+
+    public void close();
+}
@@ -0,0 +1,429 @@
+package org.opencv.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.correction.CorrectionEngine;
+import org.opencv.correction.CorrectionEngines;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Corrected thumbnails of stored photos, for browsing a gallery without correcting whole images.
+ * Thumbnails are kept at two levels: an in-memory LRU bounded by bytes and keyed by file path,
+ * and a directory of JPEG files bounded by size, keyed by file path, modification time, file
+ * size and the correction parameters. get() never touches the disk, so it can be called for
+ * every grid cell bind; the source file is only looked at on the workers, and a photo edited
+ * while its thumbnail is in memory has to be passed to invalidate(). Missing thumbnails are made
+ * on a worker pool by shrinking the image with INTER_AREA and then correcting it, so the
+ * correction only touches thumbnail pixels. The most recent request is served first and
+ * requests for cells scrolled away can be cancelled.
+ */
+public class ThumbnailCache {
+
+    private static final int BYTES_PER_ENTRY = 64;
+    private static final String EXT = ".jpg";
+    private static final String TEMP_EXT = ".tmp";
+
+    /**
+     * Decodes the source image, possibly reduced on load as long as both sides stay at least
+     * the requested size or the original size.
+     */
+    public interface Decoder {
+        /**
+         * @return CV_8UC4 RGBA image, released by the caller
+         */
+        public Mat decode(String path, int size) throws IOException;
+    }
+
+    public interface Listener {
+        /**
+         * Called on a worker thread.
+         * @param thumbnail - the thumbnail, or null if the image could not be read
+         */
+        public void onThumbnail(String path, Thumbnail thumbnail);
+    }
+
+    public static class Thumbnail {
+        public final int width;
+        public final int height;
+        /* RGBA pixels, row by row */
+        public final byte[] rgba;
+
+        Thumbnail(int width, int height, byte[] rgba) {
+            this.width = width;
+            this.height = height;
+            this.rgba = rgba;
+        }
+    }
+
+    /**
+     * Full decode with Imgcodecs.imread, for desktop use.
+     */
+    public static class ImreadDecoder implements Decoder {
+        @Override
+        public Mat decode(String path, int size) throws IOException {
+            Mat bgr = Imgcodecs.imread(path);
+            if (bgr.empty())
+                throw new IOException("Cannot decode " + path);
+            Mat rgba = new Mat();
+            Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+            bgr.release();
+            return rgba;
+        }
+    }
+
+    /* Serves the most recent request first: the cells the user is looking at */
+    private static class LifoQueue extends LinkedBlockingDeque<Runnable> {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean offer(Runnable r) {
+            return offerFirst(r);
+        }
+    }
+
+    private final File mDirectory;
+    private final long mMemoryLimit;
+    private final long mDiskLimit;
+    private final int mSize;
+    private final int mQuality;
+    private final String mEngine;
+    private final String mParameters;
+    private final Decoder mDecoder;
+    private final ThreadPoolExecutor mWorkers;
+    private final ThreadLocal<CorrectionEngine> mEngines = new ThreadLocal<CorrectionEngine>() {
+        @Override
+        protected CorrectionEngine initialValue() {
+            return CorrectionEngines.create(mEngine);
+        }
+    };
+
+    /* Guarded by the object lock */
+    private final LinkedHashMap<String, Thumbnail> mMemory = new LinkedHashMap<String, Thumbnail>(64, 0.75f, true);
+    private final Map<String, List<Listener>> mPending = new HashMap<String, List<Listener>>();
+    private long mMemoryBytes;
+    private int mMemoryHits;
+    private int mDiskHits;
+    private int mGenerated;
+
+    /* Guarded by mDirectory, -1 until the directory was first measured */
+    private long mDiskBytes = -1;
+
+    /**
+     * @param directory - directory for the disk level, used by this cache only
+     * @param memoryLimit - bytes of thumbnail pixels kept in memory
+     * @param diskLimit - bytes of thumbnail files kept on disk
+     * @param size - longest side of a thumbnail in pixels
+     * @param engine - name of the correction engine, see CorrectionEngines
+     * @param quality - JPEG quality of the disk level
+     * @param decoder - source image decoder
+     * @param threads - number of worker threads
+     */
+    public ThumbnailCache(File directory, long memoryLimit, long diskLimit, int size, String engine, int quality,
+            Decoder decoder, int threads) {
+        if (CorrectionEngines.create(engine) == null)
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        mDirectory = directory;
+        mMemoryLimit = memoryLimit;
+        mDiskLimit = diskLimit;
+        mSize = size;
+        mQuality = quality;
+        mEngine = engine;
+        mParameters = engine + "|" + size + "|" + quality;
+        mDecoder = decoder;
+        mWorkers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LifoQueue(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ThumbnailCache");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        mWorkers.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the thumbnail if it is in memory. Otherwise loads or makes it in the background and
+     * returns null; the listener is called once it is ready.
+     */
+    public Thumbnail get(final String path, Listener listener) {
+        synchronized (this) {
+            Thumbnail thumbnail = mMemory.get(path);
+            if (thumbnail != null) {
+                mMemoryHits++;
+                return thumbnail;
+            }
+            List<Listener> waiting = mPending.get(path);
+            if (waiting != null) {
+                waiting.add(listener);
+                return null;
+            }
+            waiting = new ArrayList<Listener>(1);
+            waiting.add(listener);
+            mPending.put(path, waiting);
+        }
+
+        mWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                load(path);
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Withdraws a request made with get(), e.g. when a grid cell is recycled. A thumbnail nobody
+     * waits for any more is not made.
+     */
+    public synchronized void cancel(String path, Listener listener) {
+        List<Listener> waiting = mPending.get(path);
+        if (waiting != null)
+            waiting.remove(listener);
+    }
+
+    /**
+     * Drops the thumbnail of a photo from memory, so the next get() checks the file again.
+     */
+    public synchronized void invalidate(String path) {
+        Thumbnail thumbnail = mMemory.remove(path);
+        if (thumbnail != null)
+            mMemoryBytes -= thumbnail.rgba.length + BYTES_PER_ENTRY;
+    }
+
+    public synchronized void clearMemory() {
+        mMemory.clear();
+        mMemoryBytes = 0;
+    }
+
+    synchronized long getMemoryBytes() {
+        return mMemoryBytes;
+    }
+
+    public synchronized String getStatistics() {
+        return mMemory.size() + " in memory (" + mMemoryBytes / 1024 + " KiB), " + mMemoryHits + " memory hits, "
+                + mDiskHits + " disk hits, " + mGenerated + " generated";
+    }
+
+    public void close() {
+        mWorkers.shutdownNow();
+    }
+
+    private void load(String path) {
+        synchronized (this) {
+            List<Listener> waiting = mPending.get(path);
+            if (waiting != null && waiting.isEmpty()) {
+                mPending.remove(path);
+                return;
+            }
+        }
+
+        Thumbnail thumbnail = null;
+        File cached = new File(mDirectory, fileName(key(path)));
+        try {
+            if (cached.exists()) {
+                thumbnail = readFile(cached);
+                if (thumbnail != null) {
+                    cached.setLastModified(System.currentTimeMillis());
+                    synchronized (this) {
+                        mDiskHits++;
+                    }
+                }
+            }
+            if (thumbnail == null) {
+                thumbnail = generate(path);
+                synchronized (this) {
+                    mGenerated++;
+                }
+                writeFile(cached, thumbnail);
+            }
+        } catch (IOException e) {
+            /* A failing disk level must not hide thumbnails already made */
+        } catch (RuntimeException e) {
+            thumbnail = null;
+        }
+
+        List<Listener> waiting;
+        synchronized (this) {
+            waiting = mPending.remove(path);
+            if (thumbnail != null)
+                putMemory(path, thumbnail);
+        }
+        if (waiting != null)
+            for (Listener listener : waiting)
+                listener.onThumbnail(path, thumbnail);
+    }
+
+    /* Decodes, shrinks and corrects the image; overridden by the tests, which have no native code */
+    Thumbnail generate(String path) throws IOException {
+        Mat source = mDecoder.decode(path, mSize);
+        Mat small = new Mat();
+        Mat rgba = new Mat();
+        try {
+            double scale = Math.min(1.0, (double) mSize / Math.max(source.cols(), source.rows()));
+            Size size = new Size(Math.max(1, Math.round(source.cols() * scale)),
+                    Math.max(1, Math.round(source.rows() * scale)));
+            Imgproc.resize(source, small, size, 0, 0, Imgproc.INTER_AREA);
+            source.release();
+
+            Mat corrected = mEngines.get().apply(small);
+            if (corrected.channels() == 3)
+                Imgproc.cvtColor(corrected, rgba, Imgproc.COLOR_RGB2RGBA);
+            else
+                corrected.copyTo(rgba);
+
+            byte[] pixels = new byte[(int) (rgba.total() * 4)];
+            rgba.get(0, 0, pixels);
+            return new Thumbnail(rgba.cols(), rgba.rows(), pixels);
+        } finally {
+            source.release();
+            small.release();
+            rgba.release();
+        }
+    }
+
+    /* Reads a thumbnail of the disk level, null if the file cannot be decoded */
+    Thumbnail readFile(File file) {
+        Mat bgr = Imgcodecs.imread(file.getPath());
+        if (bgr.empty())
+            return null;
+        Mat rgba = new Mat();
+        Imgproc.cvtColor(bgr, rgba, Imgproc.COLOR_BGR2RGBA);
+        bgr.release();
+        byte[] pixels = new byte[(int) (rgba.total() * 4)];
+        rgba.get(0, 0, pixels);
+        Thumbnail thumbnail = new Thumbnail(rgba.cols(), rgba.rows(), pixels);
+        rgba.release();
+        return thumbnail;
+    }
+
+    private void writeFile(File file, Thumbnail thumbnail) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            throw new IOException("Cannot create " + mDirectory);
+
+        /* Written aside and renamed, so readers never see a partial file */
+        File temp = new File(mDirectory, file.getName() + TEMP_EXT);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+        try {
+            JpegStripEncoder encoder = new JpegStripEncoder(out, thumbnail.width, thumbnail.height, mQuality);
+            encoder.writeRows(thumbnail.rgba, 0, thumbnail.width * 4, 4, thumbnail.height);
+            encoder.finish();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp);
+        }
+        addDiskBytes(file.length());
+    }
+
+    private void putMemory(String key, Thumbnail thumbnail) {
+        Thumbnail previous = mMemory.put(key, thumbnail);
+        if (previous != null)
+            mMemoryBytes -= previous.rgba.length + BYTES_PER_ENTRY;
+        mMemoryBytes += thumbnail.rgba.length + BYTES_PER_ENTRY;
+
+        Iterator<Thumbnail> eldest = mMemory.values().iterator();
+        while (mMemoryBytes > mMemoryLimit && eldest.hasNext()) {
+            mMemoryBytes -= eldest.next().rgba.length + BYTES_PER_ENTRY;
+            eldest.remove();
+        }
+    }
+
+    private void addDiskBytes(long bytes) {
+        boolean trim;
+        synchronized (mDirectory) {
+            if (mDiskBytes < 0)
+                mDiskBytes = directorySize();
+            else
+                mDiskBytes += bytes;
+            trim = mDiskBytes > mDiskLimit;
+        }
+        if (trim)
+            trimDisk();
+    }
+
+    /* Deletes the least recently used files down to 90% of the limit; hits touch their file */
+    private void trimDisk() {
+        synchronized (mDirectory) {
+            File[] files = mDirectory.listFiles();
+            if (files == null)
+                return;
+            final long[] times = new long[files.length];
+            Integer[] order = new Integer[files.length];
+            long total = 0;
+            for (int i = 0; i < files.length; i++) {
+                times[i] = files[i].lastModified();
+                order[i] = i;
+                total += files[i].length();
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return times[a] < times[b] ? -1 : times[a] == times[b] ? 0 : 1;
+                }
+            });
+            long target = mDiskLimit / 10 * 9;
+            for (int i = 0; i < order.length && total > target; i++) {
+                File file = files[order[i]];
+                if (file.getName().endsWith(TEMP_EXT))
+                    continue;
+                long length = file.length();
+                if (file.delete())
+                    total -= length;
+            }
+            mDiskBytes = total;
+        }
+    }
+
+    private long directorySize() {
+        File[] files = mDirectory.listFiles();
+        long total = 0;
+        if (files != null)
+            for (File file : files)
+                total += file.length();
+        return total;
+    }
+
+    private String key(String path) {
+        File file = new File(path);
+        return path + "|" + file.lastModified() + "|" + file.length() + "|" + mParameters;
+    }
+
+    private static String fileName(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder name = new StringBuilder(digest.length * 2 + EXT.length());
+            for (byte b : digest)
+                name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            return name.append(EXT).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package org.opencv.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opencv.capture.AviWriter;
+import org.opencv.capture.JpegEncoder;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.correction.CorrectionEngine;
+import org.opencv.correction.CorrectionEngines;
+import org.opencv.correction.SplitMergeCorrection;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+/**
+ * Writes a corrected copy of a video file on a desktop JVM.
+ *
+ * Usage: VideoTranscoder input output.avi [--threads N] [--engine split-merge|linear|java] [--quality Q]
+ *
+ * Frames are decoded in order with VideoCapture.read, corrected and JPEG-encoded on a pool of
+ * workers, put back in order and written as Motion JPEG with AviWriter (the Java bindings have
+ * no VideoWriter). A fixed number of frame slots bounds memory; the decoder waits for a free slot
+ * instead of dropping frames. Audio is not copied. Needs opencv_java300 on java.library.path.
+ */
+public class VideoTranscoder {
+
+    private static final long REPORT_INTERVAL_NANOS = 5000000000L;
+
+    private static class Slot {
+        final Mat bgr = new Mat();
+        final Mat rgba = new Mat();
+        final JpegEncoder encoder;
+        byte[] data = new byte[0];
+        int length;
+        long index;
+
+        Slot(int quality) {
+            encoder = new JpegEncoder(quality);
+        }
+
+        void release() {
+            bgr.release();
+            rgba.release();
+            encoder.release();
+        }
+    }
+
+    private final File mInput;
+    private final File mOutput;
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+    private String mEngine = SplitMergeCorrection.NAME;
+    private int mQuality = 90;
+    private PrintWriter mLog = new PrintWriter(System.out, true);
+
+    private Slot[] mReorder;
+    private BlockingQueue<Slot> mFree;
+    private final AtomicLong mCorrectNanos = new AtomicLong();
+    private final AtomicLong mEncodeNanos = new AtomicLong();
+    private volatile long mWritten;
+    private volatile long mEnd = Long.MAX_VALUE;
+    private volatile IOException mError;
+
+    private final ThreadLocal<CorrectionEngine> mEngines = new ThreadLocal<CorrectionEngine>() {
+        @Override
+        protected CorrectionEngine initialValue() {
+            return CorrectionEngines.create(mEngine);
+        }
+    };
+
+    public VideoTranscoder(File input, File output) {
+        mInput = input;
+        mOutput = output;
+    }
+
+    public void setThreads(int threads) {
+        mThreads = threads;
+    }
+
+    public void setEngine(String engine) {
+        if (CorrectionEngines.create(engine) == null)
+            throw new IllegalArgumentException("Unknown engine: " + engine);
+        mEngine = engine;
+    }
+
+    public void setQuality(int quality) {
+        mQuality = quality;
+    }
+
+    public void setLog(PrintWriter log) {
+        mLog = log;
+    }
+
+    /**
+     * Transcodes the whole file.
+     * @return number of frames written
+     */
+    public long run() throws IOException, InterruptedException {
+        VideoCapture capture = new VideoCapture(mInput.getPath());
+        if (!capture.isOpened())
+            throw new IOException("Cannot open " + mInput);
+        final double fps = capture.get(Videoio.CAP_PROP_FPS);
+        long total = (long) capture.get(Videoio.CAP_PROP_FRAME_COUNT);
+
+        /* Two slots per worker keep every worker busy while the writer catches up */
+        int count = mThreads * 2;
+        Slot[] slots = new Slot[count];
+        mReorder = new Slot[count];
+        mFree = new ArrayBlockingQueue<Slot>(count);
+        for (int i = 0; i < count; i++) {
+            slots[i] = new Slot(mQuality);
+            mFree.add(slots[i]);
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "VideoTranscoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop(fps > 0 ? fps : 30);
+            }
+        }, "VideoTranscoder-writer");
+        writer.start();
+
+        long start = System.nanoTime();
+        long nextReport = start + REPORT_INTERVAL_NANOS;
+        long decodeNanos = 0;
+        long index = 0;
+        try {
+            while (mError == null) {
+                final Slot slot = mFree.take();
+                long begin = System.nanoTime();
+                if (!capture.read(slot.bgr)) {
+                    mFree.add(slot);
+                    break;
+                }
+                decodeNanos += System.nanoTime() - begin;
+                slot.index = index++;
+                workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        process(slot);
+                    }
+                });
+
+                if (System.nanoTime() >= nextReport) {
+                    report(start, total, index, decodeNanos, false);
+                    nextReport += REPORT_INTERVAL_NANOS;
+                }
+            }
+        } finally {
+            capture.release();
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            synchronized (mReorder) {
+                mEnd = index;
+                mReorder.notifyAll();
+            }
+            writer.join();
+            for (Slot slot : slots)
+                slot.release();
+        }
+
+        if (mError != null)
+            throw mError;
+        report(start, total, index, decodeNanos, true);
+        return mWritten;
+    }
+
+    private void process(Slot slot) {
+        int length = -1;
+        try {
+            long begin = System.nanoTime();
+            Imgproc.cvtColor(slot.bgr, slot.rgba, Imgproc.COLOR_BGR2RGBA);
+            Mat corrected = mEngines.get().apply(slot.rgba);
+            long correctedAt = System.nanoTime();
+
+            length = slot.encoder.encode(corrected);
+            if (length > 0) {
+                if (slot.data.length < length)
+                    slot.data = new byte[length + length / 4];
+                slot.encoder.copyTo(slot.data);
+            }
+            mCorrectNanos.addAndGet(correctedAt - begin);
+            mEncodeNanos.addAndGet(System.nanoTime() - correctedAt);
+        } finally {
+            /* The writer waits for every index, failed ones included */
+            slot.length = length;
+            synchronized (mReorder) {
+                mReorder[(int) (slot.index % mReorder.length)] = slot;
+                mReorder.notifyAll();
+            }
+        }
+    }
+
+    private void writeLoop(double fps) {
+        AviWriter avi = null;
+        long next = 0;
+        try {
+            while (true) {
+                Slot slot;
+                synchronized (mReorder) {
+                    int index = (int) (next % mReorder.length);
+                    while (mReorder[index] == null && next != mEnd)
+                        mReorder.wait();
+                    if (mReorder[index] == null)
+                        break;
+                    slot = mReorder[index];
+                    mReorder[index] = null;
+                }
+                next++;
+
+                if (slot.length > 0 && mError == null) {
+                    if (avi == null)
+                        avi = new AviWriter(mOutput, slot.bgr.cols(), slot.bgr.rows(), fps);
+                    if (!avi.writeFrame(slot.data, 0, slot.length))
+                        throw new IOException("Output reached " + AviWriter.MAX_SIZE + " bytes at frame " + slot.index);
+                    mWritten++;
+                } else if (slot.length <= 0) {
+                    mLog.println("Frame " + slot.index + " could not be encoded");
+                }
+                mFree.add(slot);
+            }
+        } catch (IOException e) {
+            mError = e;
+            /* Keep releasing slots so the decoder can stop */
+            drain(next);
+        } catch (InterruptedException e) {
+            mError = new IOException("Interrupted");
+        } finally {
+            if (avi != null) {
+                try {
+                    avi.close();
+                } catch (IOException e) {
+                    if (mError == null)
+                        mError = e;
+                }
+            }
+        }
+    }
+
+    private void drain(long next) {
+        try {
+            while (true) {
+                synchronized (mReorder) {
+                    int index = (int) (next % mReorder.length);
+                    while (mReorder[index] == null && next != mEnd)
+                        mReorder.wait();
+                    if (mReorder[index] == null)
+                        return;
+                    mFree.add(mReorder[index]);
+                    mReorder[index] = null;
+                }
+                next++;
+            }
+        } catch (InterruptedException e) {
+            // giving up, the error is already recorded
+        }
+    }
+
+    private void report(long start, long total, long decoded, long decodeNanos, boolean last) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double perFrame = decoded == 0 ? 0 : 1e-6 / decoded;
+        mLog.println(String.format(Locale.US,
+                "%s%d/%s frames, %.1f fps, decode %.1f ms, correct %.1f ms, encode %.1f ms",
+                last ? "done: " : "", last ? mWritten : decoded, total > 0 ? Long.toString(total) : "?",
+                seconds > 0 ? (last ? mWritten : decoded) / seconds : 0,
+                decodeNanos * perFrame, mCorrectNanos.get() * perFrame, mEncodeNanos.get() * perFrame));
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: VideoTranscoder input output.avi [--threads N] "
+                    + "[--engine split-merge|linear|java] [--quality Q]");
+            System.exit(2);
+        }
+
+        VideoTranscoder transcoder = new VideoTranscoder(new File(args[0]), new File(args[1]));
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length)
+                transcoder.setThreads(Integer.parseInt(args[++i]));
+            else if (args[i].equals("--engine") && i + 1 < args.length)
+                transcoder.setEngine(args[++i]);
+            else if (args[i].equals("--quality") && i + 1 < args.length)
+                transcoder.setQuality(Integer.parseInt(args[++i]));
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        transcoder.run();
+    }
+}
@@ -0,0 +1,273 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.Mat;
+
+/**
+ * Records processed frames to a Motion JPEG AVI file. The frame thread copies each frame into a
+ * free slot, a worker pool encodes the slots in parallel and a writer thread puts them back in
+ * order and appends them with AviWriter. The number of slots is derived from a fixed memory
+ * budget on the first frame; when they are all in flight the frame is dropped, so a slow
+ * encoder or storage never holds up the preview. The frame rate stored in the file is the rate
+ * actually written, measured when the recording is closed.
+ */
+public class AviRecorder {
+
+    private static final int MIN_SLOTS = 2;
+    private static final int MAX_SLOTS = 16;
+
+    private static class Slot {
+        final Mat image = new Mat();
+        final JpegEncoder encoder;
+        byte[] data = new byte[0];
+        int length;
+        long sequence;
+        long timestamp;
+
+        Slot(int quality) {
+            encoder = new JpegEncoder(quality);
+        }
+
+        void release() {
+            image.release();
+            encoder.release();
+        }
+    }
+
+    private final File mFile;
+    private final double mFps;
+    private final long mMemoryBudget;
+    private final int mEncoderCount;
+    private final int mQuality;
+
+    /* Created on the first frame, under the object lock */
+    private Slot[] mSlots;
+    private Slot[] mReorder;
+    private BlockingQueue<Slot> mFree;
+    private ExecutorService mEncoders;
+    private Thread mWriterThread;
+
+    private long mNextSequence;
+    private volatile long mEnd = Long.MAX_VALUE;
+    private volatile boolean mStopped;
+    private volatile IOException mError;
+    private volatile int mWritten;
+    private final AtomicInteger mDropped = new AtomicInteger();
+
+    /**
+     * @param file - destination, overwritten if it exists
+     * @param fps - expected frame rate, used until the recording is closed
+     * @param memoryBudget - bytes that frames in flight may use, covering the frame copy, its
+     *                       color conversion and the encoded image
+     * @param encoders - number of encoding threads
+     * @param quality - JPEG quality from 0 to 100
+     */
+    public AviRecorder(File file, double fps, long memoryBudget, int encoders, int quality) {
+        mFile = file;
+        mFps = fps;
+        mMemoryBudget = memoryBudget;
+        mEncoderCount = encoders;
+        mQuality = quality;
+    }
+
+    public int getWrittenFrames() {
+        return mWritten;
+    }
+
+    public int getDroppedFrames() {
+        return mDropped.get();
+    }
+
+    /**
+     * Returns true once the recording stopped accepting frames, because it was closed, the file
+     * reached AviWriter.MAX_SIZE or writing failed.
+     */
+    public boolean isStopped() {
+        return mStopped;
+    }
+
+    /**
+     * Called on the frame thread with the frame about to be displayed. The frame is not
+     * retained, it may be reused as soon as this returns.
+     */
+    public synchronized void onFrame(Mat frame) {
+        if (mStopped)
+            return;
+        if (mSlots == null)
+            setup(frame);
+
+        final Slot slot = mFree.poll();
+        if (slot == null) {
+            mDropped.incrementAndGet();
+            return;
+        }
+
+        slot.sequence = mNextSequence++;
+        slot.timestamp = System.nanoTime();
+        frame.copyTo(slot.image);
+        mEncoders.execute(new Runnable() {
+            @Override
+            public void run() {
+                encode(slot);
+            }
+        });
+    }
+
+    /**
+     * Writes the frames in flight, finishes the file and releases all buffers.
+     * @throws IOException if writing failed at any point of the recording
+     */
+    public void close() throws IOException {
+        Thread writer;
+        synchronized (this) {
+            if (mEnd != Long.MAX_VALUE)
+                return;
+            mStopped = true;
+            mEnd = mNextSequence;
+            writer = mWriterThread;
+        }
+        if (writer == null)
+            return;
+
+        mEncoders.shutdown();
+        try {
+            mEncoders.awaitTermination(10, TimeUnit.SECONDS);
+            synchronized (mReorder) {
+                mReorder.notifyAll();
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Slot slot : mSlots)
+            slot.release();
+
+        if (mError != null)
+            throw mError;
+    }
+
+    private void setup(Mat frame) {
+        long frameBytes = frame.total() * frame.elemSize();
+        /* frame copy + BGR conversion (3/4 of RGBA) + encoded image, generously 1/4 */
+        long slotBytes = Math.max(1, frameBytes * 2);
+        int count = (int) Math.max(MIN_SLOTS, Math.min(MAX_SLOTS, mMemoryBudget / slotBytes));
+
+        mSlots = new Slot[count];
+        mReorder = new Slot[count];
+        mFree = new ArrayBlockingQueue<Slot>(count);
+        for (int i = 0; i < count; i++) {
+            mSlots[i] = new Slot(mQuality);
+            mFree.add(mSlots[i]);
+        }
+
+        mEncoders = Executors.newFixedThreadPool(mEncoderCount, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AviRecorder-encoder");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        mWriterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "AviRecorder-writer");
+        mWriterThread.start();
+    }
+
+    private void encode(Slot slot) {
+        int length = -1;
+        try {
+            length = slot.encoder.encode(slot.image);
+            if (length > 0) {
+                if (slot.data.length < length)
+                    slot.data = new byte[length + length / 4];
+                slot.encoder.copyTo(slot.data);
+            }
+        } finally {
+            /* The writer waits for every sequence number, failed ones included */
+            slot.length = length;
+            publish(slot);
+        }
+    }
+
+    private void publish(Slot slot) {
+        synchronized (mReorder) {
+            mReorder[(int) (slot.sequence % mReorder.length)] = slot;
+            mReorder.notifyAll();
+        }
+    }
+
+    private void writeLoop() {
+        AviWriter avi = null;
+        long next = 0;
+        boolean accepting = true;
+        int width = 0;
+        int height = 0;
+        long first = 0;
+        long last = 0;
+        try {
+            while (true) {
+                Slot slot;
+                synchronized (mReorder) {
+                    int index = (int) (next % mReorder.length);
+                    while (mReorder[index] == null && next != mEnd)
+                        mReorder.wait();
+                    if (mReorder[index] == null)
+                        break;
+                    slot = mReorder[index];
+                    mReorder[index] = null;
+                }
+                next++;
+
+                if (avi == null && slot.length > 0) {
+                    width = slot.image.cols();
+                    height = slot.image.rows();
+                    avi = new AviWriter(mFile, width, height, mFps);
+                    first = slot.timestamp;
+                }
+
+                /* AVI frames share one size, frames after a resolution change are dropped */
+                if (slot.length <= 0 || !accepting || slot.image.cols() != width
+                        || slot.image.rows() != height) {
+                    mDropped.incrementAndGet();
+                } else if (avi.writeFrame(slot.data, 0, slot.length)) {
+                    last = slot.timestamp;
+                    mWritten++;
+                } else {
+                    accepting = false;
+                    mStopped = true;
+                    mDropped.incrementAndGet();
+                }
+                mFree.add(slot);
+            }
+        } catch (IOException e) {
+            mError = e;
+            mStopped = true;
+        } catch (InterruptedException e) {
+            mStopped = true;
+        } finally {
+            if (avi != null) {
+                if (mWritten > 1 && last > first)
+                    avi.setFrameRate((mWritten - 1) * 1e9 / (last - first));
+                try {
+                    avi.close();
+                } catch (IOException e) {
+                    if (mError == null)
+                        mError = e;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a Motion JPEG video as a RIFF AVI file. Each frame is one already encoded JPEG image.
+ * The idx1 index must come after all frames, so its entries are collected in a small buffer and
+ * spooled to a side file (name + ".idx") whenever it fills; every spool also refreshes the header
+ * sizes and frame count. A recording that is cut short is therefore still readable by players
+ * that scan the movi list. Files are limited to MAX_SIZE, see writeFrame(). Not thread safe.
+ */
+public class AviWriter {
+
+    public static final long MAX_SIZE = 1L << 30;
+
+    private static final int INDEX_BUFFER_ENTRIES = 1024;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int RATE_SCALE = 1000;
+
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+
+    private static final int FOURCC_FRAME = fourcc("00dc");
+    private static final int FOURCC_INDEX = fourcc("idx1");
+
+    /* Header layout, offsets from the start of the file */
+    private static final int RIFF_SIZE = 4;
+    private static final int AVIH_USEC_PER_FRAME = 32;
+    private static final int AVIH_MAX_BYTES_PER_SEC = 36;
+    private static final int AVIH_FLAGS = 44;
+    private static final int AVIH_TOTAL_FRAMES = 48;
+    private static final int AVIH_SUGGESTED_BUFFER = 60;
+    private static final int STRH_SCALE = 128;
+    private static final int STRH_RATE = 132;
+    private static final int STRH_LENGTH = 140;
+    private static final int STRH_SUGGESTED_BUFFER = 144;
+    private static final int MOVI_SIZE = 216;
+    private static final int MOVI_FOURCC = 220;
+    private static final int HEADER_SIZE = 224;
+
+    private final File mIndexFile;
+    private final RandomAccessFile mFile;
+    private final RandomAccessFile mIndexRaf;
+    private final FileChannel mChannel;
+    private final FileChannel mIndexChannel;
+    private final ByteBuffer mIndex;
+    private final ByteBuffer mChunkHeader;
+    private final ByteBuffer mPadding;
+    private final ByteBuffer mField;
+    private final ByteBuffer[] mGather = new ByteBuffer[3];
+
+    private long mPosition = HEADER_SIZE;
+    private long mMoviEnd = HEADER_SIZE;
+    private int mFrames;
+    private int mMaxChunk;
+    private double mFps;
+    private boolean mClosed;
+
+    public AviWriter(File file, int width, int height, double fps) throws IOException {
+        mFps = fps;
+        mIndexFile = new File(file.getPath() + ".idx");
+        mFile = new RandomAccessFile(file, "rw");
+        mFile.setLength(0);
+        mIndexRaf = new RandomAccessFile(mIndexFile, "rw");
+        mIndexRaf.setLength(0);
+        mChannel = mFile.getChannel();
+        mIndexChannel = mIndexRaf.getChannel();
+
+        mIndex = ByteBuffer.allocateDirect(INDEX_BUFFER_ENTRIES * INDEX_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        mChunkHeader = ByteBuffer.allocateDirect(8).order(ByteOrder.LITTLE_ENDIAN);
+        mPadding = ByteBuffer.allocateDirect(1);
+        mField = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+        writeFully(header(width, height), 0);
+        updateHeader(false);
+    }
+
+    public int getFrameCount() {
+        return mFrames;
+    }
+
+    public long getSize() {
+        return mPosition;
+    }
+
+    /**
+     * Sets the playback rate stored in the header, e.g. the rate measured once recording ended.
+     */
+    public void setFrameRate(double fps) {
+        mFps = fps;
+    }
+
+    /**
+     * Appends one JPEG image as the next frame.
+     * @return false if the frame was not written because the file would exceed MAX_SIZE
+     */
+    public boolean writeFrame(byte[] jpeg, int offset, int length) throws IOException {
+        int padded = length + (length & 1);
+        long indexSize = 8 + (long) (mFrames + 1) * INDEX_ENTRY_SIZE;
+        if (mPosition + 8 + padded + indexSize > MAX_SIZE)
+            return false;
+
+        mChunkHeader.clear();
+        mChunkHeader.putInt(FOURCC_FRAME).putInt(length).flip();
+        mGather[0] = mChunkHeader;
+        mGather[1] = ByteBuffer.wrap(jpeg, offset, length);
+        mPadding.clear();
+        if (padded == length)
+            mPadding.limit(0);
+        mGather[2] = mPadding;
+
+        mChannel.position(mPosition);
+        long remaining = 8 + padded;
+        while (remaining > 0)
+            remaining -= mChannel.write(mGather);
+
+        mIndex.putInt(FOURCC_FRAME).putInt(AVIIF_KEYFRAME).putInt((int) (mPosition - MOVI_FOURCC)).putInt(length);
+        mPosition += 8 + padded;
+        mMoviEnd = mPosition;
+        mFrames++;
+        mMaxChunk = Math.max(mMaxChunk, length);
+
+        if (!mIndex.hasRemaining())
+            flushIndex();
+        return true;
+    }
+
+    /**
+     * Appends the index, writes the final header and closes the file.
+     */
+    public void close() throws IOException {
+        if (mClosed)
+            return;
+        mClosed = true;
+        try {
+            spoolIndex();
+
+            long indexSize = mIndexChannel.size();
+            mChunkHeader.clear();
+            mChunkHeader.putInt(FOURCC_INDEX).putInt((int) indexSize).flip();
+            writeFully(mChunkHeader, mPosition);
+            mPosition += 8;
+
+            long copied = 0;
+            while (copied < indexSize)
+                copied += mIndexChannel.transferTo(copied, indexSize - copied, mChannel.position(mPosition + copied));
+            mPosition += indexSize;
+
+            updateHeader(true);
+            mChannel.force(true);
+        } finally {
+            mChannel.close();
+            mFile.close();
+            mIndexChannel.close();
+            mIndexRaf.close();
+            mIndexFile.delete();
+        }
+    }
+
+    private void flushIndex() throws IOException {
+        spoolIndex();
+        updateHeader(false);
+    }
+
+    private void spoolIndex() throws IOException {
+        mIndex.flip();
+        while (mIndex.hasRemaining())
+            mIndexChannel.write(mIndex);
+        mIndex.clear();
+    }
+
+    private void updateHeader(boolean indexed) throws IOException {
+        int rate = (int) Math.round(mFps * RATE_SCALE);
+        putInt(RIFF_SIZE, (int) (mPosition - 8));
+        putInt(AVIH_USEC_PER_FRAME, (int) Math.round(1000000.0 / mFps));
+        putInt(AVIH_MAX_BYTES_PER_SEC, (int) Math.min(Integer.MAX_VALUE, Math.round((mMaxChunk + 8) * mFps)));
+        putInt(AVIH_FLAGS, indexed ? AVIF_HASINDEX : 0);
+        putInt(AVIH_TOTAL_FRAMES, mFrames);
+        putInt(AVIH_SUGGESTED_BUFFER, mMaxChunk + 8);
+        putInt(STRH_SCALE, RATE_SCALE);
+        putInt(STRH_RATE, rate);
+        putInt(STRH_LENGTH, mFrames);
+        putInt(STRH_SUGGESTED_BUFFER, mMaxChunk + 8);
+        putInt(MOVI_SIZE, (int) (mMoviEnd - MOVI_FOURCC));
+    }
+
+    private void putInt(long position, int value) throws IOException {
+        mField.clear();
+        mField.putInt(value).flip();
+        writeFully(mField, position);
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += mChannel.write(buffer, position);
+    }
+
+    private static ByteBuffer header(int width, int height) {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        b.putInt(fourcc("RIFF")).putInt(0).putInt(fourcc("AVI "));
+        b.putInt(fourcc("LIST")).putInt(192).putInt(fourcc("hdrl"));
+
+        /* MainAVIHeader */
+        b.putInt(fourcc("avih")).putInt(56);
+        b.putInt(0);                    // microseconds per frame
+        b.putInt(0);                    // max bytes per second
+        b.putInt(0);                    // padding granularity
+        b.putInt(0);                    // flags
+        b.putInt(0);                    // total frames
+        b.putInt(0);                    // initial frames
+        b.putInt(1);                    // streams
+        b.putInt(0);                    // suggested buffer size
+        b.putInt(width).putInt(height);
+        b.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        b.putInt(fourcc("LIST")).putInt(116).putInt(fourcc("strl"));
+
+        /* AVIStreamHeader */
+        b.putInt(fourcc("strh")).putInt(56);
+        b.putInt(fourcc("vids")).putInt(fourcc("MJPG"));
+        b.putInt(0);                    // flags
+        b.putShort((short) 0).putShort((short) 0);
+        b.putInt(0);                    // initial frames
+        b.putInt(0).putInt(0);          // scale, rate
+        b.putInt(0);                    // start
+        b.putInt(0);                    // length
+        b.putInt(0);                    // suggested buffer size
+        b.putInt(-1);                   // quality
+        b.putInt(0);                    // sample size
+        b.putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+
+        /* BITMAPINFOHEADER */
+        b.putInt(fourcc("strf")).putInt(40);
+        b.putInt(40).putInt(width).putInt(height);
+        b.putShort((short) 1).putShort((short) 24);
+        b.putInt(fourcc("MJPG")).putInt(width * height * 3);
+        b.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        b.putInt(fourcc("LIST")).putInt(4).putInt(fourcc("movi"));
+        b.flip();
+        return b;
+    }
+
+    private static int fourcc(String code) {
+        return (code.charAt(0)) | (code.charAt(1) << 8) | (code.charAt(2) << 16) | (code.charAt(3) << 24);
+    }
+}
@@ -0,0 +1,232 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Captures a burst of consecutive processed frames and saves the sharpest one. Frames are copied
+ * into a ring of Mats allocated once, at preview rate, so the preview is never stopped. Each frame
+ * is scored on a worker pool as soon as it is copied, using the variance of its Laplacian; when
+ * the burst is complete the best frame is JPEG-encoded and handed to the CaptureWriter. Only the
+ * ring holds full color frames, the scoring buffers exist once per worker.
+ */
+public class BurstCapture {
+
+    private static class Frame {
+        final Mat rgba = new Mat();
+        volatile double sharpness;
+    }
+
+    /* Buffers of one scoring worker */
+    private static class Scratch {
+        final Mat gray = new Mat();
+        final Mat laplacian = new Mat();
+        final MatOfDouble mean = new MatOfDouble();
+        final MatOfDouble stddev = new MatOfDouble();
+
+        void release() {
+            gray.release();
+            laplacian.release();
+            mean.release();
+            stddev.release();
+        }
+    }
+
+    private final CaptureWriter mWriter;
+    private final ExecutorService mWorkers;
+    private final BlockingQueue<Scratch> mScratch;
+    private final Frame[] mRing;
+    private final JpegEncoder mEncoder;
+    private final AtomicInteger mRemaining = new AtomicInteger();
+
+    /* Touched by the frame thread only while a burst is filling */
+    private volatile boolean mFilling;
+    private volatile boolean mBusy;
+    private int mCount;
+    private File mFile;
+    private CaptureWriter.Callback mCallback;
+
+    private volatile int mLastSharpest = -1;
+    private final double[] mLastSharpness;
+
+    /**
+     * @param writer - writer the selected frame is handed to
+     * @param frames - number of frames in a burst, all of them are kept in memory
+     * @param workers - number of scoring threads
+     * @param jpegQuality - JPEG quality from 0 to 100
+     */
+    public BurstCapture(CaptureWriter writer, int frames, int workers, int jpegQuality) {
+        mWriter = writer;
+        mRing = new Frame[frames];
+        for (int i = 0; i < frames; i++)
+            mRing[i] = new Frame();
+        mLastSharpness = new double[frames];
+        mScratch = new ArrayBlockingQueue<Scratch>(workers);
+        for (int i = 0; i < workers; i++)
+            mScratch.add(new Scratch());
+        mEncoder = new JpegEncoder(jpegQuality);
+        mWorkers = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BurstCapture");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Starts a burst with the next frame passed to onFrame(). The sharpest frame is saved to file.
+     * @return false if the previous burst is not finished yet
+     */
+    public synchronized boolean request(File file, CaptureWriter.Callback callback) {
+        if (mBusy)
+            return false;
+        mBusy = true;
+        mFile = file;
+        mCallback = callback;
+        mCount = 0;
+        mRemaining.set(mRing.length);
+        mFilling = true;
+        return true;
+    }
+
+    public boolean isBusy() {
+        return mBusy;
+    }
+
+    public int getFrameCount() {
+        return mRing.length;
+    }
+
+    /**
+     * Index of the frame picked by the last finished burst, or -1 if there was none.
+     */
+    public int getLastSharpest() {
+        return mLastSharpest;
+    }
+
+    /**
+     * Sharpness of every frame of the last finished burst, higher is sharper.
+     */
+    public synchronized double[] getLastSharpness() {
+        return mLastSharpness.clone();
+    }
+
+    /**
+     * Called on the frame thread with the frame about to be displayed. The frame is not
+     * retained, it may be reused as soon as this returns.
+     */
+    public void onFrame(Mat frame) {
+        if (!mFilling)
+            return;
+
+        final Frame slot = mRing[mCount++];
+        frame.copyTo(slot.rgba);
+        if (mCount == mRing.length)
+            mFilling = false;
+
+        mWorkers.execute(new Runnable() {
+            @Override
+            public void run() {
+                // There are as many scratches as workers, so one is always free
+                Scratch scratch = mScratch.poll();
+                try {
+                    slot.sharpness = score(slot.rgba, scratch);
+                } finally {
+                    mScratch.add(scratch);
+                }
+                if (mRemaining.decrementAndGet() == 0)
+                    finish();
+            }
+        });
+    }
+
+    /**
+     * Waits for the burst in progress and releases the ring. The writer is not closed, it may
+     * be shared.
+     */
+    public void close() {
+        mFilling = false;
+        mWorkers.shutdown();
+        try {
+            mWorkers.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Frame frame : mRing)
+            frame.rgba.release();
+        for (Scratch scratch : mScratch)
+            scratch.release();
+        mEncoder.release();
+    }
+
+    private static double score(Mat rgba, Scratch scratch) {
+        Mat gray = rgba;
+        switch (rgba.channels()) {
+        case 4:
+            Imgproc.cvtColor(rgba, scratch.gray, Imgproc.COLOR_RGBA2GRAY);
+            gray = scratch.gray;
+            break;
+        case 3:
+            Imgproc.cvtColor(rgba, scratch.gray, Imgproc.COLOR_RGB2GRAY);
+            gray = scratch.gray;
+            break;
+        }
+        // The Laplacian of 8 bit data lies within +-2040, so 16 bits hold it exactly
+        Imgproc.Laplacian(gray, scratch.laplacian, CvType.CV_16S);
+        Core.meanStdDev(scratch.laplacian, scratch.mean, scratch.stddev);
+        double sigma = scratch.stddev.toArray()[0];
+        return sigma * sigma;
+    }
+
+    /* Runs on the worker that scored the last frame */
+    private void finish() {
+        int best = 0;
+        synchronized (this) {
+            for (int i = 0; i < mRing.length; i++) {
+                mLastSharpness[i] = mRing[i].sharpness;
+                if (mRing[i].sharpness > mRing[best].sharpness)
+                    best = i;
+            }
+            mLastSharpest = best;
+        }
+
+        File file = mFile;
+        CaptureWriter.Callback callback = mCallback;
+        try {
+            int length = mEncoder.encode(mRing[best].rgba);
+            if (length < 0) {
+                fail(file, callback, "cannot encode frame " + mRing[best].rgba);
+                return;
+            }
+            CaptureWriter.Slot slot = mWriter.acquire(length);
+            if (slot == null) {
+                fail(file, callback, "capture writer busy");
+                return;
+            }
+            mEncoder.copyTo(slot.data());
+            mWriter.submit(slot, length, file, callback);
+        } finally {
+            mBusy = false;
+        }
+    }
+
+    private static void fail(File file, CaptureWriter.Callback callback, String reason) {
+        if (callback != null)
+            callback.onCaptureFailed(file, new IOException(reason));
+    }
+}
@@ -0,0 +1,238 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes captured images to storage on a single background thread, so that camera callbacks
+ * never wait on I/O. Data is copied into one of a fixed number of pooled buffers; when all of
+ * them are in flight the capture is rejected instead of blocking. Written files are fsynced in
+ * batches, either when SYNC_BATCH files are pending or when the queue runs empty, and the
+ * callback is invoked on the writer thread once a file is durable.
+ */
+public class CaptureWriter {
+
+    private static final int SYNC_BATCH = 4;
+    private static final long SYNC_DELAY_MS = 500;
+
+    public interface Callback {
+        public void onCaptureWritten(File file);
+
+        public void onCaptureFailed(File file, IOException e);
+    }
+
+    /**
+     * A pooled buffer. Get one with acquire(), fill data and hand it to submit().
+     */
+    public static class Slot {
+        private byte[] mData;
+        private int mLength;
+        private File mFile;
+        private Callback mCallback;
+
+        Slot(int capacity) {
+            mData = new byte[capacity];
+        }
+
+        public byte[] data() {
+            return mData;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (mData.length < capacity)
+                mData = new byte[capacity];
+        }
+    }
+
+    private static class Pending {
+        final File file;
+        final FileChannel channel;
+        final Callback callback;
+
+        Pending(File file, FileChannel channel, Callback callback) {
+            this.file = file;
+            this.channel = channel;
+            this.callback = callback;
+        }
+    }
+
+    private final BlockingQueue<Slot> mFree;
+    private final BlockingQueue<Slot> mQueue = new LinkedBlockingQueue<Slot>();
+    private final List<Pending> mUnsynced = new ArrayList<Pending>();
+    private final Slot mStop = new Slot(0);
+    private final Thread mThread;
+    /* Set under mQueue's lock together with queueing mStop, so nothing is queued after it */
+    private volatile boolean mClosed;
+
+    /**
+     * @param slots - number of captures that can be in flight at once
+     * @param slotCapacity - initial size of each buffer; larger captures grow the buffer once
+     */
+    public CaptureWriter(int slots, int slotCapacity) {
+        mFree = new ArrayBlockingQueue<Slot>(slots);
+        for (int i = 0; i < slots; i++)
+            mFree.add(new Slot(slotCapacity));
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "CaptureWriter");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Takes a free buffer of at least the given size without waiting.
+     * @return the buffer, or null if all of them are in flight
+     */
+    public Slot acquire(int capacity) {
+        if (mClosed)
+            return null;
+        Slot slot = mFree.poll();
+        if (slot != null)
+            slot.ensureCapacity(capacity);
+        return slot;
+    }
+
+    /**
+     * Queues a filled buffer for writing. If the writer was closed meanwhile the buffer is
+     * dropped and the callback fails right away, on the calling thread.
+     * @param slot - buffer obtained from acquire()
+     * @param length - number of valid bytes in slot.data()
+     * @param file - destination, overwritten if it exists
+     * @param callback - completion callback, may be null
+     */
+    public void submit(Slot slot, int length, File file, Callback callback) {
+        slot.mLength = length;
+        slot.mFile = file;
+        slot.mCallback = callback;
+        synchronized (mQueue) {
+            if (!mClosed) {
+                mQueue.add(slot);
+                return;
+            }
+        }
+        slot.mFile = null;
+        slot.mCallback = null;
+        mFree.offer(slot);
+        if (callback != null)
+            callback.onCaptureFailed(file, new IOException("Capture writer closed"));
+    }
+
+    /**
+     * Copies the data into a pooled buffer and queues it for writing.
+     * @return false if the capture was rejected because all buffers are in flight
+     */
+    public boolean write(File file, byte[] data, int offset, int length, Callback callback) {
+        Slot slot = acquire(length);
+        if (slot == null)
+            return false;
+        System.arraycopy(data, offset, slot.mData, 0, length);
+        submit(slot, length, file, callback);
+        return true;
+    }
+
+    public boolean write(File file, byte[] data, Callback callback) {
+        return write(file, data, 0, data.length, callback);
+    }
+
+    /**
+     * Writes and syncs everything queued so far, then stops the writer thread.
+     */
+    public void close() {
+        synchronized (mQueue) {
+            if (mClosed)
+                return;
+            mClosed = true;
+            mQueue.add(mStop);
+        }
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Slot slot;
+            try {
+                if (mUnsynced.isEmpty())
+                    slot = mQueue.take();
+                else
+                    slot = mQueue.poll(SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (slot == mStop)
+                break;
+
+            if (slot != null) {
+                writeSlot(slot);
+                mFree.add(slot);
+            }
+
+            if (slot == null || mUnsynced.size() >= SYNC_BATCH || mQueue.isEmpty())
+                syncPending();
+        }
+        syncPending();
+    }
+
+    private void writeSlot(Slot slot) {
+        File file = slot.mFile;
+        Callback callback = slot.mCallback;
+        slot.mFile = null;
+        slot.mCallback = null;
+
+        FileChannel channel = null;
+        try {
+            channel = new FileOutputStream(file).getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(slot.mData, 0, slot.mLength);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            mUnsynced.add(new Pending(file, channel, callback));
+        } catch (IOException e) {
+            closeQuietly(channel);
+            if (callback != null)
+                callback.onCaptureFailed(file, e);
+        }
+    }
+
+    private void syncPending() {
+        for (Pending pending : mUnsynced) {
+            try {
+                pending.channel.force(true);
+                pending.channel.close();
+                if (pending.callback != null)
+                    pending.callback.onCaptureWritten(pending.file);
+            } catch (IOException e) {
+                closeQuietly(pending.channel);
+                if (pending.callback != null)
+                    pending.callback.onCaptureFailed(pending.file, e);
+            }
+        }
+        mUnsynced.clear();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // already failing, the original error is reported
+        }
+    }
+}
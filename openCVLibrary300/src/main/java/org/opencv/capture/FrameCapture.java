@@ -0,0 +1,168 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opencv.core.Mat;
+
+/**
+ * Captures processed frames as they are displayed. The frame thread only copies the frame into
+ * a preallocated snapshot; color conversion and JPEG encoding run on a small worker pool and
+ * the result goes to a CaptureWriter. Calling onFrame() costs one volatile read when no capture
+ * is pending.
+ */
+public class FrameCapture {
+
+    private static class Request {
+        final File file;
+        final CaptureWriter.Callback callback;
+
+        Request(File file, CaptureWriter.Callback callback) {
+            this.file = file;
+            this.callback = callback;
+        }
+    }
+
+    private static class Snapshot {
+        final Mat frame = new Mat();
+        final JpegEncoder encoder;
+
+        Snapshot(int jpegQuality) {
+            encoder = new JpegEncoder(jpegQuality);
+        }
+
+        void release() {
+            frame.release();
+            encoder.release();
+        }
+    }
+
+    private final CaptureWriter mWriter;
+    private final ExecutorService mEncoders;
+    private final BlockingQueue<Snapshot> mFree;
+    private final Snapshot[] mSnapshots;
+    private final AtomicReference<Request> mPending = new AtomicReference<Request>();
+    /* Guarded by mSnapshots, so a frame is never copied or handed off while close() runs */
+    private boolean mClosed;
+
+    /**
+     * @param writer - writer the encoded images are handed to
+     * @param encoders - number of encoding threads, also the number of snapshots in flight
+     * @param jpegQuality - JPEG quality from 0 to 100
+     */
+    public FrameCapture(CaptureWriter writer, int encoders, int jpegQuality) {
+        mWriter = writer;
+        mSnapshots = new Snapshot[encoders];
+        mFree = new ArrayBlockingQueue<Snapshot>(encoders);
+        for (int i = 0; i < encoders; i++) {
+            mSnapshots[i] = new Snapshot(jpegQuality);
+            mFree.add(mSnapshots[i]);
+        }
+        mEncoders = Executors.newFixedThreadPool(encoders, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FrameCapture");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Asks for the next frame passed to onFrame() to be saved to file.
+     * @return false if another capture is still waiting for a frame
+     */
+    public boolean request(File file, CaptureWriter.Callback callback) {
+        return mPending.compareAndSet(null, new Request(file, callback));
+    }
+
+    public boolean isPending() {
+        return mPending.get() != null;
+    }
+
+    /**
+     * Called on the frame thread with the frame about to be displayed. The frame is not
+     * retained, it may be reused as soon as this returns.
+     */
+    public void onFrame(Mat frame) {
+        if (mPending.get() == null)
+            return;
+        final Request request = mPending.getAndSet(null);
+        if (request == null)
+            return;
+
+        synchronized (mSnapshots) {
+            if (mClosed) {
+                fail(request, "frame capture closed");
+                return;
+            }
+
+            final Snapshot snapshot = mFree.poll();
+            if (snapshot == null) {
+                fail(request, "all encoders busy");
+                return;
+            }
+
+            /* copyTo reuses the snapshot buffer once it has the frame size */
+            frame.copyTo(snapshot.frame);
+            mEncoders.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        encode(snapshot, request);
+                    } finally {
+                        mFree.add(snapshot);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Finishes the captures in progress and releases the snapshot buffers. The writer is not
+     * closed, it may be shared. Captures still waiting for a frame fail on the next onFrame().
+     */
+    public void close() {
+        synchronized (mSnapshots) {
+            if (mClosed)
+                return;
+            mClosed = true;
+            mEncoders.shutdown();
+        }
+        try {
+            mEncoders.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Snapshot snapshot : mSnapshots)
+            snapshot.release();
+    }
+
+    private void encode(Snapshot snapshot, Request request) {
+        int length = snapshot.encoder.encode(snapshot.frame);
+        if (length < 0) {
+            fail(request, "cannot encode frame " + snapshot.frame);
+            return;
+        }
+
+        CaptureWriter.Slot slot = mWriter.acquire(length);
+        if (slot == null) {
+            fail(request, "capture writer busy");
+            return;
+        }
+        snapshot.encoder.copyTo(slot.data());
+        mWriter.submit(slot, length, request.file, request.callback);
+    }
+
+    private static void fail(Request request, String reason) {
+        if (request.callback != null)
+            request.callback.onCaptureFailed(request.file, new IOException(reason));
+    }
+}
@@ -0,0 +1,27 @@
+package org.opencv.capture;
+
+/**
+ * Layout of a frame trace file. All values are big endian.
+ *
+ * Header: MAGIC, VERSION, width, height, pixel format (int each).
+ * Then a sequence of chunks: tag (int), payload length (int), timestamp in ns (long), payload.
+ * TAG_SETTINGS carries the correction settings as UTF-8 text and applies to all following
+ * frames. TAG_FRAME carries one raw NV21 preview frame. TAG_END closes the trace and carries
+ * the number of written and dropped frames (two longs); a trace without it was cut short.
+ */
+public final class FrameTrace {
+
+    public static final int MAGIC = 0x44545243; // "DTRC"
+    public static final int VERSION = 1;
+    public static final int FORMAT_NV21 = 17;   // android.graphics.ImageFormat.NV21
+
+    public static final int TAG_FRAME    = 0x4652414D; // "FRAM"
+    public static final int TAG_SETTINGS = 0x53455454; // "SETT"
+    public static final int TAG_END      = 0x454E4421; // "END!"
+
+    public static final int HEADER_SIZE = 20;
+    public static final int CHUNK_HEADER_SIZE = 16;
+
+    private FrameTrace() {
+    }
+}
@@ -0,0 +1,141 @@
+package org.opencv.capture;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Reads back a trace written by FrameTraceWriter one frame at a time.
+ * The frame buffer returned by getFrame() is reused by the next call to nextFrame().
+ */
+public class FrameTraceReader implements Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final FileChannel mChannel;
+    private final int mWidth;
+    private final int mHeight;
+    private final ByteBuffer mChunkHeader = ByteBuffer.allocate(FrameTrace.CHUNK_HEADER_SIZE);
+    private final byte[] mFrame;
+
+    private long mTimestamp;
+    private String mSettings = "";
+    private boolean mComplete;
+
+    public FrameTraceReader(File file) throws IOException {
+        mChannel = new FileInputStream(file).getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(FrameTrace.HEADER_SIZE);
+        if (!readFully(header)) {
+            mChannel.close();
+            throw new EOFException("Truncated frame trace header: " + file);
+        }
+        header.flip();
+        if (header.getInt() != FrameTrace.MAGIC || header.getInt() != FrameTrace.VERSION) {
+            mChannel.close();
+            throw new IOException("Not a version " + FrameTrace.VERSION + " frame trace: " + file);
+        }
+        mWidth = header.getInt();
+        mHeight = header.getInt();
+        if (header.getInt() != FrameTrace.FORMAT_NV21) {
+            mChannel.close();
+            throw new IOException("Unsupported pixel format in frame trace: " + file);
+        }
+        // NV21 needs even sizes; the limit keeps the frame size within an int
+        if (mWidth <= 0 || mHeight <= 0 || mWidth % 2 != 0 || mHeight % 2 != 0
+                || (long) mWidth * mHeight > Integer.MAX_VALUE / 2) {
+            mChannel.close();
+            throw new IOException("Invalid frame size " + mWidth + "x" + mHeight + " in frame trace: " + file);
+        }
+        mFrame = new byte[mWidth * mHeight + mWidth * mHeight / 2];
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Advances to the next frame, picking up settings chunks on the way.
+     * @return false at the end of the trace, including a last frame that was cut short
+     * @throws IOException if a chunk length is negative or runs past the end of the file
+     */
+    public boolean nextFrame() throws IOException {
+        while (!mComplete) {
+            mChunkHeader.clear();
+            if (!readFully(mChunkHeader))
+                return false;
+            mChunkHeader.flip();
+            int tag = mChunkHeader.getInt();
+            int length = mChunkHeader.getInt();
+            long timestamp = mChunkHeader.getLong();
+
+            if (tag == FrameTrace.TAG_FRAME) {
+                if (length != mFrame.length)
+                    throw new IOException("Unexpected frame size " + length);
+                if (!readFully(ByteBuffer.wrap(mFrame)))
+                    return false;
+                mTimestamp = timestamp;
+                return true;
+            }
+
+            long remaining = mChannel.size() - mChannel.position();
+            if (length < 0 || length > remaining)
+                throw new IOException("Corrupt frame trace: chunk of " + length + " bytes with " + remaining + " left");
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            if (!readFully(payload))
+                return false;
+            if (tag == FrameTrace.TAG_SETTINGS)
+                mSettings = new String(payload.array(), UTF8);
+            else if (tag == FrameTrace.TAG_END)
+                mComplete = true;
+        }
+        return false;
+    }
+
+    /**
+     * NV21 data of the current frame.
+     */
+    public byte[] getFrame() {
+        return mFrame;
+    }
+
+    public long getTimestamp() {
+        return mTimestamp;
+    }
+
+    /**
+     * Correction settings in effect for the current frame.
+     */
+    public String getSettings() {
+        return mSettings;
+    }
+
+    /**
+     * True once the end chunk has been read, i.e. the recording was closed properly.
+     */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (mChannel.read(buffer) < 0)
+                return false;
+        }
+        return true;
+    }
+}
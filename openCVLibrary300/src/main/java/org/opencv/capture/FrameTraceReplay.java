@@ -0,0 +1,213 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.correction.CorrectionEngine;
+import org.opencv.correction.CorrectionEngines;
+import org.opencv.correction.JavaCorrection;
+import org.opencv.correction.Nv21Converter;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Feeds a recorded frame trace through the correction pipeline on a desktop JVM.
+ *
+ * Usage: FrameTraceReplay trace.dtrc [--realtime] [--engine java|split-merge|linear] [--checksums out.txt]
+ *
+ * By default frames are replayed as fast as possible with the engine recorded in the trace.
+ * --realtime keeps the recorded frame timing. --checksums writes a CRC32 of every corrected
+ * frame, one per line, so two runs can be compared with diff. The split-merge and linear engines
+ * need opencv_java300 on java.library.path; the java engine runs anywhere.
+ */
+public class FrameTraceReplay {
+
+    public static final String SETTING_ENGINE = "engine";
+
+    private final File mTrace;
+    private boolean mRealtime;
+    private String mEngine;
+    private PrintWriter mChecksums;
+
+    private long mFrames;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    public FrameTraceReplay(File trace) {
+        mTrace = trace;
+    }
+
+    /**
+     * Sleep between frames to reproduce the recorded frame rate.
+     */
+    public void setRealtime(boolean realtime) {
+        mRealtime = realtime;
+    }
+
+    /**
+     * Overrides the engine recorded in the trace, or null to follow the trace.
+     */
+    public void setEngine(String engine) {
+        mEngine = engine;
+    }
+
+    public void setChecksums(PrintWriter checksums) {
+        mChecksums = checksums;
+    }
+
+    /**
+     * Replays the whole trace.
+     * @return number of frames processed
+     */
+    public long run() throws IOException, InterruptedException {
+        FrameTraceReader reader = new FrameTraceReader(mTrace);
+        try {
+            int width = reader.getWidth();
+            int height = reader.getHeight();
+            byte[] rgba = new byte[width * height * 4];
+            Mat yuv = null;
+            Mat frame = null;
+            Map<String, CorrectionEngine> engines = new HashMap<String, CorrectionEngine>();
+            CRC32 crc = new CRC32();
+
+            long firstTimestamp = 0;
+            long startNanos = System.nanoTime();
+
+            while (reader.nextFrame()) {
+                if (mFrames == 0)
+                    firstTimestamp = reader.getTimestamp();
+                if (mRealtime) {
+                    long due = startNanos + (reader.getTimestamp() - firstTimestamp);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0)
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                }
+
+                String engine = mEngine != null ? mEngine : setting(reader.getSettings(), SETTING_ENGINE);
+                long begin = System.nanoTime();
+                int length;
+                CorrectionEngine nativeEngine = nativeEngine(engines, engine);
+                if (nativeEngine != null) {
+                    if (yuv == null) {
+                        yuv = new Mat(height + height / 2, width, CvType.CV_8UC1);
+                        frame = new Mat();
+                    }
+                    yuv.put(0, 0, reader.getFrame());
+                    Imgproc.cvtColor(yuv, frame, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+                    Mat result = nativeEngine.apply(frame);
+                    length = (int) (result.total() * result.channels());
+                    result.get(0, 0, rgba);
+                } else {
+                    Nv21Converter.toRgba(reader.getFrame(), width, height, rgba);
+                    JavaCorrection.correctRgba(rgba, 0, rgba.length);
+                    length = rgba.length;
+                }
+                long elapsed = System.nanoTime() - begin;
+
+                mTotalNanos += elapsed;
+                if (elapsed > mMaxNanos)
+                    mMaxNanos = elapsed;
+
+                if (mChecksums != null) {
+                    crc.reset();
+                    crc.update(rgba, 0, length);
+                    mChecksums.println(mFrames + " " + reader.getTimestamp() + " "
+                            + Long.toHexString(crc.getValue()));
+                }
+                mFrames++;
+            }
+
+            if (yuv != null) {
+                yuv.release();
+                frame.release();
+            }
+        } finally {
+            reader.close();
+        }
+        return mFrames;
+    }
+
+    /**
+     * Mean processing time per frame in milliseconds.
+     */
+    public double getMeanMillis() {
+        return mFrames == 0 ? 0 : mTotalNanos / 1e6 / mFrames;
+    }
+
+    public double getMaxMillis() {
+        return mMaxNanos / 1e6;
+    }
+
+    private static CorrectionEngine nativeEngine(Map<String, CorrectionEngine> engines, String name) {
+        if (name == null || JavaCorrection.NAME.equals(name))
+            return null;
+        CorrectionEngine engine = engines.get(name);
+        if (engine == null) {
+            engine = CorrectionEngines.create(name);
+            if (engine == null)
+                return null;
+            engines.put(name, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Looks up key in a "key=value;key=value" settings string.
+     */
+    public static String setting(String settings, String key) {
+        for (String entry : settings.split(";")) {
+            int eq = entry.indexOf('=');
+            if (eq > 0 && entry.substring(0, eq).trim().equals(key))
+                return entry.substring(eq + 1).trim();
+        }
+        return null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: FrameTraceReplay trace.dtrc [--realtime] "
+                    + "[--engine java|split-merge|linear] [--checksums out.txt]");
+            System.exit(2);
+        }
+
+        FrameTraceReplay replay = new FrameTraceReplay(new File(args[0]));
+        PrintWriter checksums = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--realtime"))
+                replay.setRealtime(true);
+            else if (args[i].equals("--engine") && i + 1 < args.length)
+                replay.setEngine(args[++i]);
+            else if (args[i].equals("--checksums") && i + 1 < args.length)
+                checksums = new PrintWriter(new FileWriter(args[++i]));
+            else
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        try {
+            System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        } catch (UnsatisfiedLinkError e) {
+            System.err.println(Core.NATIVE_LIBRARY_NAME + " not available, using the java engine");
+            replay.setEngine(JavaCorrection.NAME);
+        }
+
+        replay.setChecksums(checksums);
+        long frames;
+        try {
+            frames = replay.run();
+        } finally {
+            if (checksums != null)
+                checksums.close();
+        }
+
+        System.out.println(String.format(Locale.US, "%d frames, %.2f ms mean, %.2f ms max",
+                frames, replay.getMeanMillis(), replay.getMaxMillis()));
+    }
+}
@@ -0,0 +1,182 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Appends raw preview frames to a frame trace file (see FrameTrace) from a background thread.
+ * writeFrame() only copies the frame into one of a few preallocated slots and never waits:
+ * when the disk can not keep up the frame is dropped and counted instead.
+ */
+public class FrameTraceWriter {
+
+    private static final int SLOTS = 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final FileChannel mChannel;
+    private final int mFrameSize;
+    private final BlockingQueue<Chunk> mFree = new ArrayBlockingQueue<Chunk>(SLOTS);
+    private final BlockingQueue<Chunk> mPending = new LinkedBlockingQueue<Chunk>();
+    private final Thread mThread;
+    private final ByteBuffer mChunkHeader = ByteBuffer.allocate(FrameTrace.CHUNK_HEADER_SIZE);
+    private final ByteBuffer[] mGather = new ByteBuffer[2];
+
+    private volatile boolean mClosed;
+    private volatile IOException mError;
+    private volatile long mWrittenFrames;
+    private volatile long mDroppedFrames;
+
+    private static class Chunk {
+        final int tag;
+        final byte[] data;
+        int length;
+        long timestamp;
+
+        Chunk(int tag, byte[] data) {
+            this.tag = tag;
+            this.data = data;
+            this.length = data.length;
+        }
+    }
+
+    /**
+     * Creates the trace file and starts the writer thread.
+     * @param file - trace file, overwritten if it exists
+     * @param width - preview frame width
+     * @param height - preview frame height
+     */
+    public FrameTraceWriter(File file, int width, int height) throws IOException {
+        mFrameSize = width * height + width * height / 2;
+        for (int i = 0; i < SLOTS; i++)
+            mFree.add(new Chunk(FrameTrace.TAG_FRAME, new byte[mFrameSize]));
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        mChannel = raf.getChannel();
+
+        ByteBuffer header = ByteBuffer.allocate(FrameTrace.HEADER_SIZE);
+        header.putInt(FrameTrace.MAGIC).putInt(FrameTrace.VERSION)
+              .putInt(width).putInt(height).putInt(FrameTrace.FORMAT_NV21);
+        header.flip();
+        writeFully(header);
+
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "FrameTraceWriter");
+        mThread.start();
+    }
+
+    /**
+     * Queues one NV21 frame. Safe to call from the preview callback.
+     * @return false if the frame was dropped
+     */
+    public boolean writeFrame(byte[] nv21, long timestampNanos) {
+        if (mClosed || nv21.length < mFrameSize) {
+            mDroppedFrames++;
+            return false;
+        }
+        Chunk chunk = mFree.poll();
+        if (chunk == null) {
+            mDroppedFrames++;
+            return false;
+        }
+        System.arraycopy(nv21, 0, chunk.data, 0, mFrameSize);
+        chunk.timestamp = timestampNanos;
+        mPending.add(chunk);
+        return true;
+    }
+
+    /**
+     * Records the correction settings in effect for the frames that follow.
+     */
+    public void writeSettings(String settings, long timestampNanos) {
+        if (mClosed)
+            return;
+        Chunk chunk = new Chunk(FrameTrace.TAG_SETTINGS, settings.getBytes(UTF8));
+        chunk.timestamp = timestampNanos;
+        mPending.add(chunk);
+    }
+
+    public long getWrittenFrames() {
+        return mWrittenFrames;
+    }
+
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * Writes the queued frames and the end chunk, then closes the file.
+     * @throws IOException the first write error of the background thread, if any
+     */
+    public void close() throws IOException {
+        if (mClosed)
+            return;
+        mClosed = true;
+        ByteBuffer end = ByteBuffer.allocate(16);
+        Chunk chunk = new Chunk(FrameTrace.TAG_END, end.array());
+        mPending.add(chunk);
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mChannel.close();
+        if (mError != null)
+            throw mError;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = mPending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (chunk.tag == FrameTrace.TAG_END)
+                ByteBuffer.wrap(chunk.data).putLong(mWrittenFrames).putLong(mDroppedFrames);
+
+            if (mError == null) {
+                try {
+                    write(chunk);
+                    if (chunk.tag == FrameTrace.TAG_FRAME)
+                        mWrittenFrames++;
+                } catch (IOException e) {
+                    mError = e;
+                }
+            }
+
+            if (chunk.tag == FrameTrace.TAG_FRAME)
+                mFree.add(chunk);
+            else if (chunk.tag == FrameTrace.TAG_END)
+                return;
+        }
+    }
+
+    private void write(Chunk chunk) throws IOException {
+        mChunkHeader.clear();
+        mChunkHeader.putInt(chunk.tag).putInt(chunk.length).putLong(chunk.timestamp);
+        mChunkHeader.flip();
+        mGather[0] = mChunkHeader;
+        mGather[1] = ByteBuffer.wrap(chunk.data, 0, chunk.length);
+        while (mGather[1].hasRemaining())
+            mChannel.write(mGather);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            mChannel.write(buffer);
+    }
+}
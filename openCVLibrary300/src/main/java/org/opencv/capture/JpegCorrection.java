@@ -0,0 +1,138 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.correction.CorrectionEngine;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Corrects full resolution camera JPEGs in the background and keeps their metadata. The segment
+ * layout is parsed once and the EXIF, XMP and other metadata segments are kept in the original
+ * array; the image is decoded with Imgcodecs.imdecode from a reusable input Mat, corrected,
+ * re-encoded straight into a CaptureWriter buffer, and the metadata is spliced in place of the
+ * encoder's JFIF header. EXIF orientation and location therefore survive. The EXIF thumbnail,
+ * if any, still shows the uncorrected image.
+ */
+public class JpegCorrection {
+
+    private final CaptureWriter mWriter;
+    private final CorrectionEngine mEngine;
+    private final JpegEncoder mEncoder;
+    private final JpegSegments mSegments = new JpegSegments();
+    private final Mat mRgba = new Mat();
+    private final AtomicBoolean mBusy = new AtomicBoolean();
+    private Mat mInput;
+    private Thread mThread;
+
+    /**
+     * @param writer - writer the corrected images are handed to
+     * @param engine - engine used by this pipeline only, engines are not thread safe
+     * @param quality - JPEG quality from 0 to 100
+     */
+    public JpegCorrection(CaptureWriter writer, CorrectionEngine engine, int quality) {
+        mWriter = writer;
+        mEngine = engine;
+        mEncoder = new JpegEncoder(quality);
+    }
+
+    /**
+     * Corrects a JPEG image on a background thread and writes it to file. The array is used as
+     * is and must not be modified until the callback was invoked.
+     * @return false if the previous image is still being processed
+     */
+    public boolean submit(final byte[] jpeg, final File file, final CaptureWriter.Callback callback) {
+        if (!mBusy.compareAndSet(false, true))
+            return false;
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    process(jpeg, file, callback);
+                } finally {
+                    mBusy.set(false);
+                }
+            }
+        }, "JpegCorrection");
+        mThread.start();
+        return true;
+    }
+
+    public boolean isBusy() {
+        return mBusy.get();
+    }
+
+    /**
+     * Waits for the image in progress and frees the buffers.
+     */
+    public void close() {
+        Thread thread = mThread;
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mInput != null)
+            mInput.release();
+        mRgba.release();
+        mEncoder.release();
+    }
+
+    private void process(byte[] jpeg, File file, CaptureWriter.Callback callback) {
+        if (!mSegments.parse(jpeg, jpeg.length)) {
+            fail(file, callback, "not a JPEG image");
+            return;
+        }
+
+        /* The compressed input goes into one reusable native buffer */
+        if (mInput == null || mInput.cols() < jpeg.length) {
+            if (mInput != null)
+                mInput.release();
+            mInput = new Mat(1, jpeg.length + jpeg.length / 4, CvType.CV_8UC1);
+        }
+        mInput.put(0, 0, jpeg);
+        Mat input = mInput.colRange(0, jpeg.length);
+        Mat bgr = Imgcodecs.imdecode(input, Imgcodecs.IMREAD_COLOR);
+        input.release();
+        if (bgr.empty()) {
+            bgr.release();
+            fail(file, callback, "cannot decode");
+            return;
+        }
+        Imgproc.cvtColor(bgr, mRgba, Imgproc.COLOR_BGR2RGBA);
+        bgr.release();
+
+        int encoded = mEncoder.encode(mEngine.apply(mRgba));
+        if (encoded < 0) {
+            fail(file, callback, "cannot encode");
+            return;
+        }
+
+        int metadata = mSegments.getMetadataLength();
+        CaptureWriter.Slot slot = mWriter.acquire(encoded + metadata);
+        if (slot == null) {
+            fail(file, callback, "capture writer busy");
+            return;
+        }
+
+        /* Shift the encoded body over its JFIF header and the room needed for the metadata */
+        byte[] data = slot.data();
+        mEncoder.copyTo(data);
+        int header = JpegSegments.headerEnd(data, encoded);
+        int body = encoded - header;
+        System.arraycopy(data, header, data, 2 + metadata, body);
+        mSegments.copyMetadata(data, 2);
+        mWriter.submit(slot, 2 + metadata + body, file, callback);
+    }
+
+    private static void fail(File file, CaptureWriter.Callback callback, String reason) {
+        if (callback != null)
+            callback.onCaptureFailed(file, new IOException(reason));
+    }
+}
@@ -0,0 +1,58 @@
+package org.opencv.capture;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * JPEG encoder for RGBA, RGB or gray frames from the camera pipeline. Keeps its conversion and
+ * output buffers between calls, so an instance must be used by one thread at a time.
+ */
+public class JpegEncoder {
+
+    private static final String EXT = ".jpg";
+
+    private final Mat mBgr = new Mat();
+    private final MatOfByte mEncoded = new MatOfByte();
+    private final MatOfInt mParams;
+
+    public JpegEncoder(int quality) {
+        mParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+    }
+
+    /**
+     * @return size of the encoded image in bytes, or -1 if the frame cannot be encoded
+     */
+    public int encode(Mat frame) {
+        Mat image = frame;
+        switch (frame.channels()) {
+        case 4:
+            Imgproc.cvtColor(frame, mBgr, Imgproc.COLOR_RGBA2BGR);
+            image = mBgr;
+            break;
+        case 3:
+            Imgproc.cvtColor(frame, mBgr, Imgproc.COLOR_RGB2BGR);
+            image = mBgr;
+            break;
+        }
+
+        if (!Imgcodecs.imencode(EXT, image, mEncoded, mParams))
+            return -1;
+        return (int) mEncoded.total();
+    }
+
+    /**
+     * Copies the last encoded image into dst, which must hold at least encode()'s result.
+     */
+    public void copyTo(byte[] dst) {
+        mEncoded.get(0, 0, dst);
+    }
+
+    public void release() {
+        mBgr.release();
+        mEncoded.release();
+        mParams.release();
+    }
+}
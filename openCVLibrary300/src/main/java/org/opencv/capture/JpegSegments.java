@@ -0,0 +1,105 @@
+package org.opencv.capture;
+
+/**
+ * Finds the metadata segments of a JPEG file (EXIF, XMP, ICC profile, IPTC, comments) by
+ * walking the marker layout up to the start of scan, without decoding anything. The segments
+ * are remembered as offsets into the parsed array, so they can be copied into a re-encoded
+ * image later. Adobe APP14 is left out because it describes the color transform of the
+ * original encoding, not of the new one.
+ */
+public class JpegSegments {
+
+    private static final int MAX_SEGMENTS = 32;
+
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int APP0 = 0xE0;
+    private static final int APP14 = 0xEE;
+    private static final int APP15 = 0xEF;
+    private static final int COM = 0xFE;
+
+    private final int[] mOffsets = new int[MAX_SEGMENTS];
+    private final int[] mLengths = new int[MAX_SEGMENTS];
+    private int mCount;
+    private int mMetadataLength;
+    private byte[] mData;
+
+    /**
+     * Parses the segments of a JPEG image. The array is referenced, not copied, until the next
+     * call.
+     * @return false if the data does not look like a JPEG image
+     */
+    public boolean parse(byte[] data, int length) {
+        mData = data;
+        mCount = 0;
+        mMetadataLength = 0;
+        if (length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI)
+            return false;
+
+        int position = 2;
+        while (position + 4 <= length) {
+            if ((data[position] & 0xFF) != 0xFF)
+                return false;
+            int marker = data[position + 1] & 0xFF;
+            if (marker == 0xFF) {
+                position++;
+                continue;
+            }
+            if (marker == SOS || marker == EOI)
+                return true;
+
+            int size = ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+            if (size < 2 || position + 2 + size > length)
+                return false;
+            boolean metadata = (marker >= APP0 && marker <= APP15 && marker != APP14) || marker == COM;
+            if (metadata && mCount < MAX_SEGMENTS) {
+                mOffsets[mCount] = position;
+                mLengths[mCount] = size + 2;
+                mMetadataLength += size + 2;
+                mCount++;
+            }
+            position += 2 + size;
+        }
+        return false;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Total size of the metadata segments, markers included.
+     */
+    public int getMetadataLength() {
+        return mMetadataLength;
+    }
+
+    /**
+     * Copies the metadata segments, in their original order, to dst.
+     * @return number of bytes copied
+     */
+    public int copyMetadata(byte[] dst, int offset) {
+        int position = offset;
+        for (int i = 0; i < mCount; i++) {
+            System.arraycopy(mData, mOffsets[i], dst, position, mLengths[i]);
+            position += mLengths[i];
+        }
+        return position - offset;
+    }
+
+    /**
+     * Returns the offset just past SOI and any leading APP0 (JFIF) segments, where metadata
+     * taken from another image can be inserted; 2 if there are none, -1 if data is no JPEG image.
+     */
+    public static int headerEnd(byte[] data, int length) {
+        if (length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI)
+            return -1;
+        int position = 2;
+        while (position + 4 <= length && (data[position] & 0xFF) == 0xFF && (data[position + 1] & 0xFF) == APP0) {
+            int size = ((data[position + 2] & 0xFF) << 8) | (data[position + 3] & 0xFF);
+            position += 2 + size;
+        }
+        return Math.min(position, length);
+    }
+}
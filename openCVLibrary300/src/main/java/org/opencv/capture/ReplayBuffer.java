@@ -0,0 +1,305 @@
+package org.opencv.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Keeps the last few seconds of processed frames so they can be saved after the fact. Frames
+ * are downscaled on the frame thread, JPEG-encoded on a background thread and appended to a
+ * circular region of a memory-mapped file of fixed size, keeping them off the Java heap. A small
+ * index of offsets and timestamps is kept in memory; appending evicts the records it overwrites
+ * or that fell out of the time window, so each write is O(1). save() exports the window as a
+ * Motion JPEG AVI file on its own thread while recording goes on.
+ */
+public class ReplayBuffer {
+
+    private static final int MAX_RECORDS = 2048;
+    private static final int PENDING_FRAMES = 2;
+
+    private static class Pending {
+        final Mat image = new Mat();
+        long timestamp;
+    }
+
+    private final File mFile;
+    private final RandomAccessFile mRaf;
+    private final FileChannel mChannel;
+    private final MappedByteBuffer mMap;
+    private final int mCapacity;
+    private final long mWindowNanos;
+    private final int mMaxWidth;
+    private final long mMinIntervalNanos;
+    private final JpegEncoder mEncoder;
+    private final BlockingQueue<Pending> mFree = new ArrayBlockingQueue<Pending>(PENDING_FRAMES);
+    private final BlockingQueue<Pending> mQueue = new ArrayBlockingQueue<Pending>(PENDING_FRAMES);
+    private final Pending[] mPending = new Pending[PENDING_FRAMES];
+    private final Thread mEncoderThread;
+    private final Size mScaledSize = new Size();
+    /* Keeps close() from releasing the pending frames while onFrame() writes one */
+    private final Object mFrameLock = new Object();
+    private volatile boolean mClosed;
+    private volatile boolean mSaving;
+    private long mLastFrame;
+    private byte[] mStaging = new byte[0];
+
+    /* Index of the records in the ring, guarded by the object lock */
+    private final int[] mOffsets = new int[MAX_RECORDS];
+    private final int[] mLengths = new int[MAX_RECORDS];
+    private final long[] mTimestamps = new long[MAX_RECORDS];
+    private long mOldest;
+    private long mNext;
+    private int mHead;
+    private int mWidth;
+    private int mHeight;
+
+    /**
+     * @param file - backing file, created or truncated to capacity bytes
+     * @param capacity - size of the ring in bytes
+     * @param windowMillis - how far back frames are kept
+     * @param maxWidth - frames wider than this are downscaled
+     * @param maxFps - frames arriving faster than this are skipped
+     * @param quality - JPEG quality from 0 to 100
+     */
+    public ReplayBuffer(File file, int capacity, long windowMillis, int maxWidth, float maxFps, int quality)
+            throws IOException {
+        mFile = file;
+        mCapacity = capacity;
+        mWindowNanos = windowMillis * 1000000L;
+        mMaxWidth = maxWidth;
+        mMinIntervalNanos = maxFps > 0 ? (long) (1e9 / maxFps) : 0;
+        mEncoder = new JpegEncoder(quality);
+
+        mRaf = new RandomAccessFile(file, "rw");
+        mRaf.setLength(capacity);
+        mChannel = mRaf.getChannel();
+        mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        for (int i = 0; i < PENDING_FRAMES; i++) {
+            mPending[i] = new Pending();
+            mFree.add(mPending[i]);
+        }
+        mEncoderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                encodeLoop();
+            }
+        }, "ReplayBuffer");
+        mEncoderThread.setDaemon(true);
+        mEncoderThread.start();
+    }
+
+    /**
+     * Called on the frame thread with the frame about to be displayed. The frame is not
+     * retained, it may be reused as soon as this returns.
+     */
+    public void onFrame(Mat frame) {
+        long now = System.nanoTime();
+        if (mClosed || now - mLastFrame < mMinIntervalNanos)
+            return;
+        synchronized (mFrameLock) {
+            if (mClosed)
+                return;
+            Pending pending = mFree.poll();
+            if (pending == null)
+                return;
+            mLastFrame = now;
+
+            if (frame.cols() > mMaxWidth) {
+                mScaledSize.width = mMaxWidth;
+                mScaledSize.height = Math.round((double) frame.rows() * mMaxWidth / frame.cols());
+                Imgproc.resize(frame, pending.image, mScaledSize, 0, 0, Imgproc.INTER_AREA);
+            } else {
+                frame.copyTo(pending.image);
+            }
+            pending.timestamp = now;
+            mQueue.add(pending);
+        }
+    }
+
+    public synchronized int getFrameCount() {
+        return (int) (mNext - mOldest);
+    }
+
+    public synchronized long getDurationMillis() {
+        if (mNext - mOldest < 2)
+            return 0;
+        return (mTimestamps[index(mNext - 1)] - mTimestamps[index(mOldest)]) / 1000000L;
+    }
+
+    /**
+     * Exports the frames currently in the window to a Motion JPEG AVI file on a background
+     * thread. Frames overwritten by recording before the export reaches them are skipped.
+     * @return false if an export is already running or there is nothing to save
+     */
+    public boolean save(final File file, final CaptureWriter.Callback callback) {
+        final long first;
+        final long last;
+        synchronized (this) {
+            if (mSaving || mClosed || mNext == mOldest)
+                return false;
+            mSaving = true;
+            first = mOldest;
+            last = mNext;
+        }
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    export(file, first, last);
+                    if (callback != null)
+                        callback.onCaptureWritten(file);
+                } catch (IOException e) {
+                    if (callback != null)
+                        callback.onCaptureFailed(file, e);
+                } finally {
+                    mSaving = false;
+                }
+            }
+        }, "ReplayBuffer-export");
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stops recording and deletes the backing file. May be called while frames arrive; a frame
+     * being stored is finished first. An export in progress is not waited for.
+     */
+    public void close() {
+        if (mClosed)
+            return;
+        mClosed = true;
+        mEncoderThread.interrupt();
+        try {
+            mEncoderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (mFrameLock) {
+            for (Pending pending : mPending)
+                pending.image.release();
+        }
+        mEncoder.release();
+        try {
+            mChannel.close();
+            mRaf.close();
+        } catch (IOException e) {
+            // nothing to report, the buffer is being discarded
+        }
+        mFile.delete();
+    }
+
+    private void encodeLoop() {
+        while (!mClosed) {
+            Pending pending;
+            try {
+                pending = mQueue.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            int length = mEncoder.encode(pending.image);
+            if (length > 0 && length <= mCapacity) {
+                if (mStaging.length < length)
+                    mStaging = new byte[length + length / 4];
+                mEncoder.copyTo(mStaging);
+                append(mStaging, length, pending.timestamp, pending.image.cols(), pending.image.rows());
+            }
+            mFree.add(pending);
+        }
+    }
+
+    private synchronized void append(byte[] data, int length, long timestamp, int width, int height) {
+        /* A size change would make a replay unplayable as one video, start over */
+        if (width != mWidth || height != mHeight) {
+            mOldest = mNext;
+            mHead = 0;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        int position = mHead;
+        if (position + length > mCapacity) {
+            /* Records never wrap; the ones left in the tail go along with the skipped space */
+            while (mOldest < mNext && mOffsets[index(mOldest)] >= mHead)
+                mOldest++;
+            position = 0;
+        }
+        while (mOldest < mNext && (overlaps(mOldest, position, length)
+                || timestamp - mTimestamps[index(mOldest)] > mWindowNanos || mNext - mOldest >= MAX_RECORDS))
+            mOldest++;
+
+        mMap.position(position);
+        mMap.put(data, 0, length);
+
+        int slot = index(mNext);
+        mOffsets[slot] = position;
+        mLengths[slot] = length;
+        mTimestamps[slot] = timestamp;
+        mNext++;
+        mHead = position + length;
+    }
+
+    private boolean overlaps(long record, int position, int length) {
+        int offset = mOffsets[index(record)];
+        return offset < position + length && position < offset + mLengths[index(record)];
+    }
+
+    private void export(File file, long first, long last) throws IOException {
+        AviWriter avi = null;
+        int width = 0;
+        int height = 0;
+        byte[] frame = new byte[0];
+        long firstTime = 0;
+        long lastTime = 0;
+        int frames = 0;
+        try {
+            for (long record = first; record < last; record++) {
+                int length;
+                long timestamp;
+                synchronized (this) {
+                    if (record < mOldest)
+                        continue;
+                    int slot = index(record);
+                    length = mLengths[slot];
+                    timestamp = mTimestamps[slot];
+                    if (frame.length < length)
+                        frame = new byte[length];
+                    ByteBuffer view = mMap.duplicate();
+                    view.position(mOffsets[slot]);
+                    view.get(frame, 0, length);
+                    width = mWidth;
+                    height = mHeight;
+                }
+                // Creating the file can take a while, recording must not wait for it
+                if (avi == null)
+                    avi = new AviWriter(file, width, height, 1);
+                if (!avi.writeFrame(frame, 0, length))
+                    break;
+                if (frames++ == 0)
+                    firstTime = timestamp;
+                lastTime = timestamp;
+            }
+        } finally {
+            if (avi != null) {
+                avi.setFrameRate(frames > 1 && lastTime > firstTime ? (frames - 1) * 1e9 / (lastTime - firstTime) : 1);
+                avi.close();
+            }
+        }
+        if (avi == null)
+            throw new IOException("replay frames were overwritten before export");
+    }
+
+    private static int index(long record) {
+        return (int) (record % MAX_RECORDS);
+    }
+}
@@ -1597,6 +1597,23 @@ public class Core {
         return;
     }
 
+    /**
+     * inRange() of a single channel Mat with primitive bounds, so per frame masks need no Scalar.
+     */
+    public static void inRange(Mat src, double lowerb, double upperb, Mat dst)
+    {
+        inRange_0(src.nativeObj, lowerb, 0, 0, 0, upperb, 0, 0, 0, dst.nativeObj);
+    }
+
+    /**
+     * inRange() of a three channel Mat, for example HSV, with primitive bounds per channel.
+     */
+    public static void inRange(Mat src, double lowerb0, double lowerb1, double lowerb2,
+            double upperb0, double upperb1, double upperb2, Mat dst)
+    {
+        inRange_0(src.nativeObj, lowerb0, lowerb1, lowerb2, 0, upperb0, upperb1, upperb2, 0, dst.nativeObj);
+    }
+
 
     //
     // C++:  void compare(Mat src1, Mat src2, Mat& dst, int cmpop)
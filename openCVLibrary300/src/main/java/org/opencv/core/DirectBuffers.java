@@ -0,0 +1,66 @@
+package org.opencv.core;
+
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Wraps native memory in a direct ByteBuffer. The bindings have no NewDirectByteBuffer entry
+ * point, so the private DirectByteBuffer(address, capacity) constructor that JNI uses is called
+ * through reflection. Where the runtime also has the (address, capacity, attachment) form, the
+ * owner is attached, so the owner stays reachable as long as any view of the buffer is. Android
+ * only has the plain form, so there the caller has to keep the owner alive.
+ */
+final class DirectBuffers {
+
+    private static final Constructor<?> sAttached;
+    private static final Constructor<?> sPlain;
+
+    static {
+        Class<?> cls = null;
+        try {
+            cls = Class.forName("java.nio.DirectByteBuffer");
+        } catch (ClassNotFoundException e) {
+        }
+        sAttached = find(cls, long.class, int.class, Object.class);
+        sPlain = sAttached != null ? null : find(cls, long.class, int.class);
+    }
+
+    private DirectBuffers() {
+    }
+
+    private static Constructor<?> find(Class<?> cls, Class<?>... params) {
+        if (cls == null)
+            return null;
+        try {
+            Constructor<?> c = cls.getDeclaredConstructor(params);
+            c.setAccessible(true);
+            return c;
+        } catch (Exception e) {
+            // Missing on this runtime, or java.nio is not opened to us
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return sAttached != null || sPlain != null;
+    }
+
+    /**
+     * @return a buffer over capacity bytes at address, in native byte order
+     */
+    static ByteBuffer wrap(long address, int capacity, Object owner) {
+        if (!isSupported())
+            throw new UnsupportedOperationException("Direct buffers over native memory are not supported by this runtime");
+        Object buffer;
+        try {
+            if (sAttached != null)
+                buffer = sAttached.newInstance(address, capacity, owner);
+            else
+                buffer = sPlain.newInstance(address, capacity);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Could not wrap native memory", e);
+        }
+        return ((ByteBuffer) buffer).order(ByteOrder.nativeOrder());
+    }
+}
@@ -6,11 +6,22 @@ public class Mat {
 
     public final long nativeObj;
 
+    private MatCleaner.Ref mCleanup;
+    private MatHeader mHeader;
+
+    // Last direct view of the data and the layout it was created for
+    private java.nio.ByteBuffer mView;
+    private long mViewAddr;
+    private int mViewType;
+    private int mViewStride;
+    private int mViewChannels;
+
     public Mat(long addr)
     {
         if (addr == 0)
             throw new java.lang.UnsupportedOperationException("Native object address is NULL");
         nativeObj = addr;
+        register();
     }
 
     //
@@ -22,6 +33,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat();
+        register();
 
         return;
     }
@@ -35,6 +47,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(rows, cols, type);
+        register();
 
         return;
     }
@@ -48,6 +61,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(size.width, size.height, type);
+        register();
 
         return;
     }
@@ -61,6 +75,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(rows, cols, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        register();
 
         return;
     }
@@ -74,6 +89,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(size.width, size.height, type, s.val[0], s.val[1], s.val[2], s.val[3]);
+        register();
 
         return;
     }
@@ -87,6 +103,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end, colRange.start, colRange.end);
+        register();
 
         return;
     }
@@ -96,6 +113,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(m.nativeObj, rowRange.start, rowRange.end);
+        register();
 
         return;
     }
@@ -109,6 +127,7 @@ public class Mat {
     {
 
         nativeObj = n_Mat(m.nativeObj, roi.y, roi.y + roi.height, roi.x, roi.x + roi.width);
+        register();
 
         return;
     }
@@ -121,6 +140,7 @@ public class Mat {
     public Mat adjustROI(int dtop, int dbottom, int dleft, int dright)
     {
 
+        mHeader = null;
         Mat retVal = new Mat(n_adjustROI(nativeObj, dtop, dbottom, dleft, dright));
 
         return retVal;
@@ -134,6 +154,7 @@ public class Mat {
     public void assignTo(Mat m, int type)
     {
 
+        m.mHeader = null;
         n_assignTo(nativeObj, m.nativeObj, type);
 
         return;
@@ -143,6 +164,7 @@ public class Mat {
     public void assignTo(Mat m)
     {
 
+        m.mHeader = null;
         n_assignTo(nativeObj, m.nativeObj);
 
         return;
@@ -280,6 +302,7 @@ public class Mat {
     public void convertTo(Mat m, int rtype, double alpha, double beta)
     {
 
+        m.mHeader = null;
         n_convertTo(nativeObj, m.nativeObj, rtype, alpha, beta);
 
         return;
@@ -289,6 +312,7 @@ public class Mat {
     public void convertTo(Mat m, int rtype, double alpha)
     {
 
+        m.mHeader = null;
         n_convertTo(nativeObj, m.nativeObj, rtype, alpha);
 
         return;
@@ -298,6 +322,7 @@ public class Mat {
     public void convertTo(Mat m, int rtype)
     {
 
+        m.mHeader = null;
         n_convertTo(nativeObj, m.nativeObj, rtype);
 
         return;
@@ -311,6 +336,7 @@ public class Mat {
     public void copyTo(Mat m)
     {
 
+        m.mHeader = null;
         n_copyTo(nativeObj, m.nativeObj);
 
         return;
@@ -324,6 +350,7 @@ public class Mat {
     public void copyTo(Mat m, Mat mask)
     {
 
+        m.mHeader = null;
         n_copyTo(nativeObj, m.nativeObj, mask.nativeObj);
 
         return;
@@ -337,6 +364,8 @@ public class Mat {
     public void create(int rows, int cols, int type)
     {
 
+        mView = null;
+        mHeader = null;
         n_create(nativeObj, rows, cols, type);
 
         return;
@@ -350,6 +379,8 @@ public class Mat {
     public void create(Size size, int type)
     {
 
+        mView = null;
+        mHeader = null;
         n_create(nativeObj, size.width, size.height, type);
 
         return;
@@ -626,6 +657,7 @@ public class Mat {
     public void push_back(Mat m)
     {
 
+        mHeader = null;
         n_push_back(nativeObj, m.nativeObj);
 
         return;
@@ -639,6 +671,8 @@ public class Mat {
     public void release()
     {
 
+        mView = null;
+        mHeader = null;
         n_release(nativeObj);
 
         return;
@@ -779,6 +813,16 @@ public class Mat {
         return retVal;
     }
 
+    /**
+     * Stores the size in out instead of allocating a new Size and a transfer array.
+     * @return out
+     */
+    public Size size(Size out)
+    {
+        out.set(cols(), rows());
+        return out;
+    }
+
     //
     // C++: size_t Mat::step1(int i = 0)
     //
@@ -906,10 +950,59 @@ public class Mat {
         return retVal;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
+    private void register() {
+        mCleanup = MatCleaner.register(this);
+        MatScope.onCreated(this);
+    }
+
+    /**
+     * Frees the native object and its data now instead of once the Mat is garbage collected.
+     * The Mat must not be used afterwards; calling delete() again does nothing. While the
+     * MatLeakDetector is on only the data is freed, see retire(), so a use after delete() fails
+     * on an empty Mat instead of reaching freed native memory.
+     */
+    public void delete() {
+        if (MatLeakDetector.isEnabled()) {
+            retire();
+            return;
+        }
+        mView = null;
+        mHeader = null;
+        mCleanup.clean();
+    }
+
+    /*
+     * Frees the data now and leaves the header, a few dozen bytes, to the cleaner. The Mat is
+     * then empty, so a later use fails with a CvException or does nothing. Not a leak for the
+     * MatLeakDetector.
+     */
+    void retire() {
+        mView = null;
+        mHeader = null;
+        synchronized (mCleanup) {
+            if (mCleanup.retire())
+                n_release(nativeObj);
+        }
+    }
+
+    boolean isDeleted() {
+        return mCleanup.isCleaned() || mCleanup.isRetired();
+    }
+
+    /*
+     * Bytes of data held by this Mat, 0 for submatrices and once it was deleted or retired.
+     * Safe against a delete() on another thread.
+     */
+    long nativeBytes() {
+        synchronized (mCleanup) {
+            if (isDeleted() || isSubmatrix())
+                return 0;
+            return total() * elemSize();
+        }
+    }
+
+    static void deleteNative(long nativeObj) {
         n_delete(nativeObj);
-        super.finalize();
     }
 
     // javadoc:Mat::toString()
@@ -1000,6 +1093,25 @@ public class Mat {
         throw new java.lang.UnsupportedOperationException("Mat data type is not compatible: " + t);
     }
 
+    /**
+     * Same as put(row, col, data), but checks the data against a header() snapshot instead of
+     * asking the native side for the type. Only for Mats whose layout nothing else changes, such
+     * as buffers allocated once and written with put() every frame.
+     */
+    public int put(int row, int col, byte[] data, MatHeader header) {
+        int t = header.type;
+        if (data == null || data.length % CvType.channels(t) != 0)
+            throw new java.lang.UnsupportedOperationException(
+                    "Provided data element number (" +
+                            (data == null ? 0 : data.length) +
+                            ") should be multiple of the Mat channels count (" +
+                            CvType.channels(t) + ")");
+        if (CvType.depth(t) == CvType.CV_8U || CvType.depth(t) == CvType.CV_8S) {
+            return nPutB(nativeObj, row, col, data.length, data);
+        }
+        throw new java.lang.UnsupportedOperationException("Mat data type is not compatible: " + t);
+    }
+
     // javadoc:Mat::get(row,col,data)
     public int get(int row, int col, byte[] data) {
         int t = type();
@@ -1095,6 +1207,117 @@ public class Mat {
         return nativeObj;
     }
 
+    /**
+     * Snapshot of the layout of this Mat, captured on first use and kept until create(),
+     * release(), push_back(), adjustROI(), delete() or a Java side copyTo(), convertTo() or
+     * assignTo() into this Mat. Reading its fields needs no native calls. Native functions that
+     * write this Mat as an output argument, like Imgproc.cvtColor(src, this), may reallocate it
+     * without the snapshot noticing; call invalidateHeader() after them or only use header()
+     * on Mats whose layout does not change.
+     */
+    public MatHeader header() {
+        MatHeader header = mHeader;
+        if (header == null) {
+            header = new MatHeader(this);
+            mHeader = header;
+            // A view made before this snapshot was not checked against it
+            mView = null;
+        }
+        return header;
+    }
+
+    /**
+     * Drops the snapshot returned by header() and the cached buffer view, so the next calls
+     * capture them again.
+     */
+    public void invalidateHeader() {
+        mHeader = null;
+        mView = null;
+    }
+
+    /**
+     * Whether asByteBuffer() and the typed views can be used on this runtime.
+     */
+    public static boolean isDirectBufferSupported() {
+        return DirectBuffers.isSupported();
+    }
+
+    /**
+     * Maps the data of a continuous Mat as a direct buffer in native byte order, so that Java
+     * code can read and write pixels without copying them through JNI. The buffer covers
+     * total() * elemSize() bytes and position 0 is element (0, 0). It is only valid while the Mat
+     * keeps the same data: do not use it after release() or after create() reallocated the Mat.
+     * The view is cached together with the header() snapshot: as long as the snapshot is kept
+     * and the data address is unchanged, a call costs a single native call and no mapping. After
+     * a native function wrote this Mat as an output, call invalidateHeader() as for header().
+     * Where the runtime lacks the DirectByteBuffer constructor taking an attachment, as on
+     * Android, the buffer does not keep the Mat reachable: hold on to the Mat yourself for as
+     * long as the buffer is used.
+     * @throws UnsupportedOperationException if the Mat is empty, not continuous, larger than
+     * 2 GB or the runtime cannot wrap native memory
+     */
+    public java.nio.ByteBuffer asByteBuffer() {
+        // The Java side mutators drop the snapshot, so an unchanged address is enough to reuse the view
+        if (mView != null && mHeader != null && dataAddr() == mViewAddr)
+            return mView.duplicate().order(java.nio.ByteOrder.nativeOrder());
+
+        mHeader = null;
+        MatHeader header = header();
+        if (header.empty())
+            throw new java.lang.UnsupportedOperationException("Mat is empty");
+        if (!header.continuous)
+            throw new java.lang.UnsupportedOperationException("Mat is not continuous, clone() it first");
+        long bytes = header.total() * header.elemSize();
+        if (bytes > Integer.MAX_VALUE)
+            throw new java.lang.UnsupportedOperationException("Mat data is too large for a buffer: " + bytes);
+        mView = DirectBuffers.wrap(header.dataAddr, (int) bytes, this);
+        mViewAddr = header.dataAddr;
+        mViewType = header.type;
+        mViewChannels = header.channels();
+        mViewStride = header.cols * mViewChannels;
+        return mView.duplicate().order(java.nio.ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Same as asByteBuffer() for CV_32S Mats, indexed by channel value.
+     */
+    public java.nio.IntBuffer asIntBuffer() {
+        java.nio.ByteBuffer bytes = asByteBuffer();
+        if (CvType.depth(mViewType) != CvType.CV_32S)
+            throw new java.lang.UnsupportedOperationException("Mat data type is not compatible: " + mViewType);
+        return bytes.asIntBuffer();
+    }
+
+    /**
+     * Same as asByteBuffer() for CV_32F Mats, indexed by channel value.
+     */
+    public java.nio.FloatBuffer asFloatBuffer() {
+        java.nio.ByteBuffer bytes = asByteBuffer();
+        if (CvType.depth(mViewType) != CvType.CV_32F)
+            throw new java.lang.UnsupportedOperationException("Mat data type is not compatible: " + mViewType);
+        return bytes.asFloatBuffer();
+    }
+
+    /**
+     * Number of channel values per row in the last buffer view, in units of elemSize1(): bytes
+     * for 8 bit Mats, ints or floats for the typed views. Needs no native call.
+     */
+    public int bufferStride() {
+        if (mView == null)
+            throw new java.lang.IllegalStateException("No buffer view was created");
+        return mViewStride;
+    }
+
+    /**
+     * Index of the first channel of element (row, col) in the last buffer view, in the same
+     * units as bufferStride(). Needs no native call.
+     */
+    public int bufferIndex(int row, int col) {
+        if (mView == null)
+            throw new java.lang.IllegalStateException("No buffer view was created");
+        return row * mViewStride + col * mViewChannels;
+    }
+
     // C++: Mat::Mat()
     private static native long n_Mat();
 
@@ -1287,7 +1510,7 @@ public class Mat {
     // C++: static Mat Mat::zeros(Size size, int type)
     private static native long n_zeros(double size_width, double size_height, int type);
 
-    // native support for java finalize()
+    // native support for MatCleaner
     private static native void n_delete(long nativeObj);
 
     private static native int nPutD(long self, int row, int col, int count, double[] data);
@@ -0,0 +1,118 @@
+package org.opencv.core;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+
+/**
+ * Frees the native object of a Mat either when Mat.delete() is called or, failing that, once the
+ * Mat became phantom reachable. Replaces finalize(): phantom references are cheaper to create
+ * and collect than finalizable objects, and the native memory goes back on a dedicated thread
+ * instead of waiting for the shared finalizer queue.
+ */
+final class MatCleaner {
+
+    private static final ReferenceQueue<Mat> sQueue = new ReferenceQueue<Mat>();
+    private static final Object sLock = new Object();
+    // Live references are kept reachable in a doubly linked list until they are cleaned
+    private static Ref sHead;
+
+    static {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    Ref ref;
+                    try {
+                        ref = (Ref) sQueue.remove();
+                    } catch (InterruptedException e) {
+                        continue;
+                    }
+                    if (ref.clean() && ref.mSite != null && !ref.isRetired())
+                        MatLeakDetector.report(ref.mSite);
+                }
+            }
+        }, "MatCleaner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private MatCleaner() {
+    }
+
+    static final class Ref extends PhantomReference<Mat> {
+        private final long mNativeObj;
+        private final Throwable mSite;
+        private Ref mPrev;
+        private Ref mNext;
+        private boolean mCleaned;
+        private boolean mRetired;
+
+        private Ref(Mat mat, Throwable site) {
+            super(mat, sQueue);
+            mNativeObj = mat.nativeObj;
+            mSite = site;
+        }
+
+        boolean isCleaned() {
+            synchronized (sLock) {
+                return mCleaned;
+            }
+        }
+
+        /**
+         * Records that the owner freed the data and left the header to this reference, so its
+         * collection is no leak.
+         * @return false if the native object was deleted before
+         */
+        boolean retire() {
+            synchronized (sLock) {
+                if (mCleaned)
+                    return false;
+                mRetired = true;
+                return true;
+            }
+        }
+
+        boolean isRetired() {
+            synchronized (sLock) {
+                return mRetired;
+            }
+        }
+
+        /**
+         * Deletes the native object unless that happened before. The deletion holds the lock of
+         * this reference, so code holding it can read the native object if it is not cleaned.
+         * @return true if this call deleted it
+         */
+        boolean clean() {
+            synchronized (sLock) {
+                if (mCleaned)
+                    return false;
+                mCleaned = true;
+                if (mPrev != null)
+                    mPrev.mNext = mNext;
+                else
+                    sHead = mNext;
+                if (mNext != null)
+                    mNext.mPrev = mPrev;
+                mPrev = mNext = null;
+            }
+            clear();
+            synchronized (this) {
+                Mat.deleteNative(mNativeObj);
+            }
+            return true;
+        }
+    }
+
+    static Ref register(Mat mat) {
+        Ref ref = new Ref(mat, MatLeakDetector.allocationSite());
+        synchronized (sLock) {
+            ref.mNext = sHead;
+            if (sHead != null)
+                sHead.mPrev = ref;
+            sHead = ref;
+        }
+        return ref;
+    }
+}
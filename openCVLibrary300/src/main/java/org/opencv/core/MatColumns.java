@@ -0,0 +1,99 @@
+package org.opencv.core;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Copies one channel of a vector Mat (n x 1 with the fields of each element as channels) into a
+ * primitive array, for the structure of arrays accessors of the MatOf classes such as
+ * MatOfPoint.xs(): each returns one field of every element without creating an object per
+ * element. The channel is read straight from the direct buffer view of the Mat; without one the
+ * whole Mat is fetched once into a per thread scratch array. The result array is the one passed
+ * in when it holds total() values, otherwise a new one, so callers can reuse it from frame to
+ * frame.
+ */
+final class MatColumns {
+
+    private static final ThreadLocal<int[]> sIntScratch = new ThreadLocal<int[]>();
+    private static final ThreadLocal<float[]> sFloatScratch = new ThreadLocal<float[]>();
+
+    private MatColumns() {
+    }
+
+    static int[] ints(Mat m, int channels, int channel, int[] reuse) {
+        int count = (int) m.total();
+        int[] out = reuse != null && reuse.length >= count ? reuse : new int[count];
+        if (count == 0)
+            return out;
+        if (Mat.isDirectBufferSupported() && m.isContinuous()) {
+            IntBuffer buffer = m.asIntBuffer();
+            for (int i = 0, j = channel; i < count; i++, j += channels)
+                out[i] = buffer.get(j);
+        } else {
+            int[] all = intScratch(count, channels);
+            m.get(0, 0, all);
+            for (int i = 0, j = channel; i < count; i++, j += channels)
+                out[i] = all[j];
+        }
+        return out;
+    }
+
+    static float[] floats(Mat m, int channels, int channel, float[] reuse) {
+        int count = (int) m.total();
+        float[] out = reuse != null && reuse.length >= count ? reuse : new float[count];
+        if (count == 0)
+            return out;
+        if (Mat.isDirectBufferSupported() && m.isContinuous()) {
+            FloatBuffer buffer = m.asFloatBuffer();
+            for (int i = 0, j = channel; i < count; i++, j += channels)
+                out[i] = buffer.get(j);
+        } else {
+            float[] all = floatScratch(count, channels);
+            m.get(0, 0, all);
+            for (int i = 0, j = channel; i < count; i++, j += channels)
+                out[i] = all[j];
+        }
+        return out;
+    }
+
+    /**
+     * Integer fields stored as floats, like KeyPoint.octave or DMatch.queryIdx.
+     */
+    static int[] floatsAsInts(Mat m, int channels, int channel, int[] reuse) {
+        int count = (int) m.total();
+        int[] out = reuse != null && reuse.length >= count ? reuse : new int[count];
+        if (count == 0)
+            return out;
+        if (Mat.isDirectBufferSupported() && m.isContinuous()) {
+            FloatBuffer buffer = m.asFloatBuffer();
+            for (int i = 0, j = channel; i < count; i++, j += channels)
+                out[i] = (int) buffer.get(j);
+        } else {
+            float[] all = floatScratch(count, channels);
+            m.get(0, 0, all);
+            for (int i = 0, j = channel; i < count; i++, j += channels)
+                out[i] = (int) all[j];
+        }
+        return out;
+    }
+
+    // Mat.get() stops at the end of the Mat but wants whole elements, so a larger scratch
+    // array can be used as long as its length is a multiple of the channel count
+    private static int[] intScratch(int count, int channels) {
+        int[] scratch = sIntScratch.get();
+        if (scratch == null || scratch.length < count * channels || scratch.length % channels != 0) {
+            scratch = new int[count * channels];
+            sIntScratch.set(scratch);
+        }
+        return scratch;
+    }
+
+    private static float[] floatScratch(int count, int channels) {
+        float[] scratch = sFloatScratch.get();
+        if (scratch == null || scratch.length < count * channels || scratch.length % channels != 0) {
+            scratch = new float[count * channels];
+            sFloatScratch.set(scratch);
+        }
+        return scratch;
+    }
+}
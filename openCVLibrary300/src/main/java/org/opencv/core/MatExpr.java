@@ -0,0 +1,227 @@
+package org.opencv.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Element-wise arithmetic on CV_8U Mats recorded lazily and evaluated in one pass. A chain of
+ * Core.add/subtract calls reads and writes the whole image once per step; here every element is
+ * loaded once, all steps run on a block small enough to stay in cache, and the result is stored
+ * once. Results are saturated after every step, exactly like the Core calls they replace:
+ *
+ * <pre>
+ * MatExpr.of(b).add(g).sub(r).mul(2).into(b);
+ * // same as Core.add(b, g, b); Core.subtract(b, r, b); Core.add(b, b, b);
+ * </pre>
+ *
+ * All operands must have the same size and CV_8U type; any number of channels is fine. The
+ * pixels are accessed through Mat.asByteBuffer() when possible, otherwise they are copied in and
+ * out once with get/put. The destination may be one of the operands.
+ */
+public final class MatExpr {
+
+    private static final int OP_ADD = 0;
+    private static final int OP_SUB = 1;
+    private static final int OP_ADD_SCALAR = 2;
+    private static final int OP_MUL_SCALAR = 3;
+
+    private static final int BLOCK = 4096;
+
+    private final Mat mFirst;
+    private Mat[] mOperands = new Mat[4];
+    private int[] mOps = new int[4];
+    private double[] mScalars = new double[4];
+    private int mCount;
+
+    private MatExpr(Mat first) {
+        mFirst = first;
+    }
+
+    /**
+     * Starts an expression whose value is the given Mat.
+     */
+    public static MatExpr of(Mat mat) {
+        return new MatExpr(mat);
+    }
+
+    /** Same as Core.add(this, m, dst) */
+    public MatExpr add(Mat m) {
+        return push(OP_ADD, m, 0);
+    }
+
+    /** Same as Core.subtract(this, m, dst) */
+    public MatExpr sub(Mat m) {
+        return push(OP_SUB, m, 0);
+    }
+
+    /** Same as Core.add(this, Scalar.all(value), dst) */
+    public MatExpr add(int value) {
+        return push(OP_ADD_SCALAR, null, clamp(value));
+    }
+
+    /** Same as Core.subtract(this, Scalar.all(value), dst) */
+    public MatExpr sub(int value) {
+        return push(OP_ADD_SCALAR, null, -clamp(value));
+    }
+
+    // Adding 255 or more saturates any 8 bit value, so larger scalars change nothing; clamping
+    // also keeps the accumulator and the negation of Integer.MIN_VALUE from overflowing
+    private static int clamp(int value) {
+        return value < -255 ? -255 : (value > 255 ? 255 : value);
+    }
+
+    /** Same as this.convertTo(dst, -1, scale): rounded to nearest and saturated */
+    public MatExpr mul(double scale) {
+        return push(OP_MUL_SCALAR, null, scale);
+    }
+
+    private MatExpr push(int op, Mat operand, double scalar) {
+        if (mCount == mOps.length) {
+            Mat[] operands = new Mat[mCount * 2];
+            int[] ops = new int[mCount * 2];
+            double[] scalars = new double[mCount * 2];
+            System.arraycopy(mOperands, 0, operands, 0, mCount);
+            System.arraycopy(mOps, 0, ops, 0, mCount);
+            System.arraycopy(mScalars, 0, scalars, 0, mCount);
+            mOperands = operands;
+            mOps = ops;
+            mScalars = scalars;
+        }
+        mOperands[mCount] = operand;
+        mOps[mCount] = op;
+        mScalars[mCount] = scalar;
+        mCount++;
+        return this;
+    }
+
+    /**
+     * Evaluates the expression into dst, which is (re)allocated to the operand size and type.
+     * @return dst
+     */
+    public Mat into(Mat dst) {
+        int rows = mFirst.rows();
+        int cols = mFirst.cols();
+        int type = mFirst.type();
+        if (CvType.depth(type) != CvType.CV_8U)
+            throw new java.lang.UnsupportedOperationException("Mat data type is not compatible: " + type);
+        for (int i = 0; i < mCount; i++) {
+            Mat m = mOperands[i];
+            if (m != null && (m.rows() != rows || m.cols() != cols || m.type() != type))
+                throw new IllegalArgumentException("Operand " + (i + 1) + " does not match " + mFirst);
+        }
+        dst.create(rows, cols, type);
+        int length = rows * cols * CvType.channels(type);
+        if (length == 0)
+            return dst;
+
+        Source first = Source.of(mFirst, length);
+        Source[] sources = new Source[mCount];
+        for (int i = 0; i < mCount; i++) {
+            Mat m = mOperands[i];
+            if (m == null)
+                continue;
+            // The same Mat used twice, as in b + b, is read once
+            sources[i] = m == mFirst ? first : null;
+            for (int j = 0; j < i && sources[i] == null; j++) {
+                if (mOperands[j] == m)
+                    sources[i] = sources[j];
+            }
+            if (sources[i] == null)
+                sources[i] = Source.of(m, length);
+        }
+        Source out = Source.forOutput(dst, length);
+
+        int[] acc = new int[BLOCK];
+        byte[] scratch = new byte[BLOCK];
+        for (int offset = 0; offset < length; offset += BLOCK) {
+            int n = Math.min(BLOCK, length - offset);
+            first.read(offset, scratch, n);
+            for (int k = 0; k < n; k++)
+                acc[k] = scratch[k] & 0xFF;
+
+            for (int i = 0; i < mCount; i++) {
+                switch (mOps[i]) {
+                case OP_ADD:
+                    sources[i].read(offset, scratch, n);
+                    for (int k = 0; k < n; k++)
+                        acc[k] = saturate(acc[k] + (scratch[k] & 0xFF));
+                    break;
+                case OP_SUB:
+                    sources[i].read(offset, scratch, n);
+                    for (int k = 0; k < n; k++)
+                        acc[k] = saturate(acc[k] - (scratch[k] & 0xFF));
+                    break;
+                case OP_ADD_SCALAR: {
+                    int v = (int) mScalars[i];
+                    for (int k = 0; k < n; k++)
+                        acc[k] = saturate(acc[k] + v);
+                    break;
+                }
+                case OP_MUL_SCALAR: {
+                    double s = mScalars[i];
+                    for (int k = 0; k < n; k++)
+                        acc[k] = saturate((int) Math.rint(acc[k] * s));
+                    break;
+                }
+                }
+            }
+
+            for (int k = 0; k < n; k++)
+                scratch[k] = (byte) acc[k];
+            out.write(offset, scratch, n);
+        }
+        out.flush(dst);
+        return dst;
+    }
+
+    private static int saturate(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+
+    // Element storage of an operand: a direct view of the Mat or a copy taken with get()
+    private static final class Source {
+        private final ByteBuffer mBuffer;
+        private final byte[] mArray;
+
+        private Source(ByteBuffer buffer, byte[] array) {
+            mBuffer = buffer;
+            mArray = array;
+        }
+
+        static Source of(Mat m, int length) {
+            if (Mat.isDirectBufferSupported() && m.isContinuous())
+                return new Source(m.asByteBuffer(), null);
+            byte[] array = new byte[length];
+            m.get(0, 0, array);
+            return new Source(null, array);
+        }
+
+        static Source forOutput(Mat m, int length) {
+            if (Mat.isDirectBufferSupported() && m.isContinuous())
+                return new Source(m.asByteBuffer(), null);
+            return new Source(null, new byte[length]);
+        }
+
+        void read(int offset, byte[] dst, int n) {
+            if (mBuffer != null) {
+                mBuffer.position(offset);
+                mBuffer.get(dst, 0, n);
+            } else {
+                System.arraycopy(mArray, offset, dst, 0, n);
+            }
+        }
+
+        void write(int offset, byte[] src, int n) {
+            if (mBuffer != null) {
+                mBuffer.position(offset);
+                mBuffer.put(src, 0, n);
+            } else {
+                System.arraycopy(src, 0, mArray, offset, n);
+            }
+        }
+
+        void flush(Mat m) {
+            if (mArray != null)
+                m.put(0, 0, mArray);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package org.opencv.core;
+
+/**
+ * Immutable snapshot of the layout of a Mat, see Mat.header(). Every field is read through JNI
+ * once when the snapshot is taken; afterwards size and type checks on hot paths cost nothing.
+ */
+public final class MatHeader {
+
+    public final int rows;
+    public final int cols;
+    public final int type;
+    /** Bytes from the start of one row to the start of the next */
+    public final long step;
+    public final long dataAddr;
+    public final boolean continuous;
+
+    MatHeader(Mat mat) {
+        rows = mat.rows();
+        cols = mat.cols();
+        type = mat.type();
+        step = mat.step1(0) * mat.elemSize1();
+        dataAddr = mat.dataAddr();
+        continuous = mat.isContinuous();
+    }
+
+    public int channels() {
+        return CvType.channels(type);
+    }
+
+    public int depth() {
+        return CvType.depth(type);
+    }
+
+    /** Bytes per element, all channels included */
+    public int elemSize() {
+        return CvType.ELEM_SIZE(type);
+    }
+
+    public long total() {
+        return (long) rows * cols;
+    }
+
+    public boolean empty() {
+        return dataAddr == 0 || total() == 0;
+    }
+
+    public Size size() {
+        return new Size(cols, rows);
+    }
+
+    /** Stores the size in out, which is returned */
+    public Size size(Size out) {
+        out.set(cols, rows);
+        return out;
+    }
+
+    /**
+     * Whether the Mat has the given shape, without allocating a Size.
+     */
+    public boolean matches(int rows, int cols, int type) {
+        return this.rows == rows && this.cols == cols && this.type == type;
+    }
+
+    @Override
+    public String toString() {
+        return "MatHeader [ " + rows + "*" + cols + "*" + CvType.typeToString(type)
+                + ", step=" + step + ", isCont=" + continuous
+                + ", dataAddr=0x" + Long.toHexString(dataAddr) + " ]";
+    }
+}
@@ -0,0 +1,61 @@
+package org.opencv.core;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reports Mats that were garbage collected without Mat.delete() or a MatScope having freed them,
+ * together with the stack trace of their allocation. Recording the stack costs a Throwable per
+ * Mat, so the detector is off by default and only Mats created while it is on are reported.
+ */
+public final class MatLeakDetector {
+
+    public interface Listener {
+        /**
+         * Called on the cleaner thread for each leaked Mat.
+         * @param allocationSite - stack trace of the constructor call
+         */
+        public void onLeak(Throwable allocationSite);
+    }
+
+    private static volatile boolean sEnabled;
+    private static volatile Listener sListener;
+    private static final AtomicInteger sLeaks = new AtomicInteger();
+
+    private MatLeakDetector() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Sets the listener for leaks, null prints them to System.err.
+     */
+    public static void setListener(Listener listener) {
+        sListener = listener;
+    }
+
+    /**
+     * Number of leaks reported since the process started.
+     */
+    public static int getLeakCount() {
+        return sLeaks.get();
+    }
+
+    static Throwable allocationSite() {
+        return sEnabled ? new Throwable("Mat allocated here was never deleted") : null;
+    }
+
+    static void report(Throwable site) {
+        sLeaks.incrementAndGet();
+        Listener listener = sListener;
+        if (listener != null)
+            listener.onLeak(site);
+        else
+            site.printStackTrace();
+    }
+}
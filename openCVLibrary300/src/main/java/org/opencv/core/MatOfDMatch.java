@@ -80,4 +80,24 @@ public class MatOfDMatch extends Mat {
         DMatch[] adm = toArray();
         return Arrays.asList(adm);
     }
+
+    /** The queryIdx of every match, into reuse if it holds total() values */
+    public int[] queryIdxs(int[] reuse) {
+        return MatColumns.floatsAsInts(this, _channels, 0, reuse);
+    }
+
+    /** The trainIdx of every match, into reuse if it holds total() values */
+    public int[] trainIdxs(int[] reuse) {
+        return MatColumns.floatsAsInts(this, _channels, 1, reuse);
+    }
+
+    /** The imgIdx of every match, into reuse if it holds total() values */
+    public int[] imgIdxs(int[] reuse) {
+        return MatColumns.floatsAsInts(this, _channels, 2, reuse);
+    }
+
+    /** The distance of every match, into reuse if it holds total() values */
+    public float[] distances(float[] reuse) {
+        return MatColumns.floats(this, _channels, 3, reuse);
+    }
 }
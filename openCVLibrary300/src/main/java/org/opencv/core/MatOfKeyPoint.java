@@ -83,4 +83,39 @@ public class MatOfKeyPoint extends Mat {
         KeyPoint[] akp = toArray();
         return Arrays.asList(akp);
     }
+
+    /** The pt.x of every keypoint, into reuse if it holds total() values */
+    public float[] xs(float[] reuse) {
+        return MatColumns.floats(this, _channels, 0, reuse);
+    }
+
+    /** The pt.y of every keypoint, into reuse if it holds total() values */
+    public float[] ys(float[] reuse) {
+        return MatColumns.floats(this, _channels, 1, reuse);
+    }
+
+    /** The size of every keypoint, into reuse if it holds total() values */
+    public float[] sizes(float[] reuse) {
+        return MatColumns.floats(this, _channels, 2, reuse);
+    }
+
+    /** The angle of every keypoint, into reuse if it holds total() values */
+    public float[] angles(float[] reuse) {
+        return MatColumns.floats(this, _channels, 3, reuse);
+    }
+
+    /** The response of every keypoint, into reuse if it holds total() values */
+    public float[] responses(float[] reuse) {
+        return MatColumns.floats(this, _channels, 4, reuse);
+    }
+
+    /** The octave of every keypoint, into reuse if it holds total() values */
+    public int[] octaves(int[] reuse) {
+        return MatColumns.floatsAsInts(this, _channels, 5, reuse);
+    }
+
+    /** The class_id of every keypoint, into reuse if it holds total() values */
+    public int[] classIds(int[] reuse) {
+        return MatColumns.floatsAsInts(this, _channels, 6, reuse);
+    }
 }
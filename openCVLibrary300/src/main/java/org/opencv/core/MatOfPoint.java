@@ -75,4 +75,14 @@ public class MatOfPoint extends Mat {
         Point[] ap = toArray();
         return Arrays.asList(ap);
     }
+
+    /** The x of every point, into reuse if it holds total() values */
+    public int[] xs(int[] reuse) {
+        return MatColumns.ints(this, _channels, 0, reuse);
+    }
+
+    /** The y of every point, into reuse if it holds total() values */
+    public int[] ys(int[] reuse) {
+        return MatColumns.ints(this, _channels, 1, reuse);
+    }
 }
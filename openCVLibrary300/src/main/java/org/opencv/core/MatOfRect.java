@@ -78,4 +78,24 @@ public class MatOfRect extends Mat {
         Rect[] ar = toArray();
         return Arrays.asList(ar);
     }
+
+    /** The x of every rectangle, into reuse if it holds total() values */
+    public int[] xs(int[] reuse) {
+        return MatColumns.ints(this, _channels, 0, reuse);
+    }
+
+    /** The y of every rectangle, into reuse if it holds total() values */
+    public int[] ys(int[] reuse) {
+        return MatColumns.ints(this, _channels, 1, reuse);
+    }
+
+    /** The width of every rectangle, into reuse if it holds total() values */
+    public int[] widths(int[] reuse) {
+        return MatColumns.ints(this, _channels, 2, reuse);
+    }
+
+    /** The height of every rectangle, into reuse if it holds total() values */
+    public int[] heights(int[] reuse) {
+        return MatColumns.ints(this, _channels, 3, reuse);
+    }
 }
@@ -0,0 +1,224 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recycles Mats by (rows, cols, type), so code that needs the same planes and buffers every
+ * frame does not go through native malloc and free each time. Each thread keeps the last few
+ * released Mats in front of a shared pool, so a thread that acquires and releases the same
+ * shapes only takes its own cache's lock, which nobody else takes except clear(). The bytes held
+ * by the pool, thread caches included, are capped; Mats released past the cap, as well as
+ * submatrices and non continuous Mats, are deleted instead.
+ * Acquired Mats are never part of a MatScope and their contents are undefined.
+ */
+public final class MatPool {
+
+    private static final int LOCAL_SLOTS = 4;
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    private static MatPool sDefault;
+
+    private final long mMaxBytes;
+    private final Map<Long, ArrayList<Mat>> mShared = new HashMap<Long, ArrayList<Mat>>();
+    // Every thread cache, so that clear() reaches those of other and of finished threads
+    private final ArrayList<Local> mLocals = new ArrayList<Local>();
+    private final ThreadLocal<Local> mLocal = new ThreadLocal<Local>() {
+        @Override
+        protected Local initialValue() {
+            Local local = new Local(Thread.currentThread());
+            synchronized (mLocals) {
+                mLocals.add(local);
+            }
+            return local;
+        }
+    };
+    private final AtomicLong mRetainedBytes = new AtomicLong();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mDrops = new AtomicLong();
+
+    // Per thread cache, guarded by itself; the keys avoid native calls when looking for a shape
+    private static final class Local {
+        final Thread owner;
+        final Mat[] mats = new Mat[LOCAL_SLOTS];
+        final long[] keys = new long[LOCAL_SLOTS];
+
+        Local(Thread owner) {
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * @param maxBytes - most native bytes the pool holds on to
+     */
+    public MatPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Pool shared by the library, holding at most 32 MiB.
+     */
+    public static synchronized MatPool getDefault() {
+        if (sDefault == null)
+            sDefault = new MatPool(DEFAULT_MAX_BYTES);
+        return sDefault;
+    }
+
+    /**
+     * Returns a continuous Mat of the given shape, reused if one is available.
+     */
+    public Mat acquire(int rows, int cols, int type) {
+        long key = key(rows, cols, type);
+        Local local = mLocal.get();
+        synchronized (local) {
+            for (int i = 0; i < LOCAL_SLOTS; i++) {
+                Mat mat = local.mats[i];
+                if (mat != null && local.keys[i] == key) {
+                    local.mats[i] = null;
+                    return hit(mat);
+                }
+            }
+        }
+
+        synchronized (mShared) {
+            ArrayList<Mat> mats = mShared.get(key);
+            if (mats != null && !mats.isEmpty())
+                return hit(mats.remove(mats.size() - 1));
+        }
+
+        mMisses.incrementAndGet();
+        Mat mat = MatRegistry.track(new Mat(rows, cols, type));
+        MatScope.detach(mat);
+        return mat;
+    }
+
+    public Mat acquire(Size size, int type) {
+        return acquire((int) size.height, (int) size.width, type);
+    }
+
+    /**
+     * Gives a Mat back to the pool. The caller must not use it afterwards. Any Mat can be
+     * released, it is filed under its current shape.
+     */
+    public void release(Mat mat) {
+        if (mat == null || mat.isDeleted())
+            return;
+        if (mat.empty() || mat.isSubmatrix() || !mat.isContinuous()) {
+            drop(mat);
+            return;
+        }
+        long bytes = mat.total() * mat.elemSize();
+        if (mRetainedBytes.addAndGet(bytes) > mMaxBytes) {
+            mRetainedBytes.addAndGet(-bytes);
+            drop(mat);
+            return;
+        }
+        MatScope.detach(mat);
+        long key = key(mat.rows(), mat.cols(), mat.type());
+
+        Local local = mLocal.get();
+        Mat evicted;
+        long evictedKey;
+        synchronized (local) {
+            for (int i = 0; i < LOCAL_SLOTS; i++) {
+                if (local.mats[i] == null) {
+                    local.mats[i] = mat;
+                    local.keys[i] = key;
+                    return;
+                }
+            }
+            // The local cache is full: the oldest entry moves to the shared pool
+            evicted = local.mats[0];
+            evictedKey = local.keys[0];
+            System.arraycopy(local.mats, 1, local.mats, 0, LOCAL_SLOTS - 1);
+            System.arraycopy(local.keys, 1, local.keys, 0, LOCAL_SLOTS - 1);
+            local.mats[LOCAL_SLOTS - 1] = mat;
+            local.keys[LOCAL_SLOTS - 1] = key;
+        }
+        synchronized (mShared) {
+            ArrayList<Mat> mats = mShared.get(evictedKey);
+            if (mats == null) {
+                mats = new ArrayList<Mat>();
+                mShared.put(evictedKey, mats);
+            }
+            mats.add(evicted);
+        }
+    }
+
+    /**
+     * Deletes every pooled Mat, including those cached by other threads and by threads that have
+     * finished, for example when the camera is released. The pool stays usable.
+     */
+    public void clear() {
+        synchronized (mLocals) {
+            for (int i = mLocals.size() - 1; i >= 0; i--) {
+                Local local = mLocals.get(i);
+                synchronized (local) {
+                    for (int j = 0; j < LOCAL_SLOTS; j++) {
+                        if (local.mats[j] != null) {
+                            free(local.mats[j]);
+                            local.mats[j] = null;
+                        }
+                    }
+                }
+                if (!local.owner.isAlive())
+                    mLocals.remove(i);
+            }
+        }
+        synchronized (mShared) {
+            for (ArrayList<Mat> mats : mShared.values()) {
+                for (Mat mat : mats)
+                    free(mat);
+            }
+            mShared.clear();
+        }
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Number of released Mats that were deleted instead of pooled.
+     */
+    public long getDrops() {
+        return mDrops.get();
+    }
+
+    public long getRetainedBytes() {
+        return mRetainedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "MatPool [hits=" + getHits() + ", misses=" + getMisses() + ", drops=" + getDrops()
+                + ", retainedBytes=" + getRetainedBytes() + "]";
+    }
+
+    private Mat hit(Mat mat) {
+        mHits.incrementAndGet();
+        mRetainedBytes.addAndGet(-(mat.total() * mat.elemSize()));
+        return mat;
+    }
+
+    private void free(Mat mat) {
+        mRetainedBytes.addAndGet(-(mat.total() * mat.elemSize()));
+        mat.delete();
+    }
+
+    private void drop(Mat mat) {
+        mDrops.incrementAndGet();
+        mat.delete();
+    }
+
+    private static long key(int rows, int cols, int type) {
+        return ((long) rows << 36) | ((long) cols << 12) | type;
+    }
+}
@@ -0,0 +1,100 @@
+package org.opencv.core;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Accounting of Mats whose native memory is of interest, typically the ones created per frame.
+ * Code registers a Mat with track() right after creating it; the registry then knows how many
+ * of them are still alive (neither deleted nor collected, so their native data is not freed yet)
+ * and how much native memory they hold. Tracking is off by default and track() is then a no-op.
+ */
+public final class MatRegistry {
+
+    private static volatile boolean sEnabled;
+    private static final Set<Reference<Mat>> sLive = new HashSet<Reference<Mat>>();
+    private static final ReferenceQueue<Mat> sCollected = new ReferenceQueue<Mat>();
+    private static long sAllocations;
+
+    private MatRegistry() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+        if (!enabled) {
+            synchronized (sLive) {
+                sLive.clear();
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Registers a freshly created Mat.
+     * @return the same Mat, so the call can wrap the allocation
+     */
+    public static <T extends Mat> T track(T mat) {
+        if (sEnabled && mat != null) {
+            synchronized (sLive) {
+                purge();
+                sLive.add(new WeakReference<Mat>(mat, sCollected));
+                sAllocations++;
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Number of tracked Mats that have not been deleted or garbage collected yet.
+     */
+    public static int getLiveCount() {
+        synchronized (sLive) {
+            purge();
+            return sLive.size();
+        }
+    }
+
+    /**
+     * Native data held by the tracked Mats that are still alive. Released Mats count as 0 and
+     * submatrices are skipped since they share the data of their parent.
+     */
+    public static long getNativeBytes() {
+        long bytes = 0;
+        synchronized (sLive) {
+            purge();
+            for (Reference<Mat> ref : sLive) {
+                Mat mat = ref.get();
+                if (mat != null)
+                    bytes += mat.nativeBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Number of track() calls since the registry was enabled.
+     */
+    public static long getAllocationCount() {
+        synchronized (sLive) {
+            return sAllocations;
+        }
+    }
+
+    private static void purge() {
+        Reference<? extends Mat> ref;
+        while ((ref = sCollected.poll()) != null)
+            sLive.remove(ref);
+        for (Iterator<Reference<Mat>> it = sLive.iterator(); it.hasNext();) {
+            Mat mat = it.next().get();
+            if (mat != null && mat.isDeleted())
+                it.remove();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.opencv.core;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arena for temporary Mats. Every Mat created on this thread while the scope is the innermost
+ * open one, including the Mats the bindings create for output lists, has its data freed when the
+ * scope is closed, so the native memory goes back immediately instead of after the next
+ * collections. The headers stay valid until the Mats are collected, so a Mat used after its
+ * scope is an empty Mat and not freed memory. Mats that must outlive the scope are handed out
+ * with keep().
+ *
+ * <pre>
+ * MatScope scope = MatScope.open();
+ * try {
+ *     ...
+ * } finally {
+ *     scope.close();
+ * }
+ * </pre>
+ */
+public final class MatScope implements Closeable {
+
+    private static final ThreadLocal<MatScope> sCurrent = new ThreadLocal<MatScope>();
+
+    private final MatScope mParent;
+    private final List<Mat> mMats = new ArrayList<Mat>();
+    private boolean mClosed;
+
+    private MatScope(MatScope parent) {
+        mParent = parent;
+    }
+
+    /**
+     * Opens a scope nested in the current one of this thread, if any.
+     */
+    public static MatScope open() {
+        MatScope scope = new MatScope(sCurrent.get());
+        sCurrent.set(scope);
+        return scope;
+    }
+
+    static void onCreated(Mat mat) {
+        MatScope scope = sCurrent.get();
+        if (scope != null)
+            scope.mMats.add(mat);
+    }
+
+    /**
+     * Takes a Mat out of the open scopes of this thread without handing it on. Used for Mats
+     * whose lifetime is managed elsewhere, like the ones of a MatPool.
+     */
+    static void detach(Mat mat) {
+        for (MatScope scope = sCurrent.get(); scope != null; scope = scope.mParent) {
+            for (int i = scope.mMats.size() - 1; i >= 0; i--) {
+                if (scope.mMats.get(i) == mat) {
+                    scope.mMats.remove(i);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes a Mat from this scope so it is not freed on close. If this scope is nested the
+     * Mat moves to the enclosing scope.
+     * @return the same Mat
+     */
+    public <T extends Mat> T keep(T mat) {
+        for (int i = mMats.size() - 1; i >= 0; i--) {
+            if (mMats.get(i) == mat) {
+                mMats.remove(i);
+                if (mParent != null)
+                    mParent.mMats.add(mat);
+                break;
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Number of Mats the scope will free.
+     */
+    public int size() {
+        return mMats.size();
+    }
+
+    /**
+     * Frees the data of the Mats of the scope, most recent first. Scopes have to be closed in
+     * reverse order of opening on the thread that opened them.
+     */
+    @Override
+    public void close() {
+        if (mClosed)
+            return;
+        if (sCurrent.get() != this)
+            throw new IllegalStateException("MatScope closed out of order or on another thread");
+        mClosed = true;
+        sCurrent.set(mParent);
+        for (int i = mMats.size() - 1; i >= 0; i--)
+            mMats.get(i).retire();
+        mMats.clear();
+    }
+}
@@ -0,0 +1,189 @@
+package org.opencv.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs independent Mat operations, typically per channel ones, on several cores. Tasks are
+ * declared once with the tasks they depend on and the graph can then be run any number of times,
+ * for example once per frame. Tasks whose dependencies are done run concurrently on a shared
+ * pool; run() returns when all of them finished, so whatever the last tasks produce, like a
+ * merge, is complete and visible to the caller.
+ *
+ * OpenCV calls made from different threads run at the same time, so tasks working on distinct
+ * Mats do run in parallel. Tasks must not share an output Mat, and must not run a graph themselves.
+ * Operations that only copy memory gain little from this; the tasks should carry real work.
+ */
+public final class MatTaskGraph {
+
+    private static ExecutorService sDefaultExecutor;
+
+    public static final class Task {
+        private final MatTaskGraph mGraph;
+        private final Runnable mBody;
+        private final List<Task> mDependents = new ArrayList<Task>(2);
+        private final int mDependencies;
+        private final AtomicInteger mPending = new AtomicInteger();
+
+        private Task(MatTaskGraph graph, Runnable body, int dependencies) {
+            mGraph = graph;
+            mBody = body;
+            mDependencies = dependencies;
+        }
+    }
+
+    private final Executor mExecutor;
+    private final List<Task> mTasks = new ArrayList<Task>();
+    private final AtomicReference<Throwable> mFailure = new AtomicReference<Throwable>();
+    private volatile CountDownLatch mDone;
+
+    /**
+     * Creates a graph run on the shared pool, which has one thread less than there are cores
+     * since the thread calling run() takes part.
+     */
+    public MatTaskGraph() {
+        this(getDefaultExecutor());
+    }
+
+    public MatTaskGraph(Executor executor) {
+        mExecutor = executor;
+    }
+
+    public static synchronized Executor getDefaultExecutor() {
+        if (sDefaultExecutor == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            sDefaultExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "MatTaskGraph-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sDefaultExecutor;
+    }
+
+    /**
+     * Adds a task. Dependencies have to be tasks of this graph, which also keeps it acyclic.
+     * @param body - the operation
+     * @param dependencies - tasks that have to be done before this one starts
+     */
+    public Task add(Runnable body, Task... dependencies) {
+        if (mDone != null)
+            throw new IllegalStateException("Tasks can only be added before the graph first runs");
+        Task task = new Task(this, body, dependencies.length);
+        for (Task dependency : dependencies) {
+            if (dependency.mGraph != this)
+                throw new IllegalArgumentException("Dependency belongs to another graph");
+            dependency.mDependents.add(task);
+        }
+        mTasks.add(task);
+        return task;
+    }
+
+    /**
+     * Runs all tasks and waits for them. If a task throws, the tasks that did not start yet are
+     * skipped and the first failure is rethrown once the running ones are done. A graph must
+     * not be run by two threads at the same time.
+     */
+    public void run() {
+        int count = mTasks.size();
+        if (count == 0)
+            return;
+        mFailure.set(null);
+        CountDownLatch done = new CountDownLatch(count);
+        mDone = done;
+
+        Task first = null;
+        for (int i = 0; i < count; i++) {
+            Task task = mTasks.get(i);
+            task.mPending.set(task.mDependencies);
+        }
+        for (int i = 0; i < count; i++) {
+            Task task = mTasks.get(i);
+            if (task.mDependencies == 0) {
+                if (first == null)
+                    first = task;
+                else
+                    submit(task);
+            }
+        }
+        execute(first);
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                // The tasks still use the caller's Mats, so returning early is not an option
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        Throwable failure = mFailure.get();
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        if (failure != null)
+            throw new RuntimeException(failure);
+    }
+
+    private void submit(final Task task) {
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    execute(task);
+                }
+            });
+        } catch (Throwable t) {
+            // Rejected, for example by a shut down executor: the task and its dependents still
+            // have to be counted down for run() to return, so they are skipped on this thread
+            mFailure.compareAndSet(null, t);
+            execute(task);
+        }
+    }
+
+    // Runs a task and then, on the same thread, the first dependent it made ready
+    private void execute(Task task) {
+        CountDownLatch done = mDone;
+        while (task != null) {
+            Task next = null;
+            try {
+                if (mFailure.get() == null) {
+                    try {
+                        task.mBody.run();
+                    } catch (Throwable t) {
+                        mFailure.compareAndSet(null, t);
+                    }
+                }
+                for (int i = 0; i < task.mDependents.size(); i++) {
+                    Task dependent = task.mDependents.get(i);
+                    if (dependent.mPending.decrementAndGet() == 0) {
+                        if (next == null)
+                            next = dependent;
+                        else
+                            submit(dependent);
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+            task = next;
+        }
+    }
+}
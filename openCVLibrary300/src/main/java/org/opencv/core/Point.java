@@ -29,6 +29,14 @@ public class Point {
         }
     }
 
+    /**
+     * Moves this point, so per frame code can reuse one instance.
+     */
+    public void set(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+
     public Point clone() {
         return new Point(x, y);
     }
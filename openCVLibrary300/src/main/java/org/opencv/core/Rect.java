@@ -45,6 +45,16 @@ public class Rect {
         }
     }
 
+    /**
+     * Changes this rectangle, so per frame code can reuse one instance.
+     */
+    public void set(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
     public Rect clone() {
         return new Rect(x, y, width, height);
     }
@@ -53,10 +63,22 @@ public class Rect {
         return new Point(x, y);
     }
 
+    /** Stores the top left corner in out, which is returned */
+    public Point tl(Point out) {
+        out.set(x, y);
+        return out;
+    }
+
     public Point br() {
         return new Point(x + width, y + height);
     }
 
+    /** Stores the bottom right corner in out, which is returned */
+    public Point br(Point out) {
+        out.set(x + width, y + height);
+        return out;
+    }
+
     public Size size() {
         return new Size(width, height);
     }
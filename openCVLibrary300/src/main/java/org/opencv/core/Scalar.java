@@ -40,6 +40,16 @@ public class Scalar {
             val[0] = val[1] = val[2] = val[3] = 0;
     }
 
+    /**
+     * Changes all four values, so per frame code can reuse one instance.
+     */
+    public void set(double v0, double v1, double v2, double v3) {
+        val[0] = v0;
+        val[1] = v1;
+        val[2] = v2;
+        val[3] = v3;
+    }
+
     public static Scalar all(double v) {
         return new Scalar(v, v, v, v);
     }
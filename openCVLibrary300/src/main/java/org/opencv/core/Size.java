@@ -33,6 +33,14 @@ public class Size {
         }
     }
 
+    /**
+     * Changes this size, so per frame code can reuse one instance.
+     */
+    public void set(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+
     public double area() {
         return width * height;
     }
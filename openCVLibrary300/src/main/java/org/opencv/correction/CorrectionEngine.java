@@ -0,0 +1,22 @@
+package org.opencv.correction;
+
+import org.opencv.core.Mat;
+
+/**
+ * Deuteranopia correction applied to every RGBA preview frame.
+ * Implementations are free to work in place; the returned Mat is the one to be displayed.
+ */
+public interface CorrectionEngine {
+
+    /**
+     * Short name used in logs, traces and benchmark reports.
+     */
+    public String getName();
+
+    /**
+     * Corrects the given CV_8UC4 RGBA frame.
+     * @param rgba - frame converted from the camera preview
+     * @return the corrected frame (may be rgba itself)
+     */
+    public Mat apply(Mat rgba);
+}
@@ -0,0 +1,25 @@
+package org.opencv.correction;
+
+/**
+ * Creates correction engines by name, for tools that take the engine as an option.
+ */
+public final class CorrectionEngines {
+
+    public static final String[] NAMES = { SplitMergeCorrection.NAME, LinearCorrection.NAME, JavaCorrection.NAME };
+
+    private CorrectionEngines() {
+    }
+
+    /**
+     * @return a new engine, or null if the name is unknown
+     */
+    public static CorrectionEngine create(String name) {
+        if (SplitMergeCorrection.NAME.equals(name))
+            return new SplitMergeCorrection();
+        if (LinearCorrection.NAME.equals(name))
+            return new LinearCorrection();
+        if (JavaCorrection.NAME.equals(name))
+            return new JavaCorrection();
+        return null;
+    }
+}
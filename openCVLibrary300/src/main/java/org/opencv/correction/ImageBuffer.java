@@ -0,0 +1,163 @@
+package org.opencv.correction;
+
+import java.nio.ByteBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * An 8 bit image in a direct ByteBuffer: width, height, row stride in bytes and pixel format.
+ * The Java correction kernels work on it, so the whole color pipeline runs on a plain JVM
+ * without the native library, while on the device the same code runs on Mat data through
+ * wrap(Mat), which maps the Mat without copying it.
+ *
+ * NV21 images hold height rows of luma followed by height / 2 rows of interleaved V/U, both with
+ * the same stride, which is the layout of an Android preview buffer and of the NV21 Mats the
+ * camera bridge fills (height * 3 / 2 rows of CV_8UC1).
+ */
+public final class ImageBuffer {
+
+    public static final int FORMAT_GRAY = 1;
+    public static final int FORMAT_RGBA = 4;
+    public static final int FORMAT_NV21 = 17;
+
+    private final ByteBuffer mData;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mStride;
+    private final int mFormat;
+    // Mat whose data mData maps, kept reachable for as long as this buffer is
+    private final Mat mMat;
+
+    private ImageBuffer(ByteBuffer data, int width, int height, int stride, int format, Mat mat) {
+        if (width <= 0 || height <= 0 || stride < width * bytesPerPixel(format))
+            throw new IllegalArgumentException("Bad geometry " + width + "x" + height + ", stride " + stride);
+        if (format == FORMAT_NV21 && ((width | height) & 1) != 0)
+            throw new IllegalArgumentException("NV21 needs even dimensions: " + width + "x" + height);
+        if (data.capacity() < stride * rows(height, format))
+            throw new IllegalArgumentException("Buffer of " + data.capacity() + " bytes is too small");
+        mData = data;
+        mWidth = width;
+        mHeight = height;
+        mStride = stride;
+        mFormat = format;
+        mMat = mat;
+    }
+
+    /**
+     * Allocates a tightly packed image in a new direct buffer.
+     */
+    public static ImageBuffer allocate(int width, int height, int format) {
+        int stride = width * bytesPerPixel(format);
+        return new ImageBuffer(ByteBuffer.allocateDirect(stride * rows(height, format)),
+                width, height, stride, format, null);
+    }
+
+    /**
+     * Uses existing pixel data, for example a camera preview array through ByteBuffer.wrap().
+     */
+    public static ImageBuffer wrap(ByteBuffer data, int width, int height, int stride, int format) {
+        return new ImageBuffer(data, width, height, stride, format, null);
+    }
+
+    /**
+     * Maps the data of a continuous Mat without copying it: CV_8UC4 as RGBA, CV_8UC1 as GRAY, or
+     * as NV21 if format is FORMAT_NV21. The image is only valid as long as the Mat keeps its data.
+     * @throws UnsupportedOperationException if the runtime cannot map Mat data, see
+     * Mat.isDirectBufferSupported()
+     */
+    public static ImageBuffer wrap(Mat mat, int format) {
+        int type = mat.type();
+        int expected = format == FORMAT_RGBA ? CvType.CV_8UC4 : CvType.CV_8UC1;
+        if (type != expected)
+            throw new IllegalArgumentException("Mat type " + CvType.typeToString(type) + " does not hold format " + format);
+        int rows = mat.rows();
+        int height = format == FORMAT_NV21 ? rows * 2 / 3 : rows;
+        int cols = mat.cols();
+        return new ImageBuffer(mat.asByteBuffer(), cols, height, cols * bytesPerPixel(format), format, mat);
+    }
+
+    /**
+     * Copies the image into dst, which is (re)allocated to the matching Mat layout.
+     * @return dst
+     */
+    public Mat copyTo(Mat dst) {
+        int type = mFormat == FORMAT_RGBA ? CvType.CV_8UC4 : CvType.CV_8UC1;
+        int rows = rows(mHeight, mFormat);
+        int row = mWidth * bytesPerPixel(mFormat);
+        dst.create(rows, mWidth, type);
+        if (Mat.isDirectBufferSupported() && dst.isContinuous()) {
+            ByteBuffer out = dst.asByteBuffer();
+            for (int y = 0; y < rows; y++) {
+                ByteBuffer line = mData.duplicate();
+                line.limit(y * mStride + row).position(y * mStride);
+                out.put(line);
+            }
+        } else {
+            byte[] line = new byte[row];
+            ByteBuffer in = mData.duplicate();
+            for (int y = 0; y < rows; y++) {
+                in.position(y * mStride);
+                in.get(line);
+                dst.put(y, 0, line);
+            }
+        }
+        return dst;
+    }
+
+    /**
+     * The Mat this image maps without copying, or a new Mat with a copy of the pixels.
+     */
+    public Mat toMat() {
+        return mMat != null ? mMat : copyTo(new Mat());
+    }
+
+    /**
+     * The pixel data, position 0 is the first byte of the first row. The returned buffer is
+     * independent of this image's position and limit.
+     */
+    public ByteBuffer getData() {
+        return mData.duplicate();
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /** Bytes from the start of one row to the start of the next */
+    public int getStride() {
+        return mStride;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Bytes per pixel of the first plane: 4 for RGBA, 1 for GRAY and the luma plane of NV21.
+     */
+    public static int bytesPerPixel(int format) {
+        switch (format) {
+        case FORMAT_RGBA:
+            return 4;
+        case FORMAT_GRAY:
+        case FORMAT_NV21:
+            return 1;
+        default:
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    private static int rows(int height, int format) {
+        return format == FORMAT_NV21 ? height + height / 2 : height;
+    }
+
+    @Override
+    public String toString() {
+        return "ImageBuffer [" + mWidth + "x" + mHeight + ", stride=" + mStride + ", format=" + mFormat + "]";
+    }
+}
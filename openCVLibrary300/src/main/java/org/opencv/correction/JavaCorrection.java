@@ -0,0 +1,97 @@
+package org.opencv.correction;
+
+import java.nio.ByteBuffer;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Pure Java implementation of the split/merge correction. It makes a single pass over
+ * interleaved RGBA pixels and only rewrites the blue byte, with the same per-step
+ * saturation as the Core.add/Core.subtract chain. Alpha is kept, so the result stays CV_8UC4.
+ */
+public class JavaCorrection implements CorrectionEngine {
+
+    public static final String NAME = "java";
+
+    private byte[] mBuffer;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Corrects the frame in place through an ImageBuffer view of its data, or copies it to the
+     * Java heap and back where Mat data cannot be mapped. The Mat must be continuous CV_8UC4.
+     */
+    @Override
+    public Mat apply(Mat rgba) {
+        if (rgba.type() != CvType.CV_8UC4 || !rgba.isContinuous())
+            throw new IllegalArgumentException("Continuous CV_8UC4 Mat expected: " + rgba);
+
+        if (Mat.isDirectBufferSupported()) {
+            correct(ImageBuffer.wrap(rgba, ImageBuffer.FORMAT_RGBA));
+            return rgba;
+        }
+
+        int length = (int) (rgba.total() * 4);
+        if (mBuffer == null || mBuffer.length != length)
+            mBuffer = new byte[length];
+
+        rgba.get(0, 0, mBuffer);
+        correctRgba(mBuffer, 0, length);
+        rgba.put(0, 0, mBuffer);
+
+        return rgba;
+    }
+
+    /**
+     * Corrects interleaved RGBA pixels in place.
+     * @param rgba - pixel data
+     * @param offset - index of the first R byte
+     * @param length - number of bytes to process, a multiple of 4
+     */
+    public static void correctRgba(byte[] rgba, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i += 4) {
+            int r = rgba[i] & 0xFF;
+            int g = rgba[i + 1] & 0xFF;
+            int b = rgba[i + 2] & 0xFF;
+
+            rgba[i + 2] = (byte) blue(r, g, b);
+        }
+    }
+
+    /**
+     * Corrects an RGBA image in place, honoring its stride.
+     */
+    public static void correct(ImageBuffer rgba) {
+        if (rgba.getFormat() != ImageBuffer.FORMAT_RGBA)
+            throw new IllegalArgumentException("RGBA image expected: " + rgba);
+        ByteBuffer data = rgba.getData();
+        int row = rgba.getWidth() * 4;
+        for (int y = 0, start = 0; y < rgba.getHeight(); y++, start += rgba.getStride()) {
+            for (int i = start, end = start + row; i < end; i += 4) {
+                int r = data.get(i) & 0xFF;
+                int g = data.get(i + 1) & 0xFF;
+                int b = data.get(i + 2) & 0xFF;
+
+                data.put(i + 2, (byte) blue(r, g, b));
+            }
+        }
+    }
+
+    /**
+     * Corrected blue value: sat(2 * sat(sat(b + g) - r)).
+     */
+    public static int blue(int r, int g, int b) {
+        int t = b + g;
+        if (t > 255)
+            t = 255;
+        t -= r;
+        if (t < 0)
+            return 0;
+        t += t;
+        return t > 255 ? 255 : t;
+    }
+}
@@ -0,0 +1,42 @@
+package org.opencv.correction;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+/**
+ * Cheap approximation of the split/merge correction: B' = 2 * (B + G - R) computed in a single
+ * Core.transform pass and saturated once at the end instead of after every step. It differs only
+ * where B + G exceeds 255 and needs no plane allocations, so it is used when the device is hot.
+ * The result is CV_8UC4 and owned by the engine until the next call.
+ */
+public class LinearCorrection implements CorrectionEngine {
+
+    public static final String NAME = "linear";
+
+    private static final float[] MATRIX = {
+         1, 0, 0, 0,
+         0, 1, 0, 0,
+        -2, 2, 2, 0,
+         0, 0, 0, 1
+    };
+
+    private Mat mMatrix;
+    private Mat mOutput;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Mat apply(Mat rgba) {
+        if (mMatrix == null) {
+            mMatrix = new Mat(4, 4, CvType.CV_32F);
+            mMatrix.put(0, 0, MATRIX);
+            mOutput = new Mat();
+        }
+        Core.transform(rgba, mOutput, mMatrix);
+        return mOutput;
+    }
+}
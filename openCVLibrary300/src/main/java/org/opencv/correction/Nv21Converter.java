@@ -0,0 +1,115 @@
+package org.opencv.correction;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pure Java NV21 to RGBA conversion. Uses the same BT.601 fixed point coefficients as
+ * OpenCV's COLOR_YUV2RGBA_NV21, so the output matches Imgproc.cvtColor bit for bit.
+ */
+public class Nv21Converter {
+
+    private static final int SHIFT = 20;
+    private static final int HALF = 1 << (SHIFT - 1);
+    private static final int CY  = 1220542;
+    private static final int CUB = 2116026;
+    private static final int CUG = -409993;
+    private static final int CVG = -852492;
+    private static final int CVR = 1673527;
+
+    /**
+     * Converts a NV21 frame to interleaved RGBA with opaque alpha.
+     * @param nv21 - width * height luma bytes followed by interleaved V/U at half resolution
+     * @param width - frame width, must be even
+     * @param height - frame height, must be even
+     * @param rgba - destination of at least width * height * 4 bytes
+     */
+    public static void toRgba(byte[] nv21, int width, int height, byte[] rgba) {
+        int frameSize = width * height;
+        if (nv21.length < frameSize + frameSize / 2 || rgba.length < frameSize * 4)
+            throw new IllegalArgumentException("Buffers too small for " + width + "x" + height);
+
+        for (int j = 0; j < height; j += 2) {
+            int y0 = j * width;
+            int y1 = y0 + width;
+            int uv = frameSize + (j >> 1) * width;
+            int d0 = y0 * 4;
+            int d1 = y1 * 4;
+
+            for (int i = 0; i < width; i += 2) {
+                int v = (nv21[uv + i] & 0xFF) - 128;
+                int u = (nv21[uv + i + 1] & 0xFF) - 128;
+
+                int ruv = HALF + CVR * v;
+                int guv = HALF + CVG * v + CUG * u;
+                int buv = HALF + CUB * u;
+
+                d0 = put(rgba, d0, nv21[y0 + i] & 0xFF, ruv, guv, buv);
+                d0 = put(rgba, d0, nv21[y0 + i + 1] & 0xFF, ruv, guv, buv);
+                d1 = put(rgba, d1, nv21[y1 + i] & 0xFF, ruv, guv, buv);
+                d1 = put(rgba, d1, nv21[y1 + i + 1] & 0xFF, ruv, guv, buv);
+            }
+        }
+    }
+
+    /**
+     * Converts a NV21 image to RGBA with opaque alpha, honoring the strides of both images.
+     * @param rgba - destination of the same size as nv21
+     */
+    public static void toRgba(ImageBuffer nv21, ImageBuffer rgba) {
+        int width = nv21.getWidth();
+        int height = nv21.getHeight();
+        if (nv21.getFormat() != ImageBuffer.FORMAT_NV21 || rgba.getFormat() != ImageBuffer.FORMAT_RGBA
+                || rgba.getWidth() != width || rgba.getHeight() != height)
+            throw new IllegalArgumentException("Cannot convert " + nv21 + " to " + rgba);
+
+        ByteBuffer src = nv21.getData();
+        ByteBuffer dst = rgba.getData();
+        int srcStride = nv21.getStride();
+        int dstStride = rgba.getStride();
+        int uvStart = height * srcStride;
+
+        for (int j = 0; j < height; j += 2) {
+            int y0 = j * srcStride;
+            int y1 = y0 + srcStride;
+            int uv = uvStart + (j >> 1) * srcStride;
+            int d0 = j * dstStride;
+            int d1 = d0 + dstStride;
+
+            for (int i = 0; i < width; i += 2) {
+                int v = (src.get(uv + i) & 0xFF) - 128;
+                int u = (src.get(uv + i + 1) & 0xFF) - 128;
+
+                int ruv = HALF + CVR * v;
+                int guv = HALF + CVG * v + CUG * u;
+                int buv = HALF + CUB * u;
+
+                d0 = put(dst, d0, src.get(y0 + i) & 0xFF, ruv, guv, buv);
+                d0 = put(dst, d0, src.get(y0 + i + 1) & 0xFF, ruv, guv, buv);
+                d1 = put(dst, d1, src.get(y1 + i) & 0xFF, ruv, guv, buv);
+                d1 = put(dst, d1, src.get(y1 + i + 1) & 0xFF, ruv, guv, buv);
+            }
+        }
+    }
+
+    private static int put(ByteBuffer rgba, int d, int y, int ruv, int guv, int buv) {
+        int yy = (y > 16 ? y - 16 : 0) * CY;
+        rgba.put(d,     saturate((yy + ruv) >> SHIFT));
+        rgba.put(d + 1, saturate((yy + guv) >> SHIFT));
+        rgba.put(d + 2, saturate((yy + buv) >> SHIFT));
+        rgba.put(d + 3, (byte) 0xFF);
+        return d + 4;
+    }
+
+    private static int put(byte[] rgba, int d, int y, int ruv, int guv, int buv) {
+        int yy = (y > 16 ? y - 16 : 0) * CY;
+        rgba[d]     = saturate((yy + ruv) >> SHIFT);
+        rgba[d + 1] = saturate((yy + guv) >> SHIFT);
+        rgba[d + 2] = saturate((yy + buv) >> SHIFT);
+        rgba[d + 3] = (byte) 0xFF;
+        return d + 4;
+    }
+
+    private static byte saturate(int value) {
+        return (byte) (value < 0 ? 0 : (value > 255 ? 255 : value));
+    }
+}
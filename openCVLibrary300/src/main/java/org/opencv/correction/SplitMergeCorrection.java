@@ -0,0 +1,74 @@
+package org.opencv.correction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatPool;
+import org.opencv.core.MatScope;
+
+/**
+ * The original correction path: the frame is split into planes in one pass, the blue plane is
+ * rebuilt as 2 * ((B + G) - R) with saturation after every step and R, G, B are merged back.
+ * The alpha plane is dropped, so the result is CV_8UC3. The planes come from the MatPool and the
+ * result is owned by the engine until the next call; the input frame is left untouched.
+ */
+public class SplitMergeCorrection implements CorrectionEngine {
+
+    public static final String NAME = "split-merge";
+
+    private static final int[] FROM_TO = { 0, 0, 1, 1, 2, 2 };
+
+    private final Mat mOutput = new Mat();
+    private final MatOfInt mFromTo = new MatOfInt(FROM_TO);
+    private final List<Mat> mSource = new ArrayList<Mat>(1);
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Mat apply(Mat rgba) {
+        MatPool pool = MatPool.getDefault();
+        List<Mat> output = new ArrayList<Mat>(3);
+        Mat mR = null;
+        Mat mG = null;
+        Mat mB = null;
+
+        // The binding temporaries of mixChannels and merge are freed before the next frame
+        MatScope scope = MatScope.open();
+        try {
+            mR = pool.acquire(rgba.rows(), rgba.cols(), CvType.CV_8UC1);
+            mG = pool.acquire(rgba.rows(), rgba.cols(), CvType.CV_8UC1);
+            mB = pool.acquire(rgba.rows(), rgba.cols(), CvType.CV_8UC1);
+            output.add(mR);
+            output.add(mG);
+            output.add(mB);
+
+            // One read of the frame fills all three planes
+            mSource.add(rgba);
+            Core.mixChannels(mSource, output, mFromTo);
+
+            Core.add(mB, mG, mB);
+            Core.subtract(mB, mR, mB);
+            Core.add(mB, mB, mB);
+
+            Core.merge(output, mOutput);
+        } finally {
+            mSource.clear();
+            scope.close();
+            if (mB != null)
+                pool.release(mB);
+            if (mG != null)
+                pool.release(mG);
+            if (mR != null)
+                pool.release(mR);
+        }
+
+        return mOutput;
+    }
+}
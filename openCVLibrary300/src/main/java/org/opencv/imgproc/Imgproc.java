@@ -4,8 +4,6 @@
 //
 package org.opencv.imgproc;
 
-import android.util.Log;
-
 import java.lang.String;
 import java.util.ArrayList;
 import java.util.List;
@@ -468,6 +466,14 @@ public class Imgproc {
         return;
     }
 
+    /**
+     * Draws text with its bottom left corner at (x, y), without a Point for per frame overlays.
+     */
+    public static void putText(Mat img, String text, double x, double y, int fontFace, double fontScale, Scalar color, int thickness)
+    {
+        putText_1(img.nativeObj, text, x, y, fontFace, fontScale, color.val[0], color.val[1], color.val[2], color.val[3], thickness);
+    }
+
 
     //
     // C++:  void ellipse(Mat& img, RotatedRect box, Scalar color, int thickness = 1, int lineType = LINE_8)
@@ -2199,7 +2205,6 @@ public class Imgproc {
     //javadoc: sepFilter2D(src, dst, ddepth, kernelX, kernelY)
     public static void sepFilter2D(Mat src, Mat dst, int ddepth, Mat kernelX, Mat kernelY)
     {
-            Log.i("KTB" , "Entered Sepia Filter");
         
         sepFilter2D_2(src.nativeObj, dst.nativeObj, ddepth, kernelX.nativeObj, kernelY.nativeObj);
         
@@ -2793,6 +2798,24 @@ public class Imgproc {
         return;
     }
 
+    /**
+     * Draws a rectangle given by its corners, without any Point for per frame overlays.
+     */
+    public static void rectangle(Mat img, double x1, double y1, double x2, double y2, Scalar color, int thickness)
+    {
+        rectangle_1(img.nativeObj, x1, y1, x2, y2, color.val[0], color.val[1], color.val[2], color.val[3], thickness);
+    }
+
+    /**
+     * Draws the outline of rect, or fills it if thickness is negative, without the corner
+     * Points rect.tl() and rect.br() would allocate.
+     */
+    public static void rectangle(Mat img, Rect rect, Scalar color, int thickness)
+    {
+        rectangle_1(img.nativeObj, rect.x, rect.y, rect.x + rect.width, rect.y + rect.height,
+                color.val[0], color.val[1], color.val[2], color.val[3], thickness);
+    }
+
 
     //
     // C++:  void circle(Mat& img, Point center, int radius, Scalar color, int thickness = 1, int lineType = LINE_8, int shift = 0)
@@ -2825,6 +2848,14 @@ public class Imgproc {
         return;
     }
 
+    /**
+     * Draws a circle around (centerX, centerY), without a Point for per frame overlays.
+     */
+    public static void circle(Mat img, double centerX, double centerY, int radius, Scalar color, int thickness)
+    {
+        circle_1(img.nativeObj, centerX, centerY, radius, color.val[0], color.val[1], color.val[2], color.val[3], thickness);
+    }
+
 
     //
     // C++:  void ellipse(Mat& img, Point center, Size axes, double angle, double startAngle, double endAngle, Scalar color, int thickness = 1, int lineType = LINE_8, int shift = 0)
@@ -733,4 +733,177 @@ public class Converters {
         }
         mats.clear();
     }
+
+    // Primitive array overloads. Values are interleaved per element (x, y for points, x, y,
+    // width, height for rects, the 7 KeyPoint fields in declaration order), the first count
+    // elements of the array are used and dst is only reallocated if its shape or type differs.
+    // The reverse conversions return the given array when it is large enough and a new one
+    // otherwise, so per-frame code can keep one buffer; the element count is m.rows().
+
+    public static Mat vector_int_to_Mat(int[] values, int count, Mat dst) {
+        prepare(dst, count, values.length, CvType.CV_32SC1);
+        if (count > 0)
+            dst.put(0, 0, values);
+        return dst;
+    }
+
+    public static Mat vector_float_to_Mat(float[] values, int count, Mat dst) {
+        prepare(dst, count, values.length, CvType.CV_32FC1);
+        if (count > 0)
+            dst.put(0, 0, values);
+        return dst;
+    }
+
+    public static Mat vector_double_to_Mat(double[] values, int count, Mat dst) {
+        prepare(dst, count, values.length, CvType.CV_64FC1);
+        if (count > 0)
+            dst.put(0, 0, values);
+        return dst;
+    }
+
+    public static Mat vector_uchar_to_Mat(byte[] values, int count, Mat dst) {
+        prepare(dst, count, values.length, CvType.CV_8UC1);
+        if (count > 0)
+            dst.put(0, 0, values);
+        return dst;
+    }
+
+    public static Mat vector_Point_to_Mat(int[] xy, int count, Mat dst) {
+        prepare(dst, count, xy.length, CvType.CV_32SC2);
+        if (count > 0)
+            dst.put(0, 0, xy);
+        return dst;
+    }
+
+    public static Mat vector_Point2f_to_Mat(float[] xy, int count, Mat dst) {
+        prepare(dst, count, xy.length, CvType.CV_32FC2);
+        if (count > 0)
+            dst.put(0, 0, xy);
+        return dst;
+    }
+
+    public static Mat vector_Point2d_to_Mat(double[] xy, int count, Mat dst) {
+        prepare(dst, count, xy.length, CvType.CV_64FC2);
+        if (count > 0)
+            dst.put(0, 0, xy);
+        return dst;
+    }
+
+    public static Mat vector_Rect_to_Mat(int[] rects, int count, Mat dst) {
+        prepare(dst, count, rects.length, CvType.CV_32SC4);
+        if (count > 0)
+            dst.put(0, 0, rects);
+        return dst;
+    }
+
+    public static Mat vector_KeyPoint_to_Mat(double[] kps, int count, Mat dst) {
+        prepare(dst, count, kps.length, CvType.CV_64FC(7));
+        if (count > 0)
+            dst.put(0, 0, kps);
+        return dst;
+    }
+
+    public static int[] Mat_to_vector_int(Mat m, int[] buff) {
+        buff = buffer(m, CvType.CV_32SC1, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static float[] Mat_to_vector_float(Mat m, float[] buff) {
+        buff = buffer(m, CvType.CV_32FC1, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static double[] Mat_to_vector_double(Mat m, double[] buff) {
+        buff = buffer(m, CvType.CV_64FC1, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static byte[] Mat_to_vector_uchar(Mat m, byte[] buff) {
+        buff = buffer(m, CvType.CV_8UC1, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static int[] Mat_to_vector_Point(Mat m, int[] buff) {
+        buff = buffer(m, CvType.CV_32SC2, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static float[] Mat_to_vector_Point2f(Mat m, float[] buff) {
+        buff = buffer(m, CvType.CV_32FC2, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static double[] Mat_to_vector_Point2d(Mat m, double[] buff) {
+        buff = buffer(m, CvType.CV_64FC2, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static int[] Mat_to_vector_Rect(Mat m, int[] buff) {
+        buff = buffer(m, CvType.CV_32SC4, buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    public static double[] Mat_to_vector_KeyPoint(Mat m, double[] buff) {
+        buff = buffer(m, CvType.CV_64FC(7), buff);
+        if (!m.empty())
+            m.get(0, 0, buff);
+        return buff;
+    }
+
+    private static void prepare(Mat dst, int count, int length, int type) {
+        if (dst == null)
+            throw new java.lang.IllegalArgumentException("Output Mat can't be null");
+        int channels = CvType.channels(type);
+        if (count < 0 || count * channels > length || length % channels != 0)
+            throw new java.lang.IllegalArgumentException(
+                    "Array of " + length + " values can't hold " + count + " elements of " + CvType.typeToString(type));
+        dst.create(count, 1, type);
+    }
+
+    private static int checkVector(Mat m, int type) {
+        if (m.type() != type || m.cols() != 1)
+            throw new java.lang.IllegalArgumentException(
+                    "Input Mat should be a " + CvType.typeToString(type) + " column\n" + m);
+        return m.rows() * CvType.channels(type);
+    }
+
+    private static boolean reusable(int capacity, int length, int type) {
+        return capacity >= length && capacity % CvType.channels(type) == 0;
+    }
+
+    private static int[] buffer(Mat m, int type, int[] buff) {
+        int length = checkVector(m, type);
+        return reusable(buff == null ? -1 : buff.length, length, type) ? buff : new int[length];
+    }
+
+    private static float[] buffer(Mat m, int type, float[] buff) {
+        int length = checkVector(m, type);
+        return reusable(buff == null ? -1 : buff.length, length, type) ? buff : new float[length];
+    }
+
+    private static double[] buffer(Mat m, int type, double[] buff) {
+        int length = checkVector(m, type);
+        return reusable(buff == null ? -1 : buff.length, length, type) ? buff : new double[length];
+    }
+
+    private static byte[] buffer(Mat m, int type, byte[] buff) {
+        int length = checkVector(m, type);
+        return reusable(buff == null ? -1 : buff.length, length, type) ? buff : new byte[length];
+    }
 }
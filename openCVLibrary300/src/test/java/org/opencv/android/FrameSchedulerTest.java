@@ -0,0 +1,109 @@
+package org.opencv.android;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FrameSchedulerTest {
+
+    private static final FixedRateFrameClock DISPLAY_60 = new FixedRateFrameClock(60);
+    private static final long PERIOD = DISPLAY_60.getVsyncPeriodNanos();
+
+    /*
+     * Feeds a 60 fps camera whose frames arrive at the given phase after each vsync, with a
+     * few hundred microseconds of jitter, and returns the decisions as a string of 1s and 0s.
+     */
+    private static String run(FrameScheduler scheduler, int frames, long start, double phase) {
+        StringBuilder decisions = new StringBuilder(frames);
+        for (int i = 0; i < frames; i++) {
+            long jitter = ((i * 7919) % 11 - 5) * 60000L;
+            long now = start + i * PERIOD + (long) (phase * PERIOD) + jitter;
+            decisions.append(scheduler.shouldProcess(now) ? '1' : '0');
+        }
+        return decisions.toString();
+    }
+
+    private static String repeat(String pattern, int length) {
+        StringBuilder out = new StringBuilder(length);
+        while (out.length() < length)
+            out.append(pattern);
+        out.setLength(length);
+        return out.toString();
+    }
+
+    private static int accepted(String decisions) {
+        int count = 0;
+        for (int i = 0; i < decisions.length(); i++)
+            if (decisions.charAt(i) == '1')
+                count++;
+        return count;
+    }
+
+    @Test
+    public void capsSixtyToTwentyFour() {
+        double[] phases = { 0.1, 0.5, 0.9 };
+        for (double phase : phases) {
+            FrameScheduler scheduler = new FrameScheduler(DISPLAY_60);
+            scheduler.setMaxFps(24);
+            // 24 is not a divisor of 60, accepted frames alternate between 2 and 3 vsyncs apart
+            String decisions = run(scheduler, 600, 0, phase);
+            assertEquals("phase " + phase, repeat("10100", 600), decisions);
+            assertEquals(240, accepted(decisions));
+            assertEquals(240, scheduler.getAcceptedFrames());
+            assertEquals(360, scheduler.getDroppedFrames());
+        }
+    }
+
+    @Test
+    public void capsSixtyToFifteen() {
+        double[] phases = { 0.1, 0.5, 0.9 };
+        for (double phase : phases) {
+            FrameScheduler scheduler = new FrameScheduler(DISPLAY_60);
+            scheduler.setMaxFps(15);
+            String decisions = run(scheduler, 600, 0, phase);
+            assertEquals("phase " + phase, repeat("1000", 600), decisions);
+            assertEquals(150, accepted(decisions));
+        }
+    }
+
+    @Test
+    public void noCapAcceptsEveryVsync() {
+        FrameScheduler scheduler = new FrameScheduler(DISPLAY_60);
+        assertEquals(repeat("1", 120), run(scheduler, 120, 0, 0.5));
+    }
+
+    @Test
+    public void capAboveTheDisplayRateIsTheDisplayRate() {
+        FrameScheduler scheduler = new FrameScheduler(DISPLAY_60);
+        scheduler.setMaxFps(120);
+        assertEquals(repeat("1", 120), run(scheduler, 120, 0, 0.5));
+    }
+
+    @Test
+    public void pauseDoesNotCauseBurst() {
+        FrameScheduler scheduler = new FrameScheduler(DISPLAY_60);
+        scheduler.setMaxFps(15);
+        run(scheduler, 10, 0, 0.5);
+        // One second without frames, then the schedule starts over from the first new frame
+        String decisions = run(scheduler, 60, 70 * PERIOD, 0.5);
+        assertEquals(repeat("1000", 60), decisions);
+    }
+
+    @Test
+    public void capChangeAppliesToTheNextFrame() {
+        FrameScheduler scheduler = new FrameScheduler(DISPLAY_60);
+        scheduler.setMaxFps(15);
+        assertEquals(repeat("1000", 8), run(scheduler, 8, 0, 0.5));
+        scheduler.setMaxFps(0);
+        assertEquals(repeat("1", 8), run(scheduler, 8, 8 * PERIOD, 0.5));
+    }
+
+    @Test
+    public void resetRestartsTheSchedule() {
+        FrameScheduler scheduler = new FrameScheduler(DISPLAY_60);
+        scheduler.setMaxFps(15);
+        assertEquals("10", run(scheduler, 2, 0, 0.5));
+        scheduler.reset();
+        assertEquals("1000", run(scheduler, 4, 2 * PERIOD, 0.5));
+    }
+}
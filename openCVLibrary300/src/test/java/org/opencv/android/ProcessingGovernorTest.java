@@ -0,0 +1,175 @@
+package org.opencv.android;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProcessingGovernorTest {
+
+    private static class RecordingListener implements ProcessingGovernor.Listener {
+        final List<ProcessingGovernor.Policy> policies = new ArrayList<ProcessingGovernor.Policy>();
+
+        @Override
+        public void onPolicyChanged(ProcessingGovernor.Policy policy) {
+            policies.add(policy);
+        }
+
+        int[] levels() {
+            int[] levels = new int[policies.size()];
+            for (int i = 0; i < levels.length; i++)
+                levels[i] = policies.get(i).level;
+            return levels;
+        }
+
+        ProcessingGovernor.Policy last() {
+            return policies.get(policies.size() - 1);
+        }
+    }
+
+    private static PowerState state(long seconds, float temperature) {
+        return new PowerState(seconds * 1000, temperature, 0.8f, false);
+    }
+
+    @Test
+    public void startReportsTheCurrentPolicy() {
+        ScriptedPowerStateSource source = new ScriptedPowerStateSource(Arrays.asList(state(0, 30.0f)));
+        ProcessingGovernor governor = new ProcessingGovernor(source);
+        RecordingListener listener = new RecordingListener();
+        governor.start(listener);
+
+        assertEquals(1, listener.policies.size());
+        assertEquals(ProcessingGovernor.LEVEL_NOMINAL, listener.last().level);
+        assertEquals(0, listener.last().maxFps, 0);
+        assertFalse(listener.last().cheapCorrection);
+        assertEquals(1.0f, listener.last().resolutionScale, 0);
+        assertTrue(source.isFinished());
+    }
+
+    @Test
+    public void heatRampEscalatesThroughEveryLevel() {
+        ScriptedPowerStateSource source = ScriptedPowerStateSource.heatRamp(30 * 60 * 1000, 10 * 1000, 32.0f, 46.0f);
+        ProcessingGovernor governor = new ProcessingGovernor(source);
+        RecordingListener listener = new RecordingListener();
+        governor.start(listener);
+        source.advanceTo(Long.MAX_VALUE);
+
+        assertTrue(source.isFinished());
+        assertTrue(Arrays.equals(new int[] {
+                ProcessingGovernor.LEVEL_NOMINAL, ProcessingGovernor.LEVEL_WARM,
+                ProcessingGovernor.LEVEL_HOT, ProcessingGovernor.LEVEL_CRITICAL }, listener.levels()));
+
+        ProcessingGovernor.Policy warm = listener.policies.get(1);
+        assertEquals(24.0f, warm.maxFps, 0);
+        assertFalse(warm.cheapCorrection);
+        ProcessingGovernor.Policy hot = listener.policies.get(2);
+        assertTrue(hot.cheapCorrection);
+        assertEquals(1.0f, hot.resolutionScale, 0);
+        ProcessingGovernor.Policy critical = listener.last();
+        assertEquals(10.0f, critical.maxFps, 0);
+        assertTrue(critical.cheapCorrection);
+        assertEquals(0.5f, critical.resolutionScale, 0);
+    }
+
+    @Test
+    public void escalationSkipsLevels() {
+        ScriptedPowerStateSource source = new ScriptedPowerStateSource(Arrays.asList(
+                state(0, 30.0f), state(10, 45.0f)));
+        ProcessingGovernor governor = new ProcessingGovernor(source);
+        RecordingListener listener = new RecordingListener();
+        governor.start(listener);
+        source.advanceTo(10 * 1000);
+
+        assertTrue(Arrays.equals(new int[] {
+                ProcessingGovernor.LEVEL_NOMINAL, ProcessingGovernor.LEVEL_CRITICAL }, listener.levels()));
+    }
+
+    @Test
+    public void recoveryIsDelayedAndGoesOneLevelAtATime() {
+        ScriptedPowerStateSource source = new ScriptedPowerStateSource(Arrays.asList(
+                state(0, 45.0f),
+                // Cool, but within a minute of the last change
+                state(30, 30.0f),
+                state(60, 30.0f),
+                // Due again after another minute
+                state(100, 30.0f),
+                state(120, 30.0f),
+                state(180, 30.0f)));
+        ProcessingGovernor governor = new ProcessingGovernor(source);
+        RecordingListener listener = new RecordingListener();
+        governor.start(listener);
+
+        source.advanceTo(0);
+        assertEquals(ProcessingGovernor.LEVEL_CRITICAL, governor.getPolicy().level);
+        source.advanceTo(30 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_CRITICAL, governor.getPolicy().level);
+        source.advanceTo(60 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_HOT, governor.getPolicy().level);
+        source.advanceTo(100 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_HOT, governor.getPolicy().level);
+        source.advanceTo(120 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_WARM, governor.getPolicy().level);
+        source.advanceTo(180 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_NOMINAL, governor.getPolicy().level);
+
+        assertTrue(Arrays.equals(new int[] {
+                ProcessingGovernor.LEVEL_NOMINAL, ProcessingGovernor.LEVEL_CRITICAL,
+                ProcessingGovernor.LEVEL_HOT, ProcessingGovernor.LEVEL_WARM,
+                ProcessingGovernor.LEVEL_NOMINAL }, listener.levels()));
+    }
+
+    @Test
+    public void recoveryNeedsHysteresis() {
+        ScriptedPowerStateSource source = new ScriptedPowerStateSource(Arrays.asList(
+                state(0, 42.0f),
+                // Below the HOT threshold, but not by enough
+                state(120, 40.0f),
+                state(240, 39.0f)));
+        ProcessingGovernor governor = new ProcessingGovernor(source);
+        RecordingListener listener = new RecordingListener();
+        governor.start(listener);
+
+        source.advanceTo(120 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_HOT, governor.getPolicy().level);
+        source.advanceTo(240 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_WARM, governor.getPolicy().level);
+    }
+
+    @Test
+    public void lowBatteryKeepsWarmUntilCharging() {
+        ScriptedPowerStateSource source = new ScriptedPowerStateSource(Arrays.asList(
+                new PowerState(0, 30.0f, 0.5f, false),
+                new PowerState(10 * 1000, 30.0f, 0.1f, false),
+                new PowerState(120 * 1000, 30.0f, 0.1f, false),
+                new PowerState(180 * 1000, 30.0f, 0.1f, true)));
+        ProcessingGovernor governor = new ProcessingGovernor(source);
+        RecordingListener listener = new RecordingListener();
+        governor.start(listener);
+
+        source.advanceTo(10 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_WARM, governor.getPolicy().level);
+        source.advanceTo(120 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_WARM, governor.getPolicy().level);
+        source.advanceTo(180 * 1000);
+        assertEquals(ProcessingGovernor.LEVEL_NOMINAL, governor.getPolicy().level);
+    }
+
+    @Test
+    public void stopDetachesTheListener() {
+        ScriptedPowerStateSource source = new ScriptedPowerStateSource(Arrays.asList(
+                state(0, 30.0f), state(10, 45.0f)));
+        ProcessingGovernor governor = new ProcessingGovernor(source);
+        RecordingListener listener = new RecordingListener();
+        governor.start(listener);
+        governor.stop();
+
+        assertEquals(0, source.advanceTo(10 * 1000));
+        assertEquals(1, listener.policies.size());
+        assertFalse(source.isFinished());
+    }
+}
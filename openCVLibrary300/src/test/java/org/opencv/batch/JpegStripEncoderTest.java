@@ -0,0 +1,151 @@
+package org.opencv.batch;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+import org.opencv.capture.JpegSegments;
+
+/**
+ * Decodes the encoder output with javax.imageio, which is the reference decoder on the JVM.
+ */
+public class JpegStripEncoderTest {
+
+    // Smooth gradients with some detail, so the PSNR reflects the quantization and not noise
+    private static byte[] image(int width, int height, int channels) {
+        byte[] pixels = new byte[width * height * channels];
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i += channels) {
+                double detail = 24 * Math.sin(x * 0.3) * Math.cos(y * 0.2);
+                pixels[i] = (byte) clamp(x * 255.0 / width + detail);
+                pixels[i + 1] = (byte) clamp(y * 255.0 / height - detail);
+                pixels[i + 2] = (byte) clamp(128 + 100 * Math.sin((x + y) * 0.05));
+                if (channels == 4)
+                    pixels[i + 3] = (byte) 255;
+            }
+        }
+        return pixels;
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    private static byte[] encode(byte[] pixels, int width, int height, int channels, int quality, int stripHeight)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JpegStripEncoder encoder = new JpegStripEncoder(out, width, height, quality);
+        int stride = width * channels;
+        for (int y = 0; y < height; y += stripHeight)
+            encoder.writeRows(pixels, y * stride, stride, channels, Math.min(stripHeight, height - y));
+        encoder.finish();
+        return out.toByteArray();
+    }
+
+    private static double psnr(byte[] pixels, int channels, BufferedImage decoded) {
+        int width = decoded.getWidth();
+        int height = decoded.getHeight();
+        double sum = 0;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i += channels) {
+                int rgb = decoded.getRGB(x, y);
+                double r = ((rgb >> 16) & 0xFF) - (pixels[i] & 0xFF);
+                double g = ((rgb >> 8) & 0xFF) - (pixels[i + 1] & 0xFF);
+                double b = (rgb & 0xFF) - (pixels[i + 2] & 0xFF);
+                sum += r * r + g * g + b * b;
+            }
+        }
+        double mse = sum / (width * height * 3);
+        return 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static double check(int width, int height, int channels, int quality) throws IOException {
+        byte[] pixels = image(width, height, channels);
+        byte[] jpeg = encode(pixels, width, height, channels, quality, 8);
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull("not decodable", decoded);
+        assertEquals(width, decoded.getWidth());
+        assertEquals(height, decoded.getHeight());
+        return psnr(pixels, channels, decoded);
+    }
+
+    @Test
+    public void quality90() throws IOException {
+        double psnr = check(128, 96, 3, 90);
+        assertTrue("PSNR " + psnr, psnr > 40);
+    }
+
+    @Test
+    public void quality100() throws IOException {
+        double psnr = check(128, 96, 4, 100);
+        assertTrue("PSNR " + psnr, psnr > 48);
+    }
+
+    @Test
+    public void widthsNotMultipleOf8() throws IOException {
+        int[][] sizes = { { 1, 1 }, { 7, 5 }, { 13, 9 }, { 101, 37 } };
+        for (int[] size : sizes) {
+            double psnr = check(size[0], size[1], 3, 90);
+            assertTrue(size[0] + "x" + size[1] + " PSNR " + psnr, psnr > 35);
+        }
+    }
+
+    @Test
+    public void outputDoesNotDependOnStripHeight() throws IOException {
+        int[] widths = { 64, 67 };
+        int[] stripHeights = { 1, 7, 8, 128 };
+        for (int width : widths) {
+            int height = 45;
+            byte[] pixels = image(width, height, 4);
+            byte[] expected = encode(pixels, width, height, 4, 90, height);
+            for (int stripHeight : stripHeights)
+                assertArrayEquals("width " + width + ", strips of " + stripHeight, expected,
+                        encode(pixels, width, height, 4, 90, stripHeight));
+        }
+    }
+
+    @Test
+    public void keepsMetadata() throws IOException {
+        // APP1 with an Exif identifier and a made up payload, then a comment
+        byte[] metadata = {
+            (byte) 0xFF, (byte) 0xE1, 0, 10, 'E', 'x', 'i', 'f', 0, 0, 1, 2,
+            (byte) 0xFF, (byte) 0xFE, 0, 5, 'a', 'b', 'c'
+        };
+        byte[] pixels = image(16, 16, 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JpegStripEncoder encoder = new JpegStripEncoder(out, 16, 16, 90, metadata);
+        encoder.writeRows(pixels, 0, 16 * 3, 3, 16);
+        encoder.finish();
+        byte[] jpeg = out.toByteArray();
+
+        JpegSegments segments = new JpegSegments();
+        assertTrue(segments.parse(jpeg, jpeg.length));
+        assertEquals(2, segments.getCount());
+        byte[] copied = new byte[segments.getMetadataLength()];
+        segments.copyMetadata(copied, 0);
+        assertArrayEquals(metadata, copied);
+        assertNotNull(ImageIO.read(new ByteArrayInputStream(jpeg)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishRequiresEveryRow() throws IOException {
+        JpegStripEncoder encoder = new JpegStripEncoder(new ByteArrayOutputStream(), 8, 8, 90);
+        encoder.writeRows(new byte[8 * 3 * 4], 0, 8 * 3, 3, 4);
+        encoder.finish();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsExtraRows() throws IOException {
+        JpegStripEncoder encoder = new JpegStripEncoder(new ByteArrayOutputStream(), 8, 2, 90);
+        encoder.writeRows(new byte[8 * 3 * 3], 0, 8 * 3, 3, 3);
+    }
+}
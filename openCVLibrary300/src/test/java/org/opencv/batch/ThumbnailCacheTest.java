@@ -0,0 +1,265 @@
+package org.opencv.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencv.correction.JavaCorrection;
+
+public class ThumbnailCacheTest {
+
+    private static final int SIDE = 8;
+    // Pixels plus the per entry overhead the cache accounts for
+    private static final int ENTRY_BYTES = SIDE * SIDE * 4 + 64;
+
+    /* Makes flat thumbnails without native code and decodes the disk level with ImageIO */
+    private static class FakeCache extends ThumbnailCache {
+        final Map<String, Integer> generated = Collections.synchronizedMap(new HashMap<String, Integer>());
+        volatile CountDownLatch gate;
+        volatile int reads;
+
+        FakeCache(File directory, long memoryLimit, long diskLimit) {
+            super(directory, memoryLimit, diskLimit, SIDE, JavaCorrection.NAME, 90, null, 1);
+        }
+
+        @Override
+        Thumbnail generate(String path) throws IOException {
+            CountDownLatch gate = this.gate;
+            if (gate != null) {
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e.toString());
+                }
+            }
+            synchronized (generated) {
+                Integer count = generated.get(path);
+                generated.put(path, count == null ? 1 : count + 1);
+            }
+            byte[] rgba = new byte[SIDE * SIDE * 4];
+            for (int i = 0; i < rgba.length; i++)
+                rgba[i] = (byte) (path.hashCode() + i / 4);
+            return new Thumbnail(SIDE, SIDE, rgba);
+        }
+
+        @Override
+        Thumbnail readFile(File file) {
+            try {
+                BufferedImage image = ImageIO.read(file);
+                if (image == null)
+                    return null;
+                reads++;
+                return new Thumbnail(image.getWidth(), image.getHeight(), new byte[image.getWidth() * image.getHeight() * 4]);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+
+        int generated(String path) {
+            Integer count = generated.get(path);
+            return count == null ? 0 : count;
+        }
+    }
+
+    private static class RecordingListener implements ThumbnailCache.Listener {
+        final List<String> paths = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done;
+
+        RecordingListener(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onThumbnail(String path, ThumbnailCache.Thumbnail thumbnail) {
+            assertNotNull(thumbnail);
+            paths.add(path);
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("listener not called", done.await(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private File mDirectory;
+    private FakeCache mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = File.createTempFile("thumbnails", "");
+        assertTrue(mDirectory.delete());
+    }
+
+    @After
+    public void tearDown() {
+        if (mCache != null)
+            mCache.close();
+        File[] files = mDirectory.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        mDirectory.delete();
+    }
+
+    private ThumbnailCache.Thumbnail load(String path) throws InterruptedException {
+        RecordingListener listener = new RecordingListener(1);
+        ThumbnailCache.Thumbnail thumbnail = mCache.get(path, listener);
+        if (thumbnail != null)
+            return thumbnail;
+        listener.await();
+        thumbnail = mCache.get(path, null);
+        assertNotNull(path + " not kept in memory", thumbnail);
+        return thumbnail;
+    }
+
+    @Test
+    public void requestsForOnePathAreCoalesced() throws InterruptedException {
+        mCache = new FakeCache(mDirectory, 1 << 20, 1 << 20);
+        mCache.gate = new CountDownLatch(1);
+        RecordingListener blocker = new RecordingListener(1);
+        assertNull(mCache.get("blocker", blocker));
+
+        RecordingListener first = new RecordingListener(1);
+        RecordingListener second = new RecordingListener(1);
+        assertNull(mCache.get("a", first));
+        assertNull(mCache.get("a", second));
+        mCache.gate.countDown();
+        first.await();
+        second.await();
+
+        assertEquals(1, mCache.generated("a"));
+        assertNotNull(mCache.get("a", null));
+        assertEquals(1, mCache.generated("a"));
+    }
+
+    @Test
+    public void cancelledRequestIsNotMade() throws InterruptedException {
+        mCache = new FakeCache(mDirectory, 1 << 20, 1 << 20);
+        mCache.gate = new CountDownLatch(1);
+        assertNull(mCache.get("blocker", new RecordingListener(1)));
+
+        // Served last first, so b is done once a was skipped
+        RecordingListener later = new RecordingListener(1);
+        assertNull(mCache.get("b", later));
+        RecordingListener cancelled = new RecordingListener(1);
+        assertNull(mCache.get("a", cancelled));
+        mCache.cancel("a", cancelled);
+        mCache.gate.countDown();
+        later.await();
+
+        assertEquals(0, mCache.generated("a"));
+        assertTrue(cancelled.paths.isEmpty());
+        // Requested again after the cancel, it is made
+        load("a");
+        assertEquals(1, mCache.generated("a"));
+    }
+
+    @Test
+    public void memoryIsBoundedByBytesAndEvictsLeastRecentlyUsed() throws InterruptedException {
+        mCache = new FakeCache(mDirectory, 3 * ENTRY_BYTES + ENTRY_BYTES / 2, 1 << 20);
+        load("a");
+        load("b");
+        load("c");
+        assertEquals(3 * ENTRY_BYTES, mCache.getMemoryBytes());
+
+        // a is used again, so b is the eldest when d comes in
+        assertNotNull(mCache.get("a", null));
+        load("d");
+        assertEquals(3 * ENTRY_BYTES, mCache.getMemoryBytes());
+        assertNotNull(mCache.get("a", null));
+        assertNotNull(mCache.get("c", null));
+        assertNotNull(mCache.get("d", null));
+        RecordingListener listener = new RecordingListener(1);
+        assertNull(mCache.get("b", listener));
+        listener.await();
+
+        mCache.invalidate("a");
+        assertEquals(3 * ENTRY_BYTES, mCache.getMemoryBytes());
+        mCache.clearMemory();
+        assertEquals(0, mCache.getMemoryBytes());
+    }
+
+    @Test
+    public void diskLevelServesThumbnailsDroppedFromMemory() throws InterruptedException, IOException {
+        File source = File.createTempFile("photo", ".jpg");
+        try {
+            writeBytes(source, 10);
+            mCache = new FakeCache(mDirectory, 1 << 20, 1 << 20);
+            String path = source.getPath();
+            load(path);
+            assertEquals(1, mCache.generated(path));
+
+            mCache.clearMemory();
+            load(path);
+            assertEquals(1, mCache.generated(path));
+            assertEquals(1, mCache.reads);
+
+            // An edited photo has another disk key once its memory entry is dropped
+            writeBytes(source, 20);
+            assertNotNull(mCache.get(path, null));
+            mCache.invalidate(path);
+            load(path);
+            assertEquals(2, mCache.generated(path));
+            assertEquals(1, mCache.reads);
+        } finally {
+            source.delete();
+        }
+    }
+
+    @Test
+    public void diskLevelIsTrimmedToItsLimit() throws InterruptedException {
+        mCache = new FakeCache(mDirectory, 1 << 20, 1 << 20);
+        load("first");
+        long fileSize = directorySize();
+        assertTrue(fileSize > 0);
+        mCache.close();
+
+        long limit = 4 * fileSize;
+        mCache = new FakeCache(mDirectory, 1 << 20, limit);
+        for (int i = 0; i < 20; i++) {
+            load("photo" + i);
+            assertTrue("disk level at " + directorySize() + " of " + limit, directorySize() <= limit);
+        }
+        File[] files = mDirectory.listFiles();
+        assertTrue(files.length > 0);
+        for (File file : files)
+            assertFalse(file.getName().endsWith(".tmp"));
+    }
+
+    private long directorySize() {
+        long total = 0;
+        File[] files = mDirectory.listFiles();
+        if (files != null)
+            for (File file : files)
+                total += file.length();
+        return total;
+    }
+
+    private static void writeBytes(File file, int length) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.opencv.capture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CaptureWriterTest {
+
+    private static class RecordingCallback implements CaptureWriter.Callback {
+        final List<File> written = Collections.synchronizedList(new ArrayList<File>());
+        final List<File> failed = Collections.synchronizedList(new ArrayList<File>());
+
+        @Override
+        public void onCaptureWritten(File file) {
+            written.add(file);
+        }
+
+        @Override
+        public void onCaptureFailed(File file, IOException e) {
+            assertNotNull(e);
+            failed.add(file);
+        }
+    }
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("capture", ".jpg");
+        assertTrue(mFile.delete());
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test(timeout = 10000)
+    public void writesAndSyncsBeforeClose() {
+        CaptureWriter writer = new CaptureWriter(2, 16);
+        RecordingCallback callback = new RecordingCallback();
+        assertTrue(writer.write(mFile, new byte[100], callback));
+        writer.close();
+
+        assertEquals(Collections.singletonList(mFile), callback.written);
+        assertTrue(callback.failed.isEmpty());
+        assertEquals(100, mFile.length());
+    }
+
+    @Test(timeout = 10000)
+    public void submitAfterCloseFailsTheCallback() {
+        CaptureWriter writer = new CaptureWriter(1, 16);
+        CaptureWriter.Slot slot = writer.acquire(16);
+        assertNotNull(slot);
+        writer.close();
+        assertNull(writer.acquire(16));
+
+        RecordingCallback callback = new RecordingCallback();
+        writer.submit(slot, 16, mFile, callback);
+        assertEquals(Collections.singletonList(mFile), callback.failed);
+        assertTrue(callback.written.isEmpty());
+        assertFalse(mFile.exists());
+    }
+}
@@ -0,0 +1,157 @@
+package org.opencv.capture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameTraceReaderTest {
+
+    private static final int WIDTH = 4;
+    private static final int HEIGHT = 2;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+
+    private File mFile;
+    private ByteArrayOutputStream mBytes;
+    private DataOutputStream mOut;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("trace", ".bin");
+        reset();
+    }
+
+    private void reset() {
+        mBytes = new ByteArrayOutputStream();
+        mOut = new DataOutputStream(mBytes);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    private void header(int width, int height) throws IOException {
+        mOut.writeInt(FrameTrace.MAGIC);
+        mOut.writeInt(FrameTrace.VERSION);
+        mOut.writeInt(width);
+        mOut.writeInt(height);
+        mOut.writeInt(FrameTrace.FORMAT_NV21);
+    }
+
+    private void chunk(int tag, int length, long timestamp, byte[] payload) throws IOException {
+        mOut.writeInt(tag);
+        mOut.writeInt(length);
+        mOut.writeLong(timestamp);
+        mOut.write(payload);
+    }
+
+    private FrameTraceReader open() throws IOException {
+        mOut.flush();
+        FileOutputStream file = new FileOutputStream(mFile);
+        try {
+            mBytes.writeTo(file);
+        } finally {
+            file.close();
+        }
+        return new FrameTraceReader(mFile);
+    }
+
+    private static byte[] frame(int value) {
+        byte[] frame = new byte[FRAME_SIZE];
+        for (int i = 0; i < frame.length; i++)
+            frame[i] = (byte) (value + i);
+        return frame;
+    }
+
+    @Test
+    public void readsFramesAndSettings() throws IOException {
+        header(WIDTH, HEIGHT);
+        byte[] settings = "engine=java".getBytes("UTF-8");
+        chunk(FrameTrace.TAG_SETTINGS, settings.length, 0, settings);
+        chunk(FrameTrace.TAG_FRAME, FRAME_SIZE, 100, frame(1));
+        chunk(FrameTrace.TAG_FRAME, FRAME_SIZE, 200, frame(2));
+        chunk(FrameTrace.TAG_END, 16, 300, new byte[16]);
+
+        FrameTraceReader reader = open();
+        try {
+            assertTrue(reader.nextFrame());
+            assertEquals(100, reader.getTimestamp());
+            assertEquals("engine=java", reader.getSettings());
+            assertArrayEquals(frame(1), reader.getFrame());
+            assertTrue(reader.nextFrame());
+            assertEquals(200, reader.getTimestamp());
+            assertArrayEquals(frame(2), reader.getFrame());
+            assertFalse(reader.nextFrame());
+            assertTrue(reader.isComplete());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void traceCutShortEndsAtTheLastWholeFrame() throws IOException {
+        header(WIDTH, HEIGHT);
+        chunk(FrameTrace.TAG_FRAME, FRAME_SIZE, 100, frame(1));
+        chunk(FrameTrace.TAG_FRAME, FRAME_SIZE, 200, new byte[FRAME_SIZE / 2]);
+
+        FrameTraceReader reader = open();
+        try {
+            assertTrue(reader.nextFrame());
+            assertFalse(reader.nextFrame());
+            assertFalse(reader.isComplete());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void assertCorrupt(int length) throws IOException {
+        reset();
+        header(WIDTH, HEIGHT);
+        chunk(FrameTrace.TAG_SETTINGS, length, 0, new byte[8]);
+
+        FrameTraceReader reader = open();
+        try {
+            reader.nextFrame();
+            fail("chunk length " + length + " accepted");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rejectsCorruptChunkLengths() throws IOException {
+        assertCorrupt(-1);
+        assertCorrupt(Integer.MIN_VALUE);
+        assertCorrupt(9);
+        assertCorrupt(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void rejectsInvalidFrameSizes() throws IOException {
+        int[][] sizes = { { 0, 2 }, { -4, 2 }, { 3, 2 }, { 65536, 65536 } };
+        for (int[] size : sizes) {
+            reset();
+            header(size[0], size[1]);
+            try {
+                open().close();
+                fail(size[0] + "x" + size[1] + " accepted");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.opencv.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class MatTaskGraphTest {
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(3);
+
+    /* Appends its name to the shared log, after a short wait so the others get to run meanwhile */
+    private static class Step implements Runnable {
+        final String name;
+        final List<String> log;
+        volatile boolean fail;
+
+        Step(String name, List<String> log) {
+            this.name = name;
+            this.log = log;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail)
+                throw new IllegalStateException(name + " failed");
+            log.add(name);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    private static List<String> newLog() {
+        return Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Test(timeout = 10000)
+    public void diamondRunsInDependencyOrder() {
+        List<String> log = newLog();
+        MatTaskGraph graph = new MatTaskGraph(mExecutor);
+        MatTaskGraph.Task a = graph.add(new Step("a", log));
+        MatTaskGraph.Task b = graph.add(new Step("b", log), a);
+        MatTaskGraph.Task c = graph.add(new Step("c", log), a);
+        graph.add(new Step("d", log), b, c);
+
+        // The graph is meant to be run once per frame
+        for (int i = 0; i < 50; i++) {
+            log.clear();
+            graph.run();
+            assertEquals(4, log.size());
+            assertEquals("a", log.get(0));
+            assertEquals("d", log.get(3));
+            assertTrue(log.contains("b"));
+            assertTrue(log.contains("c"));
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void failureSkipsDependentsAndIsRethrown() {
+        List<String> log = newLog();
+        MatTaskGraph graph = new MatTaskGraph(mExecutor);
+        MatTaskGraph.Task a = graph.add(new Step("a", log));
+        Step failing = new Step("b", log);
+        failing.fail = true;
+        MatTaskGraph.Task b = graph.add(failing, a);
+        MatTaskGraph.Task c = graph.add(new Step("c", log), a);
+        graph.add(new Step("d", log), b, c);
+
+        try {
+            graph.run();
+            fail("the failure of b was not rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("b failed", e.getMessage());
+        }
+        assertEquals("a", log.get(0));
+        assertFalse(log.contains("b"));
+        assertFalse(log.contains("d"));
+
+        // The next run starts without the old failure
+        failing.fail = false;
+        log.clear();
+        graph.run();
+        assertEquals(4, log.size());
+        assertEquals("d", log.get(3));
+    }
+
+    @Test(timeout = 10000)
+    public void rethrowsTheFirstFailureOnly() {
+        MatTaskGraph graph = new MatTaskGraph(mExecutor);
+        final IllegalStateException first = new IllegalStateException("first");
+        MatTaskGraph.Task a = graph.add(new Runnable() {
+            @Override
+            public void run() {
+                throw first;
+            }
+        });
+        graph.add(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("second");
+            }
+        }, a);
+
+        try {
+            graph.run();
+            fail("no failure rethrown");
+        } catch (IllegalStateException e) {
+            assertSame(first, e);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void shutDownExecutorDoesNotBlockRun() {
+        mExecutor.shutdown();
+        List<String> log = newLog();
+        MatTaskGraph graph = new MatTaskGraph(mExecutor);
+        // b and the second dependent of a go to the executor, which rejects them
+        MatTaskGraph.Task a = graph.add(new Step("a", log));
+        graph.add(new Step("b", log));
+        MatTaskGraph.Task c = graph.add(new Step("c", log), a);
+        MatTaskGraph.Task d = graph.add(new Step("d", log), a);
+        graph.add(new Step("e", log), c, d);
+
+        try {
+            graph.run();
+            fail("the rejection was not rethrown");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertFalse(log.contains("e"));
+    }
+
+    @Test(timeout = 10000)
+    public void tasksCannotBeAddedAfterTheFirstRun() {
+        MatTaskGraph graph = new MatTaskGraph(mExecutor);
+        graph.add(new Step("a", newLog()));
+        graph.run();
+        try {
+            graph.add(new Step("b", newLog()));
+            fail("task added to a graph that already ran");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dependenciesMustBelongToTheGraph() {
+        MatTaskGraph other = new MatTaskGraph(mExecutor);
+        MatTaskGraph.Task foreign = other.add(new Step("a", newLog()));
+        new MatTaskGraph(mExecutor).add(new Step("b", newLog()), foreign);
+    }
+}
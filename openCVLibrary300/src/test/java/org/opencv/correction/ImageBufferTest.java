@@ -0,0 +1,157 @@
+package org.opencv.correction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The ImageBuffer paths of the color pipeline against the byte[] paths, which are the reference
+ * the benchmarks and the camera view compare with. Runs without the native library.
+ */
+public class ImageBufferTest {
+
+    private static final byte PADDING = (byte) 0xA5;
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // Copies packed rows into a direct buffer whose rows are stride bytes apart, filling the
+    // padding with a marker
+    private static ByteBuffer strided(byte[] packed, int row, int rows, int stride) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(stride * rows);
+        for (int i = 0; i < buffer.capacity(); i++)
+            buffer.put(i, PADDING);
+        for (int y = 0; y < rows; y++) {
+            buffer.position(y * stride);
+            buffer.put(packed, y * row, row);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    // Rows of an image, without the padding
+    private static byte[] packed(ImageBuffer image, int rows) {
+        int row = image.getWidth() * ImageBuffer.bytesPerPixel(image.getFormat());
+        byte[] packed = new byte[row * rows];
+        ByteBuffer data = image.getData();
+        for (int y = 0; y < rows; y++) {
+            data.position(y * image.getStride());
+            data.get(packed, y * row, row);
+        }
+        return packed;
+    }
+
+    private static void assertPaddingUntouched(ImageBuffer image, int rows) {
+        int row = image.getWidth() * ImageBuffer.bytesPerPixel(image.getFormat());
+        ByteBuffer data = image.getData();
+        for (int y = 0; y < rows; y++) {
+            for (int x = row; x < image.getStride(); x++)
+                assertEquals("padding of row " + y, PADDING, data.get(y * image.getStride() + x));
+        }
+    }
+
+    private static void checkPipeline(int width, int height, int srcPadding, int dstPadding) {
+        byte[] nv21 = random(width * height * 3 / 2, width * 31 + height);
+        byte[] expected = new byte[width * height * 4];
+        Nv21Converter.toRgba(nv21, width, height, expected);
+        JavaCorrection.correctRgba(expected, 0, expected.length);
+
+        int srcStride = width + srcPadding;
+        int dstStride = width * 4 + dstPadding;
+        ImageBuffer src = ImageBuffer.wrap(strided(nv21, width, height * 3 / 2, srcStride),
+                width, height, srcStride, ImageBuffer.FORMAT_NV21);
+        ImageBuffer dst = ImageBuffer.wrap(strided(new byte[width * height * 4], width * 4, height, dstStride),
+                width, height, dstStride, ImageBuffer.FORMAT_RGBA);
+        Nv21Converter.toRgba(src, dst);
+        JavaCorrection.correct(dst);
+
+        assertArrayEquals(width + "x" + height, expected, packed(dst, height));
+        assertPaddingUntouched(dst, height);
+    }
+
+    @Test
+    public void pipelineMatchesPackedArrays() {
+        checkPipeline(64, 48, 0, 0);
+        checkPipeline(640, 480, 0, 0);
+    }
+
+    @Test
+    public void pipelineHonorsPaddedStrides() {
+        checkPipeline(64, 48, 16, 32);
+        // Widths that are not a multiple of 4, with padding that is not either
+        checkPipeline(18, 6, 3, 7);
+        checkPipeline(322, 242, 30, 8);
+    }
+
+    @Test
+    public void correctionHandlesOddWidths() {
+        int[] widths = { 1, 3, 37, 641 };
+        for (int width : widths) {
+            int height = 5;
+            byte[] rgba = random(width * height * 4, width);
+            byte[] expected = rgba.clone();
+            JavaCorrection.correctRgba(expected, 0, expected.length);
+
+            int stride = width * 4 + 12;
+            ImageBuffer image = ImageBuffer.wrap(strided(rgba, width * 4, height, stride),
+                    width, height, stride, ImageBuffer.FORMAT_RGBA);
+            JavaCorrection.correct(image);
+
+            assertArrayEquals("width " + width, expected, packed(image, height));
+            assertPaddingUntouched(image, height);
+        }
+    }
+
+    @Test
+    public void allocateIsTightlyPacked() {
+        ImageBuffer rgba = ImageBuffer.allocate(7, 3, ImageBuffer.FORMAT_RGBA);
+        assertEquals(28, rgba.getStride());
+        assertEquals(7 * 3 * 4, rgba.getData().capacity());
+
+        ImageBuffer nv21 = ImageBuffer.allocate(8, 4, ImageBuffer.FORMAT_NV21);
+        assertEquals(8, nv21.getStride());
+        assertEquals(8 * 4 * 3 / 2, nv21.getData().capacity());
+    }
+
+    @Test
+    public void rejectsBadGeometry() {
+        try {
+            ImageBuffer.allocate(7, 4, ImageBuffer.FORMAT_NV21);
+            fail("NV21 with an odd width");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            ImageBuffer.wrap(ByteBuffer.allocateDirect(1000), 10, 10, 39, ImageBuffer.FORMAT_RGBA);
+            fail("stride shorter than a row");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            ImageBuffer.wrap(ByteBuffer.allocateDirect(399), 10, 10, 40, ImageBuffer.FORMAT_RGBA);
+            fail("buffer too small");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void converterRejectsMismatchedImages() {
+        ImageBuffer nv21 = ImageBuffer.allocate(8, 4, ImageBuffer.FORMAT_NV21);
+        try {
+            Nv21Converter.toRgba(nv21, ImageBuffer.allocate(8, 2, ImageBuffer.FORMAT_RGBA));
+            fail("different heights");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Nv21Converter.toRgba(nv21, ImageBuffer.allocate(8, 4, ImageBuffer.FORMAT_GRAY));
+            fail("gray destination");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
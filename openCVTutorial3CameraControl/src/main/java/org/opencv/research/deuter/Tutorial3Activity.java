@@ -1,19 +1,27 @@
 package org.opencv.research.deuter;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.ListIterator;
 
 import org.opencv.android.BaseLoaderCallback;
+import org.opencv.android.BatteryPowerStateSource;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewFrame;
 import org.opencv.android.LoaderCallbackInterface;
 import org.opencv.android.OpenCVLoader;
+import org.opencv.android.ProcessingGovernor;
+import org.opencv.capture.CaptureWriter;
 import org.opencv.core.Mat;
 import org.opencv.android.CameraBridgeViewBase.CvCameraViewListener2;
 
 import android.annotation.SuppressLint;
 import android.app.Activity;
+import android.content.Intent;
 import android.hardware.Camera.Size;
 import android.os.Bundle;
 import android.os.Environment;
@@ -37,6 +45,20 @@ public class Tutorial3Activity extends Activity implements CvCameraViewListener2
     private SubMenu mColorEffectsMenu;
     private MenuItem[] mResolutionMenuItems;
     private SubMenu mResolutionMenu;
+    private MenuItem mTraceMenuItem;
+    private boolean mMemoryMeterEnabled;
+    private MenuItem mCaptureMenuItem;
+    private MenuItem mRecordMenuItem;
+    private int mCaptureMode = CAPTURE_CAMERA;
+
+    private static final int CAPTURE_CAMERA = 0;
+    private static final int CAPTURE_CORRECTED = 1;
+    private static final int CAPTURE_BURST = 2;
+    private static final int CAPTURE_CORRECTED_PHOTO = 3;
+    private static final int REQUEST_PICK_IMAGE = 1;
+    private static final String[] CAPTURE_MODE_TITLES = { "Capture corrected", "Capture burst", "Capture corrected photo", "Capture camera" };
+    @SuppressLint("SimpleDateFormat")
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
     public static final String TAGG = "KTB";
 
     static {
@@ -91,6 +113,7 @@ public class Tutorial3Activity extends Activity implements CvCameraViewListener2
         mOpenCvCameraView.setVisibility(SurfaceView.VISIBLE);
 
         mOpenCvCameraView.setCvCameraViewListener(this);
+        mOpenCvCameraView.setProcessingGovernor(new ProcessingGovernor(new BatteryPowerStateSource(this)));
     }
 
     @Override
@@ -116,11 +139,15 @@ public class Tutorial3Activity extends Activity implements CvCameraViewListener2
 
     public void onDestroy() {
         super.onDestroy();
-        if (mOpenCvCameraView != null)
+        if (mOpenCvCameraView != null) {
             mOpenCvCameraView.disableView();
+            mOpenCvCameraView.closeCapture();
+        }
     }
 
     public void onCameraViewStarted(int width, int height) {
+        // Instant replay is always on, the buffer is kept until closeCapture()
+        mOpenCvCameraView.enableReplayBuffer();
     }
 
     public void onCameraViewStopped() {
@@ -133,6 +160,13 @@ public class Tutorial3Activity extends Activity implements CvCameraViewListener2
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
+        mTraceMenuItem = menu.add(3, 0, Menu.NONE, "Record trace");
+        menu.add(4, 0, Menu.NONE, "Memory overlay");
+        mCaptureMenuItem = menu.add(5, 0, Menu.NONE, CAPTURE_MODE_TITLES[mCaptureMode]);
+        mRecordMenuItem = menu.add(6, 0, Menu.NONE, "Record video");
+        menu.add(7, 0, Menu.NONE, "Save replay");
+        menu.add(8, 0, Menu.NONE, "Correct gallery image");
+
 //        List<String> effects = mOpenCvCameraView.getEffectList();
         List<String> effects = null; // = mOpenCvCameraView.getEffectList();
 
@@ -187,21 +221,152 @@ public class Tutorial3Activity extends Activity implements CvCameraViewListener2
             String caption = Integer.valueOf(resolution.width).toString() + "x" + Integer.valueOf(resolution.height).toString();
             Toast.makeText(this, caption, Toast.LENGTH_SHORT).show();
         }
+        else if (item.getGroupId() == 3)
+        {
+            toggleFrameTrace();
+        }
+        else if (item.getGroupId() == 4)
+        {
+            mMemoryMeterEnabled = !mMemoryMeterEnabled;
+            if (mMemoryMeterEnabled)
+                mOpenCvCameraView.enableMemoryMeter();
+            else
+                mOpenCvCameraView.disableMemoryMeter();
+        }
+        else if (item.getGroupId() == 5)
+        {
+            mCaptureMode = (mCaptureMode + 1) % CAPTURE_MODE_TITLES.length;
+            mCaptureMenuItem.setTitle(CAPTURE_MODE_TITLES[mCaptureMode]);
+        }
+        else if (item.getGroupId() == 6)
+        {
+            toggleRecording();
+        }
+        else if (item.getGroupId() == 7)
+        {
+            File file = new File(Environment.getExternalStorageDirectory(),
+                    "replay_" + mDateFormat.format(new Date()) + ".avi");
+            if (!mOpenCvCameraView.saveReplay(file, mCaptureCallback))
+                Toast.makeText(this, "Nothing to save", Toast.LENGTH_SHORT).show();
+        }
+        else if (item.getGroupId() == 8)
+        {
+            Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.setType("image/*");
+            startActivityForResult(intent, REQUEST_PICK_IMAGE);
+        }
 
         return true;
     }
 
-    @SuppressLint("SimpleDateFormat")
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_PICK_IMAGE || resultCode != RESULT_OK || data == null || data.getData() == null)
+            return;
+
+        InputStream in;
+        try {
+            in = getContentResolver().openInputStream(data.getData());
+        } catch (FileNotFoundException e) {
+            Log.e(TAG, "Cannot open " + data.getData(), e);
+            Toast.makeText(this, "Cannot open image", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        File file = new File(Environment.getExternalStorageDirectory(),
+                "corrected_" + mDateFormat.format(new Date()) + ".jpg");
+        mOpenCvCameraView.correctImage(in, file, mCaptureCallback);
+        Toast.makeText(this, "Correcting into " + file.getPath(), Toast.LENGTH_SHORT).show();
+    }
+
+    private void toggleFrameTrace() {
+        if (mOpenCvCameraView.isFrameTraceRecording()) {
+            mOpenCvCameraView.stopFrameTrace();
+            mTraceMenuItem.setTitle("Record trace");
+            Toast.makeText(this, "Frame trace saved", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        File file = new File(Environment.getExternalStorageDirectory(),
+                "frame_trace_" + mDateFormat.format(new Date()) + ".dtrc");
+        try {
+            mOpenCvCameraView.startFrameTrace(file);
+            mTraceMenuItem.setTitle("Stop trace");
+            Toast.makeText(this, "Recording " + file.getPath(), Toast.LENGTH_SHORT).show();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot start frame trace", e);
+            Toast.makeText(this, "Cannot record frame trace", Toast.LENGTH_SHORT).show();
+        } catch (IllegalStateException e) {
+            // The camera is not connected yet, or was released in the meantime
+            Log.e(TAG, "Cannot start frame trace", e);
+            Toast.makeText(this, "Cannot record frame trace", Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private void toggleRecording() {
+        if (mOpenCvCameraView.isRecording()) {
+            mRecordMenuItem.setTitle("Record video");
+            try {
+                mOpenCvCameraView.stopRecording();
+                Toast.makeText(this, "Video saved", Toast.LENGTH_SHORT).show();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot save video", e);
+                Toast.makeText(this, "Cannot save video", Toast.LENGTH_SHORT).show();
+            }
+            return;
+        }
+
+        File file = new File(Environment.getExternalStorageDirectory(),
+                "deuter_" + mDateFormat.format(new Date()) + ".avi");
+        mOpenCvCameraView.startRecording(file);
+        mRecordMenuItem.setTitle("Stop video");
+        Toast.makeText(this, "Recording " + file.getPath(), Toast.LENGTH_SHORT).show();
+    }
+
     @Override
     public boolean onTouch(View v, MotionEvent event) {
         Log.i(TAG,"onTouch event");
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss");
-        String currentDateandTime = sdf.format(new Date());
+        String currentDateandTime = mDateFormat.format(new Date());
         String fileName = Environment.getExternalStorageDirectory().getPath() +
                                "/sample_picture_" + currentDateandTime + ".jpg";
-        mOpenCvCameraView.takePicture(fileName);
-        Toast.makeText(this, fileName + " saved", Toast.LENGTH_SHORT).show();
+        switch (mCaptureMode) {
+        case CAPTURE_CORRECTED:
+            mOpenCvCameraView.captureFrame(new File(fileName), mCaptureCallback);
+            break;
+        case CAPTURE_BURST:
+            if (!mOpenCvCameraView.captureBurst(new File(fileName), mCaptureCallback))
+                Toast.makeText(this, "Burst in progress", Toast.LENGTH_SHORT).show();
+            break;
+        case CAPTURE_CORRECTED_PHOTO:
+            mOpenCvCameraView.takePicture(fileName, true, mCaptureCallback);
+            break;
+        default:
+            mOpenCvCameraView.takePicture(fileName, mCaptureCallback);
+        }
         return false;
     }
+
+    private final CaptureWriter.Callback mCaptureCallback = new CaptureWriter.Callback() {
+        @Override
+        public void onCaptureWritten(final File file) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(Tutorial3Activity.this, file.getPath() + " saved", Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+
+        @Override
+        public void onCaptureFailed(final File file, IOException e) {
+            Log.e(TAG, "Cannot save " + file.getPath(), e);
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Toast.makeText(Tutorial3Activity.this, "Cannot save " + file.getPath(), Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+    };
 }
 
@@ -1,9 +1,22 @@
 package org.opencv.research.deuter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 
+import org.opencv.android.BitmapRegionStripSource;
 import org.opencv.android.JavaCameraView;
+import org.opencv.batch.StripCorrection;
+import org.opencv.capture.CaptureWriter;
+import org.opencv.capture.JpegCorrection;
+import org.opencv.capture.JpegSegments;
+import org.opencv.correction.CorrectionEngine;
+import org.opencv.correction.CorrectionEngines;
 
 import android.content.Context;
 import android.hardware.Camera;
@@ -16,7 +29,13 @@ public class Tutorial3View extends JavaCameraView implements PictureCallback {
     public String TAGG = "KTB";
 
     private static final String TAG = "Sample::Tutorial3View";
+    private static final int PICTURE_JPEG_QUALITY = 95;
+    // Read ahead for the metadata of picked images, EXIF alone may take 64 KiB
+    private static final int METADATA_LIMIT = 256 * 1024;
     private String mPictureFileName;
+    private CaptureWriter.Callback mPictureCallback;
+    private boolean mCorrectPicture;
+    private JpegCorrection mJpegCorrection;
 
     public Tutorial3View(Context context, AttributeSet attrs) {
         super(context, attrs);
@@ -60,8 +79,26 @@ public class Tutorial3View extends JavaCameraView implements PictureCallback {
     }
 
     public void takePicture(final String fileName) {
+        takePicture(fileName, null);
+    }
+
+    /**
+     * Takes a picture and writes it in the background; callback is invoked on the writer
+     * thread once the file is on storage.
+     */
+    public void takePicture(final String fileName, CaptureWriter.Callback callback) {
+        takePicture(fileName, false, callback);
+    }
+
+    /**
+     * Takes a picture and optionally corrects it at full resolution before it is written.
+     * Corrected pictures keep the EXIF data of the camera JPEG.
+     */
+    public void takePicture(final String fileName, boolean correct, CaptureWriter.Callback callback) {
         Log.i(TAG, "Taking picture");
         this.mPictureFileName = fileName;
+        this.mPictureCallback = callback;
+        this.mCorrectPicture = correct;
         // Postview and jpeg are sent in the same buffers if the queue is not empty when performing a capture.
         // Clear up buffers to avoid mCamera.takePicture to be stuck because of a memory issue
         mCamera.setPreviewCallback(null);
@@ -74,19 +111,118 @@ public class Tutorial3View extends JavaCameraView implements PictureCallback {
     public void onPictureTaken(byte[] data, Camera camera) {
         Log.i(TAG, "Saving a bitmap to file");
         // The camera preview was automatically stopped. Start it again.
-        mCamera.startPreview();
-        mCamera.setPreviewCallback(this);
+        restartPreview();
+
+        File file = new File(mPictureFileName);
+        if (mCorrectPicture) {
+            if (!getJpegCorrection().submit(data, file, mPictureCallback))
+                Log.w(TAG, "Correction busy, dropping " + mPictureFileName);
+            return;
+        }
+
+        // Write the image in a file (in jpeg format) without holding up the preview
+        if (!getCaptureWriter().write(file, data, mPictureCallback))
+            Log.w(TAG, "Capture writer busy, dropping " + mPictureFileName);
+    }
+
+    /**
+     * Corrects a still image of any size, for example one picked from the gallery, into a JPEG
+     * file. The image is decoded, corrected and encoded band by band on a background thread,
+     * which closes in and then invokes the callback. The EXIF and other metadata segments of a
+     * JPEG image are kept, so the orientation and location of camera photos survive.
+     */
+    public void correctImage(final InputStream in, final File file, final CaptureWriter.Callback callback) {
+        // The preview engine is used on the camera thread, so the image gets its own
+        final CorrectionEngine engine = CorrectionEngines.create(getCorrectionEngine().getName());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    correctImage(in, file, engine);
+                    if (callback != null)
+                        callback.onCaptureWritten(file);
+                } catch (IOException e) {
+                    file.delete();
+                    if (callback != null)
+                        callback.onCaptureFailed(file, e);
+                } catch (RuntimeException e) {
+                    // CvException from the engine, or a bad image the decoder did not reject
+                    Log.e(TAG, "Cannot correct " + file, e);
+                    file.delete();
+                    if (callback != null)
+                        callback.onCaptureFailed(file, new IOException(e.toString()));
+                }
+            }
+        }, "ImageCorrection");
+        thread.start();
+    }
+
+    private static void correctImage(InputStream in, File file, CorrectionEngine engine) throws IOException {
+        BitmapRegionStripSource source;
+        byte[] metadata;
+        try {
+            if (!BitmapRegionStripSource.isSupported())
+                throw new IOException("Band decoding needs Android 2.3.3");
+            BufferedInputStream buffered = new BufferedInputStream(in, 64 * 1024);
+            metadata = readMetadata(buffered);
+            source = new BitmapRegionStripSource(buffered);
+        } finally {
+            in.close();
+        }
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+            try {
+                new StripCorrection(engine, StripCorrection.DEFAULT_STRIP_HEIGHT).run(source, out,
+                        PICTURE_JPEG_QUALITY, metadata);
+            } finally {
+                out.close();
+            }
+        } finally {
+            source.close();
+        }
+    }
 
-        // Write the image in a file (in jpeg format)
+    /**
+     * Returns the metadata segments at the start of a JPEG stream, or null if there are none or
+     * the image is no JPEG. The stream is reset to where it was.
+     */
+    private static byte[] readMetadata(BufferedInputStream in) throws IOException {
+        byte[] header = new byte[METADATA_LIMIT];
+        in.mark(METADATA_LIMIT);
+        int length = 0;
         try {
-            FileOutputStream fos = new FileOutputStream(mPictureFileName);
+            int read;
+            while (length < header.length && (read = in.read(header, length, header.length - length)) > 0)
+                length += read;
+        } finally {
+            in.reset();
+        }
 
-            fos.write(data);
-            fos.close();
+        JpegSegments segments = new JpegSegments();
+        if (!segments.parse(header, length) || segments.getCount() == 0) {
+            Log.w(TAG, "No metadata kept, the image is no JPEG or its header is too large");
+            return null;
+        }
+        byte[] metadata = new byte[segments.getMetadataLength()];
+        segments.copyMetadata(metadata, 0);
+        return metadata;
+    }
 
-        } catch (java.io.IOException e) {
-            Log.e("PictureDemo", "Exception in photoCallback", e);
+    private JpegCorrection getJpegCorrection() {
+        if (mJpegCorrection == null) {
+            // The preview engine is used on the camera thread, so the pipeline gets its own
+            mJpegCorrection = new JpegCorrection(getCaptureWriter(),
+                    CorrectionEngines.create(getCorrectionEngine().getName()), PICTURE_JPEG_QUALITY);
         }
+        return mJpegCorrection;
+    }
 
+    @Override
+    public void closeCapture() {
+        if (mJpegCorrection != null) {
+            mJpegCorrection.close();
+            mJpegCorrection = null;
+        }
+        super.closeCapture();
     }
 }